@@ -1,28 +1,23 @@
 package com.otplink;
 
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.util.Log;
-import org.json.JSONArray;
-import org.json.JSONObject;
-import java.util.ArrayList;
+import com.otplink.core.OtpPipeline;
+import com.otplink.core.OtpRecord;
+import com.otplink.core.OtpRecordLog;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.Properties;
-import javax.mail.Message;
-import javax.mail.MessagingException;
-import javax.mail.PasswordAuthentication;
-import javax.mail.Session;
-import javax.mail.Transport;
-import javax.mail.internet.InternetAddress;
-import javax.mail.internet.MimeMessage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.mail.SendFailedException;
 
 public class BackgroundOtpProcessor {
     private static final String TAG = "BackgroundOtpProcessor";
-    private static final String PREFS_NAME = "RN_ASYNC_STORAGE_";
-    private static final String CONFIG_KEY = "otp_link_config";
-    private static final String PROCESSED_OTPS_KEY = "processed_otps";
+    
+    private static final ThreadLocal<OtpPipeline.Detection> DETECTIONS = new ThreadLocal<OtpPipeline.Detection>() {
+        @Override
+        protected OtpPipeline.Detection initialValue() {
+            return new OtpPipeline.Detection();
+        }
+    };
     
     private Context context;
     
@@ -31,270 +26,254 @@ public class BackgroundOtpProcessor {
     }
     
     public void processSms(String sender, String message) {
-        Log.d(TAG, "=== BACKGROUND OTP PROCESSING STARTED ===");
-        Log.d(TAG, "Sender: " + sender);
-        Log.d(TAG, "Message: " + message);
+        processSms(sender, message, System.currentTimeMillis(), System.nanoTime(), null);
+    }
+    
+    /**
+     * Runs the pipeline for one message. {@code onDone} runs exactly once, after the
+     * forward (which may be coalesced with other OTPs) has completed or been handed to the outbox.
+     */
+    public void processSms(String sender, String message, long receivedAt, long receivedNanos, Runnable onDone) {
+        boolean handedOff = false;
+        OtpLog.d(TAG, "Processing SMS from {}: {*}", sender, message);
         
         try {
-            // Load configuration
-            Configuration config = loadConfiguration();
+            // Load compiled configuration (parsed once per config change)
+            long configStart = System.nanoTime();
+            ConfigSnapshot config = ConfigStore.get(context);
+            PipelineMetrics.recordSince(PipelineMetrics.Stage.CONFIG_LOAD, configStart);
             if (config == null) {
-                Log.e(TAG, "No configuration found, cannot process SMS");
+                OtpLog.w(TAG, "No configuration found, cannot process SMS");
                 return;
             }
             
             // Check if SMS listener is enabled
             if (!config.smsListenerEnabled) {
-                Log.d(TAG, "SMS listener is disabled, skipping SMS processing");
-                return;
-            }
-            
-            // Check if message contains keywords
-            if (!containsKeywords(message, config.keywords)) {
-                Log.d(TAG, "Message does not contain required keywords");
+                OtpLog.d(TAG, "SMS listener is disabled, skipping SMS processing");
                 return;
             }
             
-            // Extract OTP
-            String otp = extractOtp(message, config.otpMinLength, config.otpMaxLength);
-            if (otp == null) {
-                Log.d(TAG, "No OTP found in message");
-                return;
+            // Sender rules, keyword match, OTP extraction and the sliding 5-minute duplicate check
+            DedupeIndex dedupe = DedupeIndex.get(context);
+            TemplateStore templates = TemplateStore.get(context);
+            OtpPipeline.Detection detection = DETECTIONS.get();
+            OtpPipeline.Outcome outcome = new OtpPipeline(dedupe, templates.cache())
+                .detect(config, sender, message, receivedAt, detection);
+            recordDetectionMetrics(detection);
+            templates.saveIfChanged();
+            switch (outcome) {
+                case SENDER_BLOCKED:
+                    PipelineMetrics.increment(PipelineMetrics.Counter.SENDER_BLOCKED);
+                    OtpLog.d(TAG, "Sender denied by rule {}: {}", detection.senderRule.pattern, sender);
+                    return;
+                case NO_KEYWORD:
+                    OtpLog.d(TAG, "Message does not contain required keywords");
+                    return;
+                case NO_OTP:
+                    OtpLog.d(TAG, "No OTP found in message");
+                    return;
+                case DUPLICATE:
+                    PipelineMetrics.increment(PipelineMetrics.Counter.DUPLICATES);
+                    OtpLog.d(TAG, "OTP {*} from {} already processed, skipping", detection.otp, sender);
+                    return;
+                default:
+                    break;
             }
+            String otp = detection.otp;
+            long otpKey = detection.dedupeKey;
+            OtpLog.d(TAG, "OTP {*} detected, keyword {} ({#} hits)", otp,
+                config.keywordMatcher.keyword(detection.hits.keyword(0)), detection.hits.count());
             
-            Log.d(TAG, "OTP detected in background: " + otp);
-            
-            // Check if this OTP was already processed (use 5-minute window)
-            String otpKey = otp + "-" + sender + "-" + (System.currentTimeMillis() / 300000); // Group by 5 minutes
-            if (isOtpAlreadyProcessed(otpKey)) {
-                Log.d(TAG, "OTP already processed, skipping: " + otpKey);
-                return;
-            }
-            
-            // Send email if configured
-            if (config.emailSettings != null && config.emailSettings.recipient != null && !config.emailSettings.recipient.isEmpty()) {
-                boolean emailSent = sendOtpEmail(otp, sender, message, config.emailSettings);
-                if (emailSent) {
-                    // Mark OTP as processed and save to React Native storage
-                    markOtpAsProcessed(otpKey);
-                    saveOtpToReactNativeStorage(otp, sender, message);
-                }
+            // Forward to email and every webhook in parallel
+            boolean email = config.emailSettings != null && config.emailSettings.isConfigured();
+            if (email || !config.webhookUrls.isEmpty()) {
+                // Mark up front: from here on the OTP is either delivered or owned by the outbox
+                dedupe.mark(otpKey, receivedAt);
+                forwardOtp(otp, sender, message, receivedAt, receivedNanos, email ? config.emailSettings : null,
+                    config.webhookUrls, onDone);
+                handedOff = true;
             } else {
-                Log.d(TAG, "Email not configured, skipping email forwarding");
+                OtpLog.d(TAG, "No email or webhook configured, skipping forwarding");
             }
             
         } catch (Exception e) {
-            Log.e(TAG, "Error processing SMS in background", e);
-        }
-    }
-    
-    private Configuration loadConfiguration() {
-        try {
-            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-            String configJson = prefs.getString(CONFIG_KEY, null);
-            
-            if (configJson == null) {
-                Log.d(TAG, "No configuration found in SharedPreferences");
-                return null;
+            OtpLog.e(TAG, "Error processing SMS in background", e);
+        } finally {
+            if (!handedOff && onDone != null) {
+                onDone.run();
             }
-            
-            JSONObject json = new JSONObject(configJson);
-            Configuration config = new Configuration();
-            
-            // Load keywords
-            JSONArray keywordsArray = json.optJSONArray("keywords");
-            config.keywords = new ArrayList<>();
-            if (keywordsArray != null) {
-                for (int i = 0; i < keywordsArray.length(); i++) {
-                    config.keywords.add(keywordsArray.getString(i));
-                }
-            }
-            
-            // Load OTP settings
-            config.otpMinLength = json.optInt("otpMinLength", 4);
-            config.otpMaxLength = json.optInt("otpMaxLength", 8);
-            
-            // Load SMS listener state
-            config.smsListenerEnabled = json.optBoolean("smsListenerEnabled", true);
-            
-            // Load email settings
-            JSONObject emailSettings = json.optJSONObject("emailSettings");
-            if (emailSettings != null) {
-                config.emailSettings = new EmailSettings();
-                config.emailSettings.smtpHost = emailSettings.optString("smtpHost", "");
-                config.emailSettings.smtpPort = emailSettings.optInt("smtpPort", 587);
-                config.emailSettings.username = emailSettings.optString("username", "");
-                config.emailSettings.password = emailSettings.optString("password", "");
-                config.emailSettings.recipient = emailSettings.optString("recipient", "");
-            }
-            
-            Log.d(TAG, "Configuration loaded successfully");
-            return config;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error loading configuration", e);
-            return null;
         }
     }
     
-    private boolean containsKeywords(String message, List<String> keywords) {
-        String lowerMessage = message.toLowerCase();
-        for (String keyword : keywords) {
-            if (lowerMessage.contains(keyword.toLowerCase())) {
-                Log.d(TAG, "Found keyword: " + keyword);
-                return true;
-            }
+    private void recordDetectionMetrics(OtpPipeline.Detection detection) {
+        PipelineMetrics.record(PipelineMetrics.Stage.SENDER_FILTER, detection.senderNanos);
+        if (detection.keywordNanos > 0) {
+            PipelineMetrics.record(PipelineMetrics.Stage.KEYWORD_MATCH, detection.keywordNanos);
+        }
+        if (detection.extractNanos > 0) {
+            PipelineMetrics.record(PipelineMetrics.Stage.EXTRACT, detection.extractNanos);
+        }
+        if (detection.templateHit) {
+            PipelineMetrics.increment(PipelineMetrics.Counter.TEMPLATE_HITS);
+        }
+        if (detection.dedupeNanos > 0) {
+            PipelineMetrics.record(PipelineMetrics.Stage.DEDUPE, detection.dedupeNanos);
         }
-        return false;
     }
     
-    private String extractOtp(String message, int minLength, int maxLength) {
-        Pattern pattern = Pattern.compile("\\d+");
-        Matcher matcher = pattern.matcher(message);
-        
-        while (matcher.find()) {
-            String digits = matcher.group();
-            if (digits.length() >= minLength && digits.length() <= maxLength) {
-                Log.d(TAG, "Found OTP: " + digits);
-                return digits;
+    private void forwardOtp(String otp, String sender, String message, long receivedAt, long receivedNanos,
+                            EmailSettings emailSettings, List<String> webhookUrls, Runnable onDone) {
+        Delivery delivery = new Delivery(otp, sender, message, receivedAt, receivedNanos,
+            emailSettings != null, webhookUrls, onDone);
+        if (!webhookUrls.isEmpty()) {
+            // One payload and one deadline shared by every webhook
+            byte[] payload = WebhookForwarder.payload(otp, sender, message, receivedAt);
+            long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WebhookForwarder.DEFAULT_TIMEOUT_MS);
+            for (int i = 0; i < webhookUrls.size(); i++) {
+                int destination = i + 1;
+                WebhookForwarder.get().postAsync(webhookUrls.get(i), payload, deadlineNanos,
+                    error -> delivery.complete(destination, error));
             }
         }
-        
-        return null;
+        if (emailSettings != null) {
+            OtpLog.d(TAG, "Sending OTP email in background");
+            EmailCoalescer.get().submit(emailSettings, new EmailCoalescer.Pending(otp, sender, message, receivedAt,
+                error -> delivery.complete(0, error)));
+        }
     }
     
-    private boolean sendOtpEmail(String otp, String sender, String message, EmailSettings emailSettings) {
-        Log.d(TAG, "Sending OTP email in background");
+    /**
+     * Results of one OTP's fan-out. Destination 0 is email, destination i the i-th webhook;
+     * the outcome is recorded once the last destination has answered.
+     */
+    private final class Delivery {
+        final String otp;
+        final String sender;
+        final String message;
+        final long receivedAt;
+        final long receivedNanos;
+        final boolean email;
+        final List<String> webhookUrls;
+        final Runnable onDone;
+        final Exception[] errors;
+        final AtomicInteger remaining;
         
-        try {
-            Properties props = new Properties();
-            props.put("mail.smtp.auth", "true");
-            props.put("mail.smtp.starttls.enable", "true");
-            props.put("mail.smtp.host", emailSettings.smtpHost);
-            props.put("mail.smtp.port", String.valueOf(emailSettings.smtpPort));
-            props.put("mail.smtp.ssl.trust", emailSettings.smtpHost);
-            
-            Session session = Session.getInstance(props, new javax.mail.Authenticator() {
-                protected PasswordAuthentication getPasswordAuthentication() {
-                    return new PasswordAuthentication(emailSettings.username, emailSettings.password);
-                }
-            });
-            
-            Message emailMessage = new MimeMessage(session);
-            emailMessage.setFrom(new InternetAddress(emailSettings.username));
-            emailMessage.setRecipients(Message.RecipientType.TO, InternetAddress.parse(emailSettings.recipient));
-            emailMessage.setSubject("OTPLink - OTP: " + otp + " from " + sender);
-            emailMessage.setText("OTP: " + otp + "\nFrom: " + sender + "\nMessage: " + message + "\nTime: " + new java.util.Date() + "\n\nSent by OTPLink App (Background)");
-            
-            Transport.send(emailMessage);
-            
-            Log.d(TAG, "OTP email sent successfully in background");
-            return true;
-            
-        } catch (MessagingException e) {
-            Log.e(TAG, "Error sending OTP email in background", e);
-            return false;
+        Delivery(String otp, String sender, String message, long receivedAt, long receivedNanos,
+                 boolean email, List<String> webhookUrls, Runnable onDone) {
+            this.otp = otp;
+            this.sender = sender;
+            this.message = message;
+            this.receivedAt = receivedAt;
+            this.receivedNanos = receivedNanos;
+            this.email = email;
+            this.webhookUrls = webhookUrls;
+            this.onDone = onDone;
+            this.errors = new Exception[webhookUrls.size() + 1];
+            this.remaining = new AtomicInteger(webhookUrls.size() + (email ? 1 : 0));
         }
-    }
-    
-    private boolean isOtpAlreadyProcessed(String otpKey) {
-        try {
-            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-            String processedOtps = prefs.getString(PROCESSED_OTPS_KEY, "[]");
-            JSONArray otpsArray = new JSONArray(processedOtps);
-            
-            for (int i = 0; i < otpsArray.length(); i++) {
-                if (otpsArray.getString(i).equals(otpKey)) {
-                    return true;
+        
+        void complete(int destination, Exception error) {
+            errors[destination] = error;
+            if (remaining.decrementAndGet() != 0) {
+                return;
+            }
+            boolean deferred = false;
+            try {
+                recordOutcome(this);
+                deferred = true;
+            } finally {
+                // Once the record is queued, the deferred lane runs onDone after saving it
+                if (!deferred && onDone != null) {
+                    onDone.run();
                 }
             }
-            return false;
-        } catch (Exception e) {
-            Log.e(TAG, "Error checking processed OTPs", e);
-            return false;
         }
     }
     
-    private void markOtpAsProcessed(String otpKey) {
-        try {
-            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-            String processedOtps = prefs.getString(PROCESSED_OTPS_KEY, "[]");
-            JSONArray otpsArray = new JSONArray(processedOtps);
-            
-            // Add new OTP key
-            otpsArray.put(otpKey);
-            
-            // Keep only last 50 processed OTPs to prevent memory issues
-            if (otpsArray.length() > 50) {
-                JSONArray newArray = new JSONArray();
-                for (int i = otpsArray.length() - 50; i < otpsArray.length(); i++) {
-                    newArray.put(otpsArray.get(i));
-                }
-                otpsArray = newArray;
+    /**
+     * Records the outcome on the critical path (metrics, logs) and queues the record on
+     * the {@link DeferredLane}, so the thread that completed the forward, often the one
+     * sending the next email, only waits for the disk when a failed email has to be
+     * persisted to the outbox, and never for the JS bridge.
+     */
+    private void recordOutcome(Delivery delivery) {
+        OtpRecord record = new OtpRecord(delivery.otp, delivery.sender, delivery.message, delivery.receivedAt);
+        record.attempts = 1;
+        StringBuilder deliveries = new StringBuilder();
+        boolean emailSent = false;
+        boolean webhookSent = false;
+        Exception emailError = delivery.errors[0];
+        // Only email has a persistent retry path; a transient failure is retried whatever the webhooks did
+        boolean emailRetry = delivery.email && emailError != null && !(emailError instanceof SendFailedException);
+        if (delivery.email) {
+            emailSent = emailError == null;
+            appendDelivery(deliveries, "email",
+                emailSent ? OtpRecord.STATUS_SENT : emailRetry ? OtpRecord.STATUS_RETRYING : OtpRecord.STATUS_FAILED);
+            if (emailError != null) {
+                PipelineMetrics.increment(PipelineMetrics.Counter.FAILURES);
+            }
+            if (emailError instanceof SendFailedException) {
+                // Recipients rejected by the server; a retry would be rejected the same way
+                OtpLog.e(TAG, "OTP email rejected", emailError);
+            } else if (emailError != null) {
+                OtpLog.e(TAG, "Error sending OTP email in background", emailError);
             }
-            
-            SharedPreferences.Editor editor = prefs.edit();
-            editor.putString(PROCESSED_OTPS_KEY, otpsArray.toString());
-            editor.apply();
-            
-            Log.d(TAG, "Marked OTP as processed: " + otpKey);
-        } catch (Exception e) {
-            Log.e(TAG, "Error marking OTP as processed", e);
         }
-    }
-    
-    private void saveOtpToReactNativeStorage(String otp, String sender, String message) {
-        try {
-            SharedPreferences prefs = context.getSharedPreferences("RN_ASYNC_STORAGE_", Context.MODE_PRIVATE);
-            String recordsJson = prefs.getString("otp_link_records", "[]");
-            JSONArray recordsArray = new JSONArray(recordsJson);
-            
-            // Create new OTP record
-            JSONObject newRecord = new JSONObject();
-            newRecord.put("id", java.util.UUID.randomUUID().toString());
-            newRecord.put("otp", otp);
-            newRecord.put("source", "sms");
-            newRecord.put("sender", sender);
-            newRecord.put("message", message);
-            newRecord.put("timestamp", new java.util.Date().toInstant().toString());
-            newRecord.put("forwarded", true);
-            newRecord.put("forwardingMethod", "email");
-            
-            // Add to beginning of array
-            JSONArray newArray = new JSONArray();
-            newArray.put(newRecord);
-            for (int i = 0; i < recordsArray.length() && i < 99; i++) { // Keep max 100 records
-                newArray.put(recordsArray.get(i));
+        for (int i = 0; i < delivery.webhookUrls.size(); i++) {
+            Exception error = delivery.errors[i + 1];
+            webhookSent |= error == null;
+            appendDelivery(deliveries, WebhookForwarder.label(delivery.webhookUrls.get(i)),
+                error == null ? OtpRecord.STATUS_SENT : OtpRecord.STATUS_FAILED);
+            if (error != null) {
+                PipelineMetrics.increment(PipelineMetrics.Counter.FAILURES);
+                OtpLog.e(TAG, "Error posting OTP to webhook {#}", i + 1, error);
             }
-            
-            SharedPreferences.Editor editor = prefs.edit();
-            editor.putString("otp_link_records", newArray.toString());
-            boolean success = editor.commit(); // Use commit for immediate write
-            
-            Log.d(TAG, "SharedPreferences commit success: " + success);
-            
-            Log.d(TAG, "Saved OTP record to React Native storage");
-            Log.d(TAG, "OTP record: " + newRecord.toString());
-            Log.d(TAG, "Total records now: " + newArray.length());
-        } catch (Exception e) {
-            Log.e(TAG, "Error saving OTP record", e);
+        }
+        record.deliveries = deliveries.toString();
+        DeferredLane.AfterSave afterSave = null;
+        if (emailRetry) {
+            // The OTP is already marked as seen, so the retry is persisted here rather than
+            // after the record is saved; the record is linked once it has its seq
+            OtpLog.d(TAG, "Handing OTP {*} to the outbox", delivery.otp);
+            ForwardOutbox outbox = ForwardOutbox.get(context);
+            ForwardOutbox.Job job = outbox.enqueue(0, delivery.otp, delivery.sender, delivery.message,
+                delivery.receivedAt, record.attempts);
+            afterSave = seq -> {
+                if (seq > 0) {
+                    outbox.linkRecord(job, seq);
+                }
+            };
+        }
+        
+        if (emailSent || webhookSent) {
+            PipelineMetrics.recordSince(PipelineMetrics.Stage.END_TO_END, delivery.receivedNanos);
+            ForwardWarmup.reportFirstForward(delivery.receivedNanos);
+            PipelineMetrics.increment(PipelineMetrics.Counter.FORWARDED);
+            OtpLog.d(TAG, "OTP forwarded: {}", record.deliveries);
+            record.forwarded = true;
+            record.forwardingMethod = emailSent ? "email" : "webhook";
+            record.status = OtpRecord.STATUS_SENT;
+            saveOtpRecord(record, afterSave, delivery.onDone);
+        } else if (emailRetry) {
+            record.forwardingMethod = "email";
+            record.status = OtpRecord.STATUS_RETRYING;
+            saveOtpRecord(record, afterSave, delivery.onDone);
+        } else {
+            record.forwardingMethod = delivery.email ? "email" : "webhook";
+            record.status = OtpRecord.STATUS_FAILED;
+            saveOtpRecord(record, null, delivery.onDone);
         }
     }
     
-    // Configuration classes
-    private static class Configuration {
-        List<String> keywords;
-        int otpMinLength;
-        int otpMaxLength;
-        boolean smsListenerEnabled;
-        EmailSettings emailSettings;
+    private static void appendDelivery(StringBuilder deliveries, String destination, String status) {
+        if (deliveries.length() > 0) {
+            deliveries.append(';');
+        }
+        deliveries.append(destination).append('=').append(status);
     }
     
-    private static class EmailSettings {
-        String smtpHost;
-        int smtpPort;
-        String username;
-        String password;
-        String recipient;
+    private void saveOtpRecord(OtpRecord record, DeferredLane.AfterSave afterSave, Runnable onDone) {
+        OtpLog.d(TAG, "Queued OTP record ({}) for saving", record.status);
+        DeferredLane.get(context).save(record, afterSave, onDone);
     }
-}
\ No newline at end of file
+}
@@ -7,13 +7,18 @@ import android.util.Log;
 
 public class BootReceiver extends BroadcastReceiver {
     private static final String TAG = "BootReceiver";
+    // Warm-up is an optimisation; the broadcast is never held for slow DNS or SMTP
+    private static final long MAX_HOLD_MS = 3_000;
 
     @Override
     public void onReceive(Context context, Intent intent) {
         if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
             Log.d(TAG, "Device boot completed, OTP Link background service ready");
-            // The SMS receiver will automatically start when SMS is received
-            // No need to start a persistent service here
+            // The SMS receiver starts on its own; the inbox scanner covers missed broadcasts
+            InboxScanner.get(context).start(null);
+            // Keep the process alive while the forwarding path warms up, for a few seconds at most
+            BoundedPendingResult hold = BoundedPendingResult.hold(this, "boot", MAX_HOLD_MS);
+            ForwardWarmup.warmUp(context, "boot", hold::finish);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,51 @@
+package com.otplink;
+
+import android.content.BroadcastReceiver;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@code goAsync()} hold with an upper bound. The broadcast is finished exactly once,
+ * by the first {@link #finish()} or when {@code maxMs} has passed, so background work
+ * that overruns never keeps a receiver past its ANR budget. {@link #finish()} may be
+ * called from any thread, any number of times.
+ */
+final class BoundedPendingResult {
+    private static final String TAG = "BoundedPendingResult";
+    private static final Handler TIMER = new Handler(Looper.getMainLooper());
+
+    private final BroadcastReceiver.PendingResult result;
+    private final String name;
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private final Runnable timeout = this::expire;
+
+    private BoundedPendingResult(BroadcastReceiver.PendingResult result, String name) {
+        this.result = result;
+        this.name = name;
+    }
+
+    /** Calls {@code goAsync()} on {@code receiver}; must run inside its {@code onReceive}. */
+    static BoundedPendingResult hold(BroadcastReceiver receiver, String name, long maxMs) {
+        BoundedPendingResult hold = new BoundedPendingResult(receiver.goAsync(), name);
+        TIMER.postDelayed(hold.timeout, maxMs);
+        return hold;
+    }
+
+    void finish() {
+        if (finished.compareAndSet(false, true)) {
+            TIMER.removeCallbacks(timeout);
+            if (result != null) {
+                result.finish();
+            }
+        }
+    }
+
+    private void expire() {
+        if (!finished.get()) {
+            Log.w(TAG, "Releasing " + name + " broadcast before its work finished");
+        }
+        finish();
+    }
+}
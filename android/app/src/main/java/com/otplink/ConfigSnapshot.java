@@ -0,0 +1,258 @@
+package com.otplink;
+
+import android.util.Log;
+import com.otplink.core.KeywordMatcher;
+import com.otplink.core.OtpRules;
+import com.otplink.core.SenderRules;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Immutable, fully compiled view of otp_link_config. Instances are built once per
+ * config change and shared by every message processed until the next change.
+ */
+class ConfigSnapshot implements OtpRules {
+    private static final String TAG = "ConfigSnapshot";
+    private static final int FORMAT_MAGIC = 0x4f544c43; // "OTLC"
+    private static final int FORMAT_VERSION = 6;
+    private static final int DIGEST_SIZE = 32;
+
+    long version;
+    // SHA-256 of the JSON this snapshot was compiled from
+    byte[] sourceDigest;
+    SenderRules senderRules;
+    List<String> keywords;
+    KeywordMatcher keywordMatcher;
+    int otpMinLength;
+    int otpMaxLength;
+    boolean smsListenerEnabled;
+    EmailSettings emailSettings;
+    // webhookUrl plus any extra webhookUrls, deduplicated; empty when none are configured
+    List<String> webhookUrls;
+
+    @Override
+    public SenderRules senderRules() {
+        return senderRules;
+    }
+
+    @Override
+    public KeywordMatcher keywordMatcher() {
+        return keywordMatcher;
+    }
+
+    @Override
+    public int otpMinLength() {
+        return otpMinLength;
+    }
+
+    @Override
+    public int otpMaxLength() {
+        return otpMaxLength;
+    }
+
+    /** True if this snapshot was compiled from exactly {@code configJson}. */
+    boolean isCompiledFrom(String configJson) {
+        return Arrays.equals(sourceDigest, digest(configJson));
+    }
+
+    static byte[] digest(String configJson) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(configJson.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android release ships SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static ConfigSnapshot parse(String configJson, long version) throws JSONException {
+        JSONObject json = new JSONObject(configJson);
+        ConfigSnapshot config = new ConfigSnapshot();
+        config.version = version;
+        config.sourceDigest = digest(configJson);
+
+        // Load keywords
+        JSONArray keywordsArray = json.optJSONArray("keywords");
+        config.keywords = new ArrayList<>();
+        if (keywordsArray != null) {
+            for (int i = 0; i < keywordsArray.length(); i++) {
+                config.keywords.add(keywordsArray.getString(i));
+            }
+        }
+        config.keywordMatcher = KeywordMatcher.compile(config.keywords);
+
+        // Load sender rules; senders no rule matches are allowed unless senderDefault is "deny"
+        List<SenderRules.Rule> senderRules = new ArrayList<>();
+        JSONArray rulesArray = json.optJSONArray("senderRules");
+        if (rulesArray != null) {
+            for (int i = 0; i < rulesArray.length(); i++) {
+                JSONObject rule = rulesArray.optJSONObject(i);
+                if (rule == null || rule.optString("pattern", "").isEmpty()) {
+                    continue;
+                }
+                String otpPattern = rule.optString("otpPattern", "");
+                try {
+                    senderRules.add(new SenderRules.Rule(
+                        rule.getString("pattern"),
+                        !"deny".equals(rule.optString("action", "allow")),
+                        rule.optInt("otpMinLength", 0),
+                        rule.optInt("otpMaxLength", 0),
+                        otpPattern.isEmpty() ? null : otpPattern));
+                } catch (PatternSyntaxException e) {
+                    // One bad user regex must not reject the rest of the configuration
+                    Log.w(TAG, "Skipping sender rule " + rule.getString("pattern") + ", invalid OTP pattern: " + e.getDescription());
+                }
+            }
+        }
+        config.senderRules = SenderRules.compile(senderRules, !"deny".equals(json.optString("senderDefault", "allow")));
+
+        // Load OTP settings
+        config.otpMinLength = json.optInt("otpMinLength", 4);
+        config.otpMaxLength = json.optInt("otpMaxLength", 8);
+
+        // Load SMS listener state
+        config.smsListenerEnabled = json.optBoolean("smsListenerEnabled", true);
+
+        // Load webhook destinations
+        config.webhookUrls = new ArrayList<>();
+        addWebhookUrl(config.webhookUrls, json.optString("webhookUrl", ""));
+        JSONArray webhooksArray = json.optJSONArray("webhookUrls");
+        if (webhooksArray != null) {
+            for (int i = 0; i < webhooksArray.length(); i++) {
+                addWebhookUrl(config.webhookUrls, webhooksArray.optString(i, ""));
+            }
+        }
+
+        // Load email settings
+        JSONObject emailSettings = json.optJSONObject("emailSettings");
+        if (emailSettings != null) {
+            config.emailSettings = new EmailSettings();
+            config.emailSettings.smtpHost = emailSettings.optString("smtpHost", "");
+            config.emailSettings.smtpPort = emailSettings.optInt("smtpPort", 587);
+            config.emailSettings.username = emailSettings.optString("username", "");
+            config.emailSettings.password = emailSettings.optString("password", "");
+            config.emailSettings.recipient = emailSettings.optString("recipient", "");
+            long window = emailSettings.optLong("coalesceWindowMs", EmailSettings.DEFAULT_COALESCE_WINDOW_MS);
+            config.emailSettings.coalesceWindowMs = Math.max(0, Math.min(window, EmailSettings.MAX_COALESCE_WINDOW_MS));
+            config.emailSettings.coalesceDigest = emailSettings.optBoolean("coalesceDigest", true);
+            config.emailSettings.connectTimeoutMs = emailSettings.optInt("connectTimeoutMs", SmtpEndpoint.DEFAULT_CONNECT_TIMEOUT_MS);
+            config.emailSettings.readTimeoutMs = emailSettings.optInt("readTimeoutMs", SmtpEndpoint.DEFAULT_READ_TIMEOUT_MS);
+            config.emailSettings.hedgeSends = emailSettings.optBoolean("hedgeSends", false);
+            // Fallback relays default to the primary account
+            JSONArray relaysArray = emailSettings.optJSONArray("relays");
+            if (relaysArray != null) {
+                for (int i = 0; i < relaysArray.length(); i++) {
+                    JSONObject relay = relaysArray.optJSONObject(i);
+                    if (relay == null || relay.optString("smtpHost", "").isEmpty()) {
+                        continue;
+                    }
+                    config.emailSettings.fallbackRelays.add(new SmtpEndpoint(
+                        relay.getString("smtpHost"),
+                        relay.optInt("smtpPort", 587),
+                        relay.optString("username", config.emailSettings.username),
+                        relay.optString("password", config.emailSettings.password),
+                        config.emailSettings.connectTimeoutMs,
+                        config.emailSettings.readTimeoutMs));
+                }
+            }
+        }
+        return config;
+    }
+
+    private static void addWebhookUrl(List<String> urls, String url) {
+        url = url.trim();
+        if ((url.startsWith("http://") || url.startsWith("https://")) && !urls.contains(url)) {
+            urls.add(url);
+        }
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(version);
+        out.write(sourceDigest);
+        senderRules.writeTo(out);
+        keywordMatcher.writeTo(out);
+        out.writeInt(otpMinLength);
+        out.writeInt(otpMaxLength);
+        out.writeBoolean(smsListenerEnabled);
+        out.writeInt(webhookUrls.size());
+        for (String url : webhookUrls) {
+            out.writeUTF(url);
+        }
+        out.writeBoolean(emailSettings != null);
+        if (emailSettings != null) {
+            out.writeUTF(emailSettings.smtpHost);
+            out.writeInt(emailSettings.smtpPort);
+            out.writeUTF(emailSettings.username);
+            out.writeUTF(emailSettings.password);
+            out.writeUTF(emailSettings.recipient);
+            out.writeLong(emailSettings.coalesceWindowMs);
+            out.writeBoolean(emailSettings.coalesceDigest);
+            out.writeInt(emailSettings.connectTimeoutMs);
+            out.writeInt(emailSettings.readTimeoutMs);
+            out.writeBoolean(emailSettings.hedgeSends);
+            out.writeInt(emailSettings.fallbackRelays.size());
+            for (SmtpEndpoint relay : emailSettings.fallbackRelays) {
+                out.writeUTF(relay.host);
+                out.writeInt(relay.port);
+                out.writeUTF(relay.username);
+                out.writeUTF(relay.password);
+            }
+        }
+    }
+
+    /** Returns null when the stream was written by an incompatible format version. */
+    static ConfigSnapshot readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT_MAGIC || in.readInt() != FORMAT_VERSION) {
+            return null;
+        }
+        ConfigSnapshot config = new ConfigSnapshot();
+        config.version = in.readLong();
+        config.sourceDigest = new byte[DIGEST_SIZE];
+        in.readFully(config.sourceDigest);
+        config.senderRules = SenderRules.readFrom(in);
+        config.keywordMatcher = KeywordMatcher.readFrom(in);
+        config.keywords = new ArrayList<>();
+        for (int i = 0; i < config.keywordMatcher.keywordCount(); i++) {
+            config.keywords.add(config.keywordMatcher.keyword(i));
+        }
+        config.otpMinLength = in.readInt();
+        config.otpMaxLength = in.readInt();
+        config.smsListenerEnabled = in.readBoolean();
+        int webhookCount = in.readInt();
+        config.webhookUrls = new ArrayList<>(webhookCount);
+        for (int i = 0; i < webhookCount; i++) {
+            config.webhookUrls.add(in.readUTF());
+        }
+        if (in.readBoolean()) {
+            config.emailSettings = new EmailSettings();
+            config.emailSettings.smtpHost = in.readUTF();
+            config.emailSettings.smtpPort = in.readInt();
+            config.emailSettings.username = in.readUTF();
+            config.emailSettings.password = in.readUTF();
+            config.emailSettings.recipient = in.readUTF();
+            config.emailSettings.coalesceWindowMs = in.readLong();
+            config.emailSettings.coalesceDigest = in.readBoolean();
+            config.emailSettings.connectTimeoutMs = in.readInt();
+            config.emailSettings.readTimeoutMs = in.readInt();
+            config.emailSettings.hedgeSends = in.readBoolean();
+            int relayCount = in.readInt();
+            for (int i = 0; i < relayCount; i++) {
+                config.emailSettings.fallbackRelays.add(new SmtpEndpoint(in.readUTF(), in.readInt(), in.readUTF(),
+                    in.readUTF(), config.emailSettings.connectTimeoutMs, config.emailSettings.readTimeoutMs));
+            }
+        }
+        return config;
+    }
+}
@@ -0,0 +1,133 @@
+package com.otplink;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Process-wide holder of the compiled configuration. The JSON in SharedPreferences is
+ * parsed only when it changes; a compact binary copy lets a cold receiver process skip
+ * JSON parsing and keyword compilation altogether.
+ */
+final class ConfigStore {
+    private static final String TAG = "ConfigStore";
+    static final String PREFS_NAME = "RN_ASYNC_STORAGE_";
+    static final String CONFIG_KEY = "otp_link_config";
+    private static final String SNAPSHOT_FILE = "otp_link_config.bin";
+
+    private static final AtomicReference<ConfigSnapshot> CURRENT = new AtomicReference<>();
+    private static volatile boolean initialized;
+    // SharedPreferences only keeps weak references to listeners
+    private static SharedPreferences.OnSharedPreferenceChangeListener prefsListener;
+
+    private ConfigStore() {
+    }
+
+    /** Returns the current snapshot, or null when no configuration has been synced yet. */
+    static ConfigSnapshot get(Context context) {
+        if (!initialized) {
+            initialize(context.getApplicationContext());
+        }
+        return CURRENT.get();
+    }
+
+    /** Compiles and publishes a new configuration; called from the JS sync path. */
+    static ConfigSnapshot update(Context context, String configJson) throws Exception {
+        Context appContext = context.getApplicationContext();
+        if (!initialized) {
+            initialize(appContext);
+        }
+        return publish(appContext, configJson);
+    }
+
+    private static synchronized void initialize(Context context) {
+        if (initialized) {
+            return;
+        }
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String configJson = prefs.getString(CONFIG_KEY, null);
+
+        if (configJson != null) {
+            ConfigSnapshot persisted = readSnapshot(context);
+            if (persisted != null && persisted.isCompiledFrom(configJson)) {
+                CURRENT.set(persisted);
+                Log.d(TAG, "Loaded compiled configuration v" + persisted.version);
+            } else {
+                try {
+                    publish(context, configJson);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error compiling configuration", e);
+                }
+            }
+        } else {
+            Log.d(TAG, "No configuration found in SharedPreferences");
+        }
+
+        prefsListener = (sharedPreferences, key) -> {
+            if (CONFIG_KEY.equals(key)) {
+                String json = sharedPreferences.getString(CONFIG_KEY, null);
+                ConfigSnapshot current = CURRENT.get();
+                if (json == null || (current != null && current.isCompiledFrom(json))) {
+                    return;
+                }
+                try {
+                    publish(context, json);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error compiling changed configuration", e);
+                }
+            }
+        };
+        prefs.registerOnSharedPreferenceChangeListener(prefsListener);
+        initialized = true;
+    }
+
+    private static synchronized ConfigSnapshot publish(Context context, String configJson) throws Exception {
+        ConfigSnapshot current = CURRENT.get();
+        if (current != null && current.isCompiledFrom(configJson)) {
+            return current;
+        }
+        long version = current == null ? 1 : current.version + 1;
+        ConfigSnapshot snapshot = ConfigSnapshot.parse(configJson, version);
+        CURRENT.set(snapshot);
+        writeSnapshot(context, snapshot);
+        Log.d(TAG, "Published configuration v" + version + " (" + snapshot.keywordMatcher.keywordCount() + " keywords)");
+        return snapshot;
+    }
+
+    private static ConfigSnapshot readSnapshot(Context context) {
+        File file = new File(context.getFilesDir(), SNAPSHOT_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return ConfigSnapshot.readFrom(in);
+        } catch (Exception e) {
+            Log.e(TAG, "Discarding unreadable compiled configuration", e);
+            return null;
+        }
+    }
+
+    private static void writeSnapshot(Context context, ConfigSnapshot snapshot) {
+        File file = new File(context.getFilesDir(), SNAPSHOT_FILE);
+        File temp = new File(context.getFilesDir(), SNAPSHOT_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            snapshot.writeTo(out);
+        } catch (Exception e) {
+            Log.e(TAG, "Error persisting compiled configuration", e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Error replacing compiled configuration file");
+            temp.delete();
+        }
+    }
+}
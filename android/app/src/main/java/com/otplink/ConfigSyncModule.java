@@ -2,11 +2,20 @@ package com.otplink;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
 import android.util.Log;
+import com.otplink.core.OtpRecord;
+import java.util.Arrays;
+import java.util.List;
 
 public class ConfigSyncModule extends ReactContextBaseJavaModule {
     private static final String TAG = "ConfigSyncModule";
@@ -25,12 +34,16 @@ public class ConfigSyncModule extends ReactContextBaseJavaModule {
     public void syncConfigToNative(String configJson, Promise promise) {
         try {
             Context context = getReactApplicationContext();
+            // Compile and swap the in-memory snapshot before persisting the raw JSON
+            ConfigStore.update(context, configJson);
+            
             SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
             SharedPreferences.Editor editor = prefs.edit();
-            editor.putString("otp_link_config", configJson);
+            editor.putString(ConfigStore.CONFIG_KEY, configJson);
             editor.apply();
             
             Log.d(TAG, "Configuration synced to native SharedPreferences");
+            ForwardWarmup.warmUp(context, "config");
             promise.resolve("Configuration synced successfully");
         } catch (Exception e) {
             Log.e(TAG, "Error syncing configuration", e);
@@ -38,31 +51,159 @@ public class ConfigSyncModule extends ReactContextBaseJavaModule {
         }
     }
 
+    @ReactMethod
+    public void startInboxScanner(Promise promise) {
+        try {
+            // Resolves once the scanner thread has tried, with whether it is actually running
+            InboxScanner.get(getReactApplicationContext()).start(promise::resolve);
+        } catch (Exception e) {
+            Log.e(TAG, "Error starting inbox scanner", e);
+            promise.reject("SCANNER_ERROR", "Failed to start inbox scanner: " + e.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void stopInboxScanner(Promise promise) {
+        try {
+            InboxScanner.get(getReactApplicationContext()).stop();
+            promise.resolve(true);
+        } catch (Exception e) {
+            Log.e(TAG, "Error stopping inbox scanner", e);
+            promise.reject("SCANNER_ERROR", "Failed to stop inbox scanner: " + e.getMessage());
+        }
+    }
+
     @ReactMethod
     public void isOtpAlreadyProcessed(String otp, String sender, double timestamp, Promise promise) {
         try {
             Context context = getReactApplicationContext();
-            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
             
-            // Create the same key format as background processor
-            String otpKey = otp + "-" + sender + "-" + ((long)timestamp / 300000); // 5-minute window
-            
-            String processedOtps = prefs.getString("processed_otps", "[]");
-            org.json.JSONArray otpsArray = new org.json.JSONArray(processedOtps);
-            
-            for (int i = 0; i < otpsArray.length(); i++) {
-                if (otpsArray.getString(i).equals(otpKey)) {
-                    Log.d(TAG, "OTP already processed in background: " + otpKey);
-                    promise.resolve(true);
-                    return;
-                }
-            }
-            
-            Log.d(TAG, "OTP not processed in background: " + otpKey);
-            promise.resolve(false);
+            // Same index and key as the background processor
+            boolean processed = DedupeIndex.get(context).contains(DedupeIndex.key(otp, sender), (long) timestamp);
+            OtpLog.d(TAG, processed ? "OTP {*} from {} already processed in background"
+                : "OTP {*} from {} not processed in background", otp, sender);
+            promise.resolve(processed);
         } catch (Exception e) {
             Log.e(TAG, "Error checking if OTP was processed", e);
             promise.resolve(false);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Batch dedupe check for polling mode: takes [{otp, sender, timestamp}] and resolves
+     * with a boolean per entry, in order, in a single bridge hop.
+     */
+    @ReactMethod
+    public void areOtpsProcessed(ReadableArray entries, Promise promise) {
+        try {
+            int[] indexes = new int[entries.size()];
+            long[] keys = new long[entries.size()];
+            long[] timestamps = new long[entries.size()];
+            int count = readEntries(entries, indexes, keys, timestamps);
+            boolean[] processed = DedupeIndex.get(getReactApplicationContext())
+                .containsAll(Arrays.copyOf(keys, count), Arrays.copyOf(timestamps, count));
+            
+            // Malformed entries report false, so the result stays aligned with the input
+            boolean[] aligned = new boolean[entries.size()];
+            for (int i = 0; i < count; i++) {
+                aligned[indexes[i]] = processed[i];
+            }
+            WritableArray result = Arguments.createArray();
+            for (boolean value : aligned) {
+                result.pushBoolean(value);
+            }
+            promise.resolve(result);
+        } catch (Exception e) {
+            Log.e(TAG, "Error checking OTP batch", e);
+            promise.reject("DEDUPE_ERROR", "Failed to check OTP batch: " + e.getMessage());
+        }
+    }
+
+    /** Marks every [{otp, sender, timestamp}] entry as forwarded; resolves with the number marked. */
+    @ReactMethod
+    public void markOtpsProcessed(ReadableArray entries, Promise promise) {
+        try {
+            int[] indexes = new int[entries.size()];
+            long[] keys = new long[entries.size()];
+            long[] timestamps = new long[entries.size()];
+            int count = readEntries(entries, indexes, keys, timestamps);
+            DedupeIndex.get(getReactApplicationContext()).markAll(Arrays.copyOf(keys, count), Arrays.copyOf(timestamps, count));
+            promise.resolve(count);
+        } catch (Exception e) {
+            Log.e(TAG, "Error marking OTP batch", e);
+            promise.reject("DEDUPE_ERROR", "Failed to mark OTP batch: " + e.getMessage());
+        }
+    }
+
+    // Fills the arrays with the well-formed entries and their input index; returns how many there are
+    private static int readEntries(ReadableArray entries, int[] indexes, long[] keys, long[] timestamps) {
+        int count = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            ReadableMap entry = entries.getType(i) == ReadableType.Map ? entries.getMap(i) : null;
+            if (entry == null || !hasValue(entry, "otp", ReadableType.String)
+                    || !hasValue(entry, "timestamp", ReadableType.Number)) {
+                Log.w(TAG, "Skipping malformed OTP entry at index " + i);
+                continue;
+            }
+            String sender = hasValue(entry, "sender", ReadableType.String) ? entry.getString("sender") : null;
+            indexes[count] = i;
+            keys[count] = DedupeIndex.key(entry.getString("otp"), sender);
+            timestamps[count] = (long) entry.getDouble("timestamp");
+            count++;
+        }
+        return count;
+    }
+
+    private static boolean hasValue(ReadableMap map, String key, ReadableType type) {
+        return map.hasKey(key) && !map.isNull(key) && map.getType(key) == type;
+    }
+
+    @ReactMethod
+    public void getOtpRecords(double beforeSeq, int limit, Promise promise) {
+        try {
+            // Pass beforeSeq <= 0 for the newest page, then the last record's seq for the next one
+            List<OtpRecord> page = OtpRecordStore.get(getReactApplicationContext()).readPage((long) beforeSeq, limit);
+            WritableArray records = Arguments.createArray();
+            for (OtpRecord record : page) {
+                records.pushMap(toWritableMap(record));
+            }
+            promise.resolve(records);
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading OTP records", e);
+            promise.reject("RECORDS_ERROR", "Failed to read OTP records: " + e.getMessage());
+        }
+    }
+
+    static WritableMap toWritableMap(OtpRecord record) {
+        WritableMap map = Arguments.createMap();
+        map.putString("id", record.id());
+        map.putDouble("seq", record.seq);
+        map.putString("otp", record.otp);
+        map.putString("source", "sms");
+        map.putString("sender", record.sender);
+        map.putString("message", record.message);
+        map.putDouble("timestamp", record.timestamp);
+        map.putBoolean("forwarded", record.forwarded);
+        if (record.status != null) {
+            map.putString("deliveryStatus", record.status);
+        }
+        map.putInt("attempts", record.attempts);
+        if (record.deliveries != null) {
+            // "destination=status;..." becomes { destination: status }
+            WritableMap deliveries = Arguments.createMap();
+            for (String entry : record.deliveries.split(";")) {
+                int split = entry.lastIndexOf('=');
+                if (split > 0) {
+                    deliveries.putString(entry.substring(0, split), entry.substring(split + 1));
+                }
+            }
+            map.putMap("deliveries", deliveries);
+        }
+        if (record.forwardingMethod != null) {
+            map.putString("forwardingMethod", record.forwardingMethod);
+        } else {
+            map.putNull("forwardingMethod");
+        }
+        return map;
+    }
+}
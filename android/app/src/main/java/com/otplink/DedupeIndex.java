@@ -0,0 +1,212 @@
+package com.otplink;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.otplink.core.DedupeStore;
+import com.otplink.core.DedupeWindow;
+import org.json.JSONArray;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Persistent wrapper around {@link DedupeWindow} for forwarded OTPs. Marks are appended
+ * to a compact file of 16-byte (key, time) records that is replayed after process death
+ * and compacted once it grows past {@link #COMPACT_THRESHOLD} records.
+ */
+final class DedupeIndex implements DedupeStore {
+    private static final String TAG = "DedupeIndex";
+    private static final String FILE_NAME = "otp_dedupe.bin";
+    private static final String LEGACY_PREFS_KEY = "processed_otps";
+    static final long WINDOW_MS = DedupeWindow.WINDOW_MS;
+    private static final int COMPACT_THRESHOLD = 1024;
+
+    private final File file;
+    private final DedupeWindow window = new DedupeWindow();
+
+    private DataOutputStream log;
+    private int logRecords;
+
+    private static volatile DedupeIndex instance;
+
+    DedupeIndex(File file) {
+        this.file = file;
+        load();
+    }
+
+    /** Process-wide index shared by the background processor and the bridge module. */
+    static DedupeIndex get(Context context) {
+        DedupeIndex result = instance;
+        if (result == null) {
+            synchronized (DedupeIndex.class) {
+                result = instance;
+                if (result == null) {
+                    Context appContext = context.getApplicationContext();
+                    result = new DedupeIndex(new File(appContext.getFilesDir(), FILE_NAME));
+                    result.migrateLegacyKeys(appContext);
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    static long key(String otp, String sender) {
+        return DedupeWindow.key(otp, sender);
+    }
+
+    @Override
+    public synchronized boolean contains(long key, long timestamp) {
+        return window.contains(key, timestamp);
+    }
+
+    @Override
+    public synchronized void mark(long key, long timestamp) {
+        window.mark(key, timestamp);
+        append(key, timestamp);
+    }
+
+    /** Batch form of {@link #contains(long, long)}, answered under a single lock acquisition. */
+    synchronized boolean[] containsAll(long[] keys, long[] timestamps) {
+        boolean[] result = new boolean[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            result[i] = window.contains(keys[i], timestamps[i]);
+        }
+        return result;
+    }
+
+    /** Batch form of {@link #mark(long, long)}; all records reach the log in one write. */
+    synchronized void markAll(long[] keys, long[] timestamps) {
+        for (int i = 0; i < keys.length; i++) {
+            window.mark(keys[i], timestamps[i]);
+        }
+        ByteBuffer records = ByteBuffer.allocate(keys.length * 16);
+        for (int i = 0; i < keys.length; i++) {
+            records.putLong(keys[i]).putLong(timestamps[i]);
+        }
+        appendRecords(records.array(), keys.length);
+    }
+
+    synchronized int size() {
+        return window.size();
+    }
+
+    private void load() {
+        long now = System.currentTimeMillis();
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    long key = in.readLong();
+                    long timestamp = in.readLong();
+                    if (timestamp > now - WINDOW_MS) {
+                        window.restore(key, timestamp);
+                    }
+                }
+            } catch (EOFException e) {
+                // End of log; a torn trailing record is simply ignored
+            } catch (IOException e) {
+                Log.w(TAG, "Error reading dedupe log: " + e.getMessage());
+            }
+        }
+        window.expire(now);
+        compact();
+    }
+
+    private void append(long key, long timestamp) {
+        if (logRecords >= COMPACT_THRESHOLD) {
+            compact();
+        }
+        try {
+            if (log == null) {
+                log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 16));
+            }
+            log.writeLong(key);
+            log.writeLong(timestamp);
+            log.flush();
+            logRecords++;
+        } catch (IOException e) {
+            Log.w(TAG, "Error appending to dedupe log: " + e.getMessage());
+        }
+    }
+
+    private void appendRecords(byte[] records, int count) {
+        if (logRecords + count > COMPACT_THRESHOLD) {
+            // Compaction rewrites the live table, which already holds this batch
+            compact();
+            return;
+        }
+        try {
+            if (log == null) {
+                log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 16));
+            }
+            log.write(records);
+            log.flush();
+            logRecords += count;
+        } catch (IOException e) {
+            Log.w(TAG, "Error appending to dedupe log: " + e.getMessage());
+        }
+    }
+
+    // Imports "otp-sender-bucket" strings from the old processed_otps JSON array once
+    private void migrateLegacyKeys(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(ConfigStore.PREFS_NAME, Context.MODE_PRIVATE);
+        String legacy = prefs.getString(LEGACY_PREFS_KEY, null);
+        if (legacy == null) {
+            return;
+        }
+        try {
+            JSONArray otpsArray = new JSONArray(legacy);
+            for (int i = 0; i < otpsArray.length(); i++) {
+                String otpKey = otpsArray.getString(i);
+                int first = otpKey.indexOf('-');
+                int last = otpKey.lastIndexOf('-');
+                if (first <= 0 || last <= first) {
+                    continue;
+                }
+                long timestamp = Long.parseLong(otpKey.substring(last + 1)) * 300000;
+                mark(key(otpKey.substring(0, first), otpKey.substring(first + 1, last)), timestamp);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Error migrating processed_otps: " + e.getMessage());
+        }
+        prefs.edit().remove(LEGACY_PREFS_KEY).apply();
+    }
+
+    /** Rewrites the log with only the live entries. */
+    private void compact() {
+        closeLog();
+        File temp = new File(file.getPath() + ".tmp");
+        int written;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            written = window.writeTo(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Error compacting dedupe log: " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        if (temp.renameTo(file)) {
+            logRecords = written;
+        } else {
+            temp.delete();
+        }
+    }
+
+    private void closeLog() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                // Nothing left to flush
+            }
+            log = null;
+        }
+    }
+}
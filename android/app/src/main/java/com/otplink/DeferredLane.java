@@ -0,0 +1,158 @@
+package com.otplink;
+
+import android.content.Context;
+import android.os.Process;
+import com.otplink.core.OtpRecord;
+import com.otplink.core.OtpRecordLog;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Work that follows a forward but must never delay the next one: appending the
+ * outcome to the record log, notifying the history index and JS, and linking failed
+ * OTPs to their outbox job. The critical lane (lanes, coalescer, webhook callbacks) only
+ * queues a record here and moves on. One background-priority thread drains the queue
+ * in batches, so a burst costs one fsync and one index catch-up per batch rather than
+ * one per OTP.
+ *
+ * Each entry's {@code onDone} runs after its record is durable, so the broadcast and
+ * wake lock held by the caller cover the deferred work too. It runs even when saving or
+ * anything after it fails, since the caller's wake lock is only released by it.
+ */
+final class DeferredLane {
+    private static final String TAG = "DeferredLane";
+    private static final int MAX_BATCH = 32;
+
+    private static volatile DeferredLane instance;
+
+    /** Runs on the deferred thread once the record is durable; {@code seq} is 0 if saving failed. */
+    interface AfterSave {
+        void onSaved(long seq);
+    }
+
+    private static final class Entry {
+        final OtpRecord record;
+        final AfterSave afterSave;
+        final Runnable onDone;
+        final long enqueuedAt;
+
+        Entry(OtpRecord record, AfterSave afterSave, Runnable onDone) {
+            this.record = record;
+            this.afterSave = afterSave;
+            this.onDone = onDone;
+            this.enqueuedAt = System.nanoTime();
+        }
+    }
+
+    private final Context context;
+    private final LinkedBlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+
+    private DeferredLane(Context context) {
+        this.context = context;
+        Thread thread = new Thread(this::drainLoop, "otp-deferred");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    static DeferredLane get(Context context) {
+        DeferredLane result = instance;
+        if (result == null) {
+            synchronized (DeferredLane.class) {
+                result = instance;
+                if (result == null) {
+                    result = new DeferredLane(context.getApplicationContext());
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Queues a record for saving; never blocks. {@code afterSave} and {@code onDone} may be null. */
+    void save(OtpRecord record, AfterSave afterSave, Runnable onDone) {
+        queue.add(new Entry(record, afterSave, onDone));
+    }
+
+    int queueDepth() {
+        return queue.size();
+    }
+
+    private void drainLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+                process(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException | Error e) {
+                // Keep the lane alive; a dead lane would strand every later OTP
+                OtpLog.e(TAG, "Error in deferred batch of {#}", batch.size(), e);
+            } finally {
+                complete(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<Entry> batch) {
+        long start = System.nanoTime();
+        for (Entry entry : batch) {
+            PipelineMetrics.record(PipelineMetrics.Stage.DEFERRED_WAIT, start - entry.enqueuedAt);
+        }
+        long[] seqs = append(batch);
+        if (seqs[0] > 0) {
+            HistoryIndexStore.get(context).onAppended();
+        }
+        OtpLog.d(TAG, "Saved batch of {#} records in {#}us", batch.size(), (System.nanoTime() - start) / 1000);
+
+        for (int i = 0; i < batch.size(); i++) {
+            Entry entry = batch.get(i);
+            try {
+                if (entry.afterSave != null) {
+                    entry.afterSave.onSaved(seqs[i]);
+                }
+                if (seqs[i] > 0) {
+                    OtpEvents.emitOtpProcessed(context, entry.record);
+                }
+            } catch (RuntimeException | Error e) {
+                // Later entries still need their outbox link and event
+                OtpLog.e(TAG, "Error after saving OTP record #{#}", seqs[i], e);
+            }
+        }
+    }
+
+    private static void complete(List<Entry> batch) {
+        for (Entry entry : batch) {
+            if (entry.onDone == null) {
+                continue;
+            }
+            try {
+                entry.onDone.run();
+            } catch (RuntimeException | Error e) {
+                OtpLog.e(TAG, "Error completing OTP record #{#}", entry.record.seq, e);
+            }
+        }
+    }
+
+    // Appends every record of the batch, then waits for a single fsync covering all of them
+    private long[] append(List<Entry> batch) {
+        long[] seqs = new long[batch.size()];
+        try {
+            OtpRecordLog log = OtpRecordStore.get(context);
+            long start = System.nanoTime();
+            for (int i = 0; i < batch.size(); i++) {
+                seqs[i] = log.append(batch.get(i).record);
+            }
+            log.awaitDurable(seqs[batch.size() - 1]);
+            PipelineMetrics.recordSince(PipelineMetrics.Stage.PERSIST, start);
+        } catch (Exception e) {
+            // Records appended before the failure keep their seq
+            OtpLog.e(TAG, "Error saving OTP records", e);
+        }
+        return seqs;
+    }
+}
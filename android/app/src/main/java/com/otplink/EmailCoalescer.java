@@ -0,0 +1,172 @@
+package com.otplink;
+
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.mail.MessagingException;
+
+/**
+ * Collects OTP emails that arrive in a burst and sends them together. The first OTP for
+ * a destination is sent at once and opens a window of {@link EmailSettings#coalesceWindowMs};
+ * everything that arrives before it closes is flushed together when it does, so a lone
+ * OTP is never held and no OTP waits longer than the window. A flush either becomes one
+ * digest email or, with digests off, back-to-back sends over the same pooled SMTP
+ * session. A window of 0 sends every OTP on its own.
+ *
+ * Sends and their callbacks run on a small pool, never on the timer thread, so one slow
+ * relay cannot push back another destination's flush.
+ */
+final class EmailCoalescer {
+    private static final String TAG = "EmailCoalescer";
+    private static final int MAX_BATCH = 20;
+    private static final int SEND_THREADS = 3;
+
+    private static final EmailCoalescer INSTANCE = new EmailCoalescer();
+
+    /** Receives the outcome of one OTP; {@code error} is null when it was delivered. */
+    interface Callback {
+        void onResult(Exception error);
+    }
+
+    static final class Pending {
+        final String otp;
+        final String sender;
+        final String message;
+        final long receivedAt;
+        final Callback callback;
+
+        Pending(String otp, String sender, String message, long receivedAt, Callback callback) {
+            this.otp = otp;
+            this.sender = sender;
+            this.message = message;
+            this.receivedAt = receivedAt;
+            this.callback = callback;
+        }
+    }
+
+    private static final class Batch {
+        final EmailSettings settings;
+        final List<Pending> items = new ArrayList<>();
+
+        Batch(EmailSettings settings) {
+            this.settings = settings;
+        }
+    }
+
+    // Only fires window timers; sends run on the pool so a slow relay never delays another flush
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "otp-coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ThreadPoolExecutor senders;
+
+    // Open batches by destination, guarded by this
+    private final Map<String, Batch> open = new HashMap<>();
+
+    private EmailCoalescer() {
+        senders = new ThreadPoolExecutor(SEND_THREADS, SEND_THREADS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "otp-email");
+                thread.setDaemon(true);
+                return thread;
+            });
+        senders.allowCoreThreadTimeOut(true);
+    }
+
+    static EmailCoalescer get() {
+        return INSTANCE;
+    }
+
+    void submit(EmailSettings settings, Pending pending) {
+        if (settings.coalesceWindowMs <= 0) {
+            sendAsync(settings, Collections.singletonList(pending));
+            return;
+        }
+        String destination = SmtpEndpoint.from(settings).key() + ">" + settings.recipient;
+        boolean leading = false;
+        Batch full = null;
+        synchronized (this) {
+            Batch batch = open.get(destination);
+            if (batch == null) {
+                leading = true;
+                // Leading edge: this OTP goes out now and only the ones that follow it wait
+                Batch window = new Batch(settings);
+                open.put(destination, window);
+                timer.schedule(() -> flush(destination, window), settings.coalesceWindowMs, TimeUnit.MILLISECONDS);
+            } else {
+                batch.items.add(pending);
+                if (batch.items.size() >= MAX_BATCH) {
+                    open.remove(destination);
+                    full = batch;
+                }
+            }
+        }
+        if (leading) {
+            sendAsync(settings, Collections.singletonList(pending));
+        } else if (full != null) {
+            sendAsync(full.settings, full.items);
+        }
+    }
+
+    private void flush(String destination, Batch batch) {
+        synchronized (this) {
+            // A batch that filled up early was already sent, and a newer window may own the key
+            if (open.get(destination) != batch) {
+                return;
+            }
+            open.remove(destination);
+        }
+        if (!batch.items.isEmpty()) {
+            sendAsync(batch.settings, batch.items);
+        }
+    }
+
+    private void sendAsync(EmailSettings settings, List<Pending> items) {
+        senders.execute(() -> send(settings, items));
+    }
+
+    private void send(EmailSettings settings, List<Pending> items) {
+        if (items.size() > 1) {
+            Log.d(TAG, "Flushing " + items.size() + " coalesced OTPs" + (settings.coalesceDigest ? " as one digest" : ""));
+        }
+        if (items.size() > 1 && settings.coalesceDigest) {
+            Exception error = null;
+            try {
+                EmailForwarder.sendDigest(settings, items);
+            } catch (MessagingException | RuntimeException e) {
+                error = e;
+            }
+            for (Pending pending : items) {
+                complete(pending, error);
+            }
+            return;
+        }
+        // Back to back: every send after the first reuses the connection the first one opened
+        for (Pending pending : items) {
+            Exception error = null;
+            try {
+                EmailForwarder.send(settings, pending.otp, pending.sender, pending.message, pending.receivedAt);
+            } catch (MessagingException | RuntimeException e) {
+                error = e;
+            }
+            complete(pending, error);
+        }
+    }
+
+    private static void complete(Pending pending, Exception error) {
+        try {
+            pending.callback.onResult(error);
+        } catch (Exception e) {
+            OtpLog.e(TAG, "Error in forward callback for OTP {*}", pending.otp, e);
+        }
+    }
+}
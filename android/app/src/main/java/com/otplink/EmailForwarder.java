@@ -0,0 +1,70 @@
+package com.otplink;
+
+import java.util.Date;
+import java.util.List;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * Builds and sends the OTP notification email through the configured relays. The
+ * Message-ID is derived from the OTP itself, so a hedged duplicate or an outbox retry
+ * of the same OTP is one message to the recipient.
+ */
+final class EmailForwarder {
+    private EmailForwarder() {
+    }
+
+    static MimeMessage compose(SmtpEndpoint endpoint, EmailSettings settings, String otp, String sender,
+                               String message, long timestamp) throws MessagingException {
+        MimeMessage emailMessage = SmtpConnectionPool.get().newMessage(endpoint, messageId(otp, sender, timestamp));
+        emailMessage.setFrom(new InternetAddress(settings.username));
+        emailMessage.setRecipients(Message.RecipientType.TO, InternetAddress.parse(settings.recipient));
+        emailMessage.setSubject("OTPLink - OTP: " + otp + " from " + sender);
+        emailMessage.setText("OTP: " + otp + "\nFrom: " + sender + "\nMessage: " + message + "\nTime: " + new Date(timestamp) + "\n\nSent by OTPLink App (Background)");
+        return emailMessage;
+    }
+
+    /** One email listing every OTP of a coalesced burst, oldest first. */
+    static void sendDigest(EmailSettings settings, List<EmailCoalescer.Pending> items) throws MessagingException {
+        SmtpRelays.get().send(settings, endpoint -> composeDigest(endpoint, settings, items));
+    }
+
+    private static MimeMessage composeDigest(SmtpEndpoint endpoint, EmailSettings settings,
+                                             List<EmailCoalescer.Pending> items) throws MessagingException {
+        long digestKey = 0;
+        for (EmailCoalescer.Pending item : items) {
+            digestKey = digestKey * 31 + DedupeIndex.key(item.otp, item.sender);
+        }
+        MimeMessage emailMessage = SmtpConnectionPool.get().newMessage(endpoint,
+            "<" + Long.toHexString(digestKey) + "." + Long.toHexString(items.get(0).receivedAt) + ".digest@otplink>");
+        emailMessage.setFrom(new InternetAddress(settings.username));
+        emailMessage.setRecipients(Message.RecipientType.TO, InternetAddress.parse(settings.recipient));
+
+        StringBuilder subject = new StringBuilder("OTPLink - ").append(items.size()).append(" OTPs:");
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < items.size(); i++) {
+            EmailCoalescer.Pending item = items.get(i);
+            subject.append(i == 0 ? " " : ", ").append(item.otp).append(" from ").append(item.sender);
+            body.append("OTP: ").append(item.otp)
+                .append("\nFrom: ").append(item.sender)
+                .append("\nMessage: ").append(item.message)
+                .append("\nTime: ").append(new Date(item.receivedAt))
+                .append("\n\n");
+        }
+        body.append("Sent by OTPLink App (Background)");
+        emailMessage.setSubject(subject.toString());
+        emailMessage.setText(body.toString());
+        return emailMessage;
+    }
+
+    static void send(EmailSettings settings, String otp, String sender, String message, long timestamp) throws MessagingException {
+        SmtpRelays.get().send(settings, endpoint -> compose(endpoint, settings, otp, sender, message, timestamp));
+    }
+
+    // Same OTP, sender and receive time give the same id
+    static String messageId(String otp, String sender, long timestamp) {
+        return "<" + Long.toHexString(DedupeIndex.key(otp, sender)) + "." + Long.toHexString(timestamp) + "@otplink>";
+    }
+}
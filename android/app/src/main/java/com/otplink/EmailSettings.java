@@ -0,0 +1,28 @@
+package com.otplink;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class EmailSettings {
+    String smtpHost;
+    int smtpPort;
+    String username;
+    String password;
+    String recipient;
+    // Burst coalescing: how long the first OTP may wait for others, and whether to merge them
+    long coalesceWindowMs = DEFAULT_COALESCE_WINDOW_MS;
+    boolean coalesceDigest = true;
+    // Relays tried after smtpHost, in order; they share the timeouts below
+    List<SmtpEndpoint> fallbackRelays = new ArrayList<>();
+    // Race the first fallback against a primary that is slower than its recent p95
+    boolean hedgeSends;
+    int connectTimeoutMs = SmtpEndpoint.DEFAULT_CONNECT_TIMEOUT_MS;
+    int readTimeoutMs = SmtpEndpoint.DEFAULT_READ_TIMEOUT_MS;
+
+    static final long DEFAULT_COALESCE_WINDOW_MS = 500;
+    static final long MAX_COALESCE_WINDOW_MS = 1000;
+
+    boolean isConfigured() {
+        return recipient != null && !recipient.isEmpty();
+    }
+}
@@ -0,0 +1,437 @@
+package com.otplink;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.util.Log;
+import com.otplink.core.OtpRecord;
+import com.otplink.core.OtpRecordLog;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+
+/**
+ * Persistent queue of OTP forwards that could not be delivered on the first try. Jobs
+ * are kept in a small file rewritten atomically on every change and drained by a single
+ * scheduler thread with jittered exponential backoff. Each destination has a
+ * circuit breaker, so a dead SMTP server is not hammered by every pending OTP, and jobs
+ * older than {@link #OTP_TTL_MS} are dropped because the code has expired anyway.
+ * A drain runs as soon as the default network comes back; all due jobs for one
+ * destination are then sent back to back over the same pooled connection.
+ *
+ * Only the OTP and the record sequence are stored; the destination is taken from the
+ * current configuration at send time, so credentials never land in the outbox file.
+ */
+final class ForwardOutbox {
+    private static final String TAG = "ForwardOutbox";
+    private static final String FILE_NAME = "otp_outbox.bin";
+    private static final int MAGIC = 0x4f54424f; // "OTBO"
+    private static final int FORMAT_VERSION = 1;
+
+    static final long OTP_TTL_MS = 10 * 60 * 1000;
+    static final long BASE_BACKOFF_MS = 5_000;
+    static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+    static final int BREAKER_THRESHOLD = 3;
+    static final long BREAKER_OPEN_MS = 60_000;
+    private static final int MAX_JOBS = 256;
+
+    private static volatile ForwardOutbox instance;
+
+    private final Context context;
+    private final File file;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "otp-outbox");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by this
+    private final List<Job> jobs = new ArrayList<>();
+    private final Map<String, Breaker> breakers = new HashMap<>();
+    private ScheduledFuture<?> pendingDrain;
+    private long pendingDrainAt = Long.MAX_VALUE;
+
+    private ForwardOutbox(Context context) {
+        this.context = context;
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+        load();
+    }
+
+    /** Process-wide outbox; starts draining whatever survived the last process. */
+    static ForwardOutbox get(Context context) {
+        ForwardOutbox result = instance;
+        if (result == null) {
+            synchronized (ForwardOutbox.class) {
+                result = instance;
+                if (result == null) {
+                    result = new ForwardOutbox(context.getApplicationContext());
+                    result.registerNetworkCallback();
+                    instance = result;
+                    result.scheduleDrain(0);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** The outbox if this process already created it, else null; never starts one. */
+    static ForwardOutbox peek() {
+        return instance;
+    }
+
+    static final class Job {
+        long recordSeq;
+        long receivedAt;
+        int attempts;
+        long nextAttemptAt;
+        String otp;
+        String sender;
+        String message;
+        // Latest outcome while the job has no record yet, applied once the record is linked
+        String status;
+        boolean forwarded;
+    }
+
+    private static final class Breaker {
+        int consecutiveFailures;
+        long openUntil;
+    }
+
+    /**
+     * Queues a forward that already failed {@code attempts} times and persists it before
+     * returning. {@code recordSeq} may be 0 and the record linked later with {@link #linkRecord}.
+     */
+    Job enqueue(long recordSeq, String otp, String sender, String message, long receivedAt, int attempts) {
+        Job job = new Job();
+        job.recordSeq = recordSeq;
+        job.otp = otp;
+        job.sender = sender;
+        job.message = message;
+        job.receivedAt = receivedAt;
+        job.attempts = attempts;
+        long delay = backoff(attempts);
+        job.nextAttemptAt = System.currentTimeMillis() + delay;
+        synchronized (this) {
+            if (jobs.size() >= MAX_JOBS) {
+                Job dropped = jobs.remove(0);
+                finish(dropped, OtpRecord.STATUS_EXPIRED, false);
+            }
+            jobs.add(job);
+            persist();
+        }
+        OtpLog.d(TAG, "Queued OTP {*} from {}, retry in {#}ms", otp, sender, delay);
+        scheduleDrain(delay);
+        return job;
+    }
+
+    /** Links a queued job to its saved record, applying any outcome the job reached before. */
+    synchronized void linkRecord(Job job, long recordSeq) {
+        job.recordSeq = recordSeq;
+        if (job.status != null) {
+            updateRecord(job, job.status, job.forwarded);
+        }
+        if (jobs.contains(job)) {
+            persist();
+        }
+    }
+
+    synchronized int size() {
+        return jobs.size();
+    }
+
+    /** Exponential backoff with jitter: half the base delay plus a random share of min(cap, base * 2^(attempts-1)). */
+    static long backoff(int attempts) {
+        int shift = Math.min(Math.max(attempts - 1, 0), 16);
+        long ceiling = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << shift);
+        return BASE_BACKOFF_MS / 2 + ThreadLocalRandom.current().nextLong(ceiling);
+    }
+
+    private void scheduleDrain(long delayMs) {
+        long at = System.currentTimeMillis() + delayMs;
+        synchronized (this) {
+            if (pendingDrain != null && !pendingDrain.isDone() && pendingDrainAt <= at) {
+                return;
+            }
+            if (pendingDrain != null) {
+                pendingDrain.cancel(false);
+            }
+            pendingDrainAt = at;
+            pendingDrain = scheduler.schedule(this::drain, Math.max(delayMs, 0), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void drain() {
+        long now = System.currentTimeMillis();
+        List<Job> due = new ArrayList<>();
+        synchronized (this) {
+            pendingDrain = null;
+            pendingDrainAt = Long.MAX_VALUE;
+            Iterator<Job> iterator = jobs.iterator();
+            while (iterator.hasNext()) {
+                Job job = iterator.next();
+                if (now - job.receivedAt >= OTP_TTL_MS) {
+                    PipelineMetrics.increment(PipelineMetrics.Counter.EXPIRED);
+                    OtpLog.d(TAG, "Discarding stale OTP {*} after {#} attempts", job.otp, job.attempts);
+                    iterator.remove();
+                    finish(job, OtpRecord.STATUS_EXPIRED, false);
+                } else if (job.nextAttemptAt <= now) {
+                    due.add(job);
+                }
+            }
+            persist();
+        }
+
+        if (!due.isEmpty()) {
+            sendBatch(due);
+        }
+
+        long next = Long.MAX_VALUE;
+        synchronized (this) {
+            for (Job job : jobs) {
+                next = Math.min(next, Math.min(job.nextAttemptAt, job.receivedAt + OTP_TTL_MS));
+            }
+        }
+        if (next != Long.MAX_VALUE) {
+            scheduleDrain(next - System.currentTimeMillis());
+        }
+    }
+
+    private void sendBatch(List<Job> due) {
+        ConfigSnapshot config = ConfigStore.get(context);
+        EmailSettings settings = config != null ? config.emailSettings : null;
+        if (settings == null || !settings.isConfigured()) {
+            synchronized (this) {
+                for (Job job : due) {
+                    jobs.remove(job);
+                    finish(job, OtpRecord.STATUS_SKIPPED, false);
+                }
+                persist();
+            }
+            return;
+        }
+
+        // Only one destination is configured today, so the whole batch shares one connection
+        String destination = SmtpEndpoint.from(settings).key() + ">" + settings.recipient;
+        Breaker breaker;
+        synchronized (this) {
+            breaker = breakers.get(destination);
+            if (breaker == null) {
+                breaker = new Breaker();
+                breakers.put(destination, breaker);
+            }
+        }
+
+        int sent = 0;
+        for (Job job : due) {
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                if (breaker.openUntil > now) {
+                    // Circuit open: defer the rest of the batch until it half-opens
+                    job.nextAttemptAt = Math.max(job.nextAttemptAt, breaker.openUntil);
+                    continue;
+                }
+            }
+            job.attempts++;
+            PipelineMetrics.increment(PipelineMetrics.Counter.RETRIES);
+            try {
+                EmailForwarder.send(settings, job.otp, job.sender, job.message, job.receivedAt);
+                sent++;
+                PipelineMetrics.increment(PipelineMetrics.Counter.FORWARDED);
+                synchronized (this) {
+                    breaker.consecutiveFailures = 0;
+                    jobs.remove(job);
+                    finish(job, OtpRecord.STATUS_SENT, true);
+                }
+            } catch (SendFailedException e) {
+                // The server rejected the recipients; retrying will not change that
+                OtpLog.e(TAG, "Forward of OTP {*} rejected permanently", job.otp, e);
+                synchronized (this) {
+                    jobs.remove(job);
+                    finish(job, OtpRecord.STATUS_FAILED, false);
+                }
+            } catch (MessagingException | RuntimeException e) {
+                OtpLog.w(TAG, "Retry {#} of OTP {*} failed: {}", job.otp, e.getMessage(), job.attempts);
+                synchronized (this) {
+                    job.nextAttemptAt = System.currentTimeMillis() + backoff(job.attempts);
+                    if (++breaker.consecutiveFailures >= BREAKER_THRESHOLD) {
+                        breaker.openUntil = System.currentTimeMillis() + BREAKER_OPEN_MS;
+                        Log.w(TAG, "Circuit to " + destination + " open for " + BREAKER_OPEN_MS + "ms");
+                    }
+                    updateRecord(job, OtpRecord.STATUS_RETRYING, false);
+                }
+            }
+        }
+        synchronized (this) {
+            persist();
+        }
+        Log.d(TAG, "Outbox drain sent " + sent + " of " + due.size() + " due forwards");
+    }
+
+    // Writes the delivery outcome back to the OTP record and the dedupe window
+    private void finish(Job job, String status, boolean forwarded) {
+        updateRecord(job, status, forwarded);
+        if (forwarded) {
+            DedupeIndex.get(context).mark(DedupeIndex.key(job.otp, job.sender), job.receivedAt);
+        }
+    }
+
+    private void updateRecord(Job job, String status, boolean forwarded) {
+        if (job.recordSeq <= 0) {
+            job.status = status;
+            job.forwarded = forwarded;
+            return;
+        }
+        try {
+            OtpRecordLog log = OtpRecordStore.get(context);
+            OtpRecord record = log.read(job.recordSeq);
+            if (record == null) {
+                return;
+            }
+            // A webhook may already have delivered this OTP; then only the email leg changes
+            if (forwarded || !record.forwarded) {
+                record.status = status;
+                record.forwarded = forwarded;
+            }
+            if (forwarded) {
+                record.forwardingMethod = "email";
+            }
+            record.attempts = job.attempts;
+            record.deliveries = withDelivery(record.deliveries, "email", status);
+            if (log.update(record)) {
+                log.awaitDurable(record.seq);
+                OtpEvents.emitOtpProcessed(context, record);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error updating OTP record #" + job.recordSeq, e);
+        }
+    }
+
+    // Replaces the status of one "destination=status" entry of a record's deliveries
+    private static String withDelivery(String deliveries, String destination, String status) {
+        if (deliveries == null || deliveries.isEmpty()) {
+            return destination + "=" + status;
+        }
+        StringBuilder result = new StringBuilder();
+        boolean found = false;
+        for (String entry : deliveries.split(";")) {
+            if (result.length() > 0) {
+                result.append(';');
+            }
+            if (entry.startsWith(destination + "=")) {
+                result.append(destination).append('=').append(status);
+                found = true;
+            } else {
+                result.append(entry);
+            }
+        }
+        if (!found) {
+            result.append(';').append(destination).append('=').append(status);
+        }
+        return result.toString();
+    }
+
+    private void registerNetworkCallback() {
+        try {
+            ConnectivityManager connectivity = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            if (connectivity == null) {
+                return;
+            }
+            connectivity.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    boolean pending;
+                    synchronized (ForwardOutbox.this) {
+                        pending = !jobs.isEmpty();
+                        if (pending) {
+                            // Connectivity is back: retry now instead of waiting out the backoff
+                            long now = System.currentTimeMillis();
+                            for (Job job : jobs) {
+                                job.nextAttemptAt = Math.min(job.nextAttemptAt, now);
+                            }
+                        }
+                    }
+                    if (pending) {
+                        Log.d(TAG, "Network available, draining outbox");
+                        scheduleDrain(0);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not register network callback: " + e.getMessage());
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                Log.w(TAG, "Ignoring outbox file with unknown format");
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Job job = new Job();
+                job.recordSeq = in.readLong();
+                job.receivedAt = in.readLong();
+                job.attempts = in.readInt();
+                job.nextAttemptAt = in.readLong();
+                job.otp = in.readUTF();
+                job.sender = in.readUTF();
+                job.message = in.readUTF();
+                jobs.add(job);
+            }
+            Log.d(TAG, "Restored " + jobs.size() + " pending forwards");
+        } catch (IOException e) {
+            Log.w(TAG, "Error reading outbox: " + e.getMessage());
+        }
+    }
+
+    // Called with the monitor held
+    private void persist() {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(jobs.size());
+            for (Job job : jobs) {
+                out.writeLong(job.recordSeq);
+                out.writeLong(job.receivedAt);
+                out.writeInt(job.attempts);
+                out.writeLong(job.nextAttemptAt);
+                out.writeUTF(job.otp);
+                out.writeUTF(job.sender != null ? job.sender : "");
+                out.writeUTF(job.message != null ? job.message : "");
+            }
+            out.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Error persisting outbox", e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Could not replace outbox file");
+            temp.delete();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.otplink;
+
+import android.content.Context;
+import android.util.Log;
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import org.json.JSONObject;
+
+/**
+ * Takes the cold costs of the forwarding path off the first OTP: class loading and
+ * MIME handler setup for javax.mail, the compiled config and the on-disk stores, DNS
+ * for every relay and webhook host, and the SMTP connection itself, whose TLS session
+ * stays cached for later reconnects. Triggered at app start, boot and config sync;
+ * the first forward of each process is reported as warm or cold.
+ */
+final class ForwardWarmup {
+    private static final String TAG = "ForwardWarmup";
+    // Triggers closer together than this are skipped unless the configuration changed
+    private static final long MIN_INTERVAL_MS = 30_000;
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "otp-warmup");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicBoolean FIRST_FORWARD_REPORTED = new AtomicBoolean();
+
+    // Only touched on the warm-up thread, apart from the volatile flag
+    private static boolean classesLoaded;
+    private static long lastWarmedAt;
+    private static long lastConfigVersion = -1;
+    // System.nanoTime() when a warm-up last completed, 0 before the first one
+    private static volatile long warmedAtNanos;
+
+    private ForwardWarmup() {
+    }
+
+    static void warmUp(Context context, String trigger) {
+        warmUp(context, trigger, null);
+    }
+
+    /** Runs the warm-up in the background; {@code onDone}, if any, runs when it has finished. */
+    static void warmUp(Context context, String trigger, Runnable onDone) {
+        Context appContext = context.getApplicationContext();
+        EXECUTOR.execute(() -> {
+            try {
+                run(appContext, trigger);
+            } catch (Exception e) {
+                Log.w(TAG, "Warm-up (" + trigger + ") failed: " + e.getMessage());
+            } finally {
+                if (onDone != null) {
+                    onDone.run();
+                }
+            }
+        });
+    }
+
+    private static void run(Context context, String trigger) throws Exception {
+        long start = System.nanoTime();
+        if (!classesLoaded) {
+            preloadClasses();
+            classesLoaded = true;
+        }
+
+        ConfigSnapshot config = ConfigStore.get(context);
+        long version = config != null ? config.version : -1;
+        if (version == lastConfigVersion && System.currentTimeMillis() - lastWarmedAt < MIN_INTERVAL_MS) {
+            Log.d(TAG, "Skipping warm-up (" + trigger + "), last one was recent");
+            return;
+        }
+        DedupeIndex.get(context);
+        OtpRecordStore.get(context);
+        TemplateStore.get(context);
+
+        if (config != null) {
+            for (String url : config.webhookUrls) {
+                resolve(new URL(url).getHost());
+            }
+            EmailSettings settings = config.emailSettings;
+            if (settings != null && settings.isConfigured()) {
+                List<SmtpEndpoint> relays = SmtpEndpoint.relays(settings);
+                for (SmtpEndpoint relay : relays) {
+                    resolve(relay.host);
+                }
+                // DNS, TCP, TLS and AUTH for the primary; the pool keeps it open for the first OTP
+                try {
+                    SmtpConnectionPool.get().warm(relays.get(0));
+                } catch (Exception e) {
+                    Log.w(TAG, "Could not pre-connect to " + relays.get(0) + ": " + e.getMessage());
+                }
+            }
+        }
+
+        lastConfigVersion = version;
+        lastWarmedAt = System.currentTimeMillis();
+        warmedAtNanos = System.nanoTime();
+        PipelineMetrics.recordSince(PipelineMetrics.Stage.WARMUP, start);
+        Log.d(TAG, "Warm-up (" + trigger + ") finished in " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    // Loads javax.mail, activation and org.json and runs the MIME handler lookup once
+    private static void preloadClasses() throws Exception {
+        long start = System.nanoTime();
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        message.setText("warm-up");
+        message.saveChanges();
+        new JSONObject("{\"warm\":[1]}").getJSONArray("warm");
+        Class.forName("com.sun.mail.smtp.SMTPTransport");
+        Log.d(TAG, "Preloaded mail and JSON classes in " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    private static void resolve(String host) {
+        long start = System.nanoTime();
+        try {
+            // Fills the system resolver cache, which outlives this process
+            InetAddress.getAllByName(host);
+            Log.d(TAG, "Resolved " + host + " in " + (System.nanoTime() - start) / 1000000 + "ms");
+        } catch (Exception e) {
+            Log.w(TAG, "Could not resolve " + host + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reports the first successful forward of this process, as warm when a warm-up had
+     * completed before its SMS arrived; later calls are ignored.
+     */
+    static void reportFirstForward(long receivedNanos) {
+        if (!FIRST_FORWARD_REPORTED.compareAndSet(false, true)) {
+            return;
+        }
+        long warmedAt = warmedAtNanos;
+        boolean wasWarm = warmedAt != 0 && warmedAt - receivedNanos <= 0;
+        PipelineMetrics.recordSince(wasWarm ? PipelineMetrics.Stage.FIRST_FORWARD_WARM
+            : PipelineMetrics.Stage.FIRST_FORWARD_COLD, receivedNanos);
+        Log.d(TAG, "First forward of this process took " + (System.nanoTime() - receivedNanos) / 1000000 + "ms ("
+            + (wasWarm ? "warm" : "cold") + ")");
+    }
+}
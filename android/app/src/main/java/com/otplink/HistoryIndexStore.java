@@ -0,0 +1,120 @@
+package com.otplink;
+
+import android.content.Context;
+import android.util.Log;
+import com.otplink.core.HistoryIndex;
+import com.otplink.core.OtpRecord;
+import com.otplink.core.OtpRecordLog;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Owns the process-wide {@link HistoryIndex} over the record log. The index lives on one
+ * thread: it is built from the log on first use, then catches up with records appended
+ * since, both when {@link BackgroundOtpProcessor} saves a record and before each
+ * search, so it never slows down the processing lanes.
+ */
+final class HistoryIndexStore {
+    private static final String TAG = "HistoryIndexStore";
+
+    private static volatile HistoryIndexStore instance;
+
+    private final Context context;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "otp-history-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean catchUpScheduled = new AtomicBoolean();
+
+    // Only touched on the executor thread
+    private HistoryIndex index;
+
+    interface Callback {
+        /** {@code error} is null on success; a cancelled search fails with a CancellationException. */
+        void onResult(List<OtpRecord> records, HistoryIndex.Page page, Exception error);
+    }
+
+    private HistoryIndexStore(Context context) {
+        this.context = context;
+    }
+
+    static HistoryIndexStore get(Context context) {
+        HistoryIndexStore result = instance;
+        if (result == null) {
+            synchronized (HistoryIndexStore.class) {
+                result = instance;
+                if (result == null) {
+                    result = new HistoryIndexStore(context.getApplicationContext());
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Called after a record is appended to the log; indexing happens later on the index thread. */
+    void onAppended() {
+        if (!catchUpScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            catchUpScheduled.set(false);
+            try {
+                catchUp();
+            } catch (Exception e) {
+                Log.e(TAG, "Error indexing OTP records", e);
+            }
+        });
+    }
+
+    void search(HistoryIndex.Query query, HistoryIndex.Cancellation cancellation, Callback callback) {
+        executor.execute(() -> {
+            List<OtpRecord> records = new ArrayList<>();
+            HistoryIndex.Page page;
+            try {
+                OtpRecordLog log = catchUp();
+                long start = System.nanoTime();
+                page = index.search(query, cancellation);
+                for (long seq : page.seqs) {
+                    // Null if the ring overwrote it since
+                    OtpRecord record = log.read(seq);
+                    if (record != null) {
+                        records.add(record);
+                    }
+                }
+                Log.d(TAG, "History search found " + records.size() + " records in "
+                    + (System.nanoTime() - start) / 1000 + "us");
+            } catch (Exception e) {
+                callback.onResult(null, null, e);
+                return;
+            }
+            callback.onResult(records, page, null);
+        });
+    }
+
+    // Adds every record appended since the last call, in sequence order
+    private OtpRecordLog catchUp() throws Exception {
+        OtpRecordLog log = OtpRecordStore.get(context);
+        long start = System.nanoTime();
+        if (index == null) {
+            index = new HistoryIndex(log.capacity());
+        }
+        long last = log.lastSeq();
+        long from = Math.max(index.lastSeq() + 1, last - log.capacity() + 1);
+        int added = 0;
+        for (long seq = Math.max(1, from); seq <= last; seq++) {
+            OtpRecord record = log.read(seq);
+            if (record != null && index.add(seq, record.timestamp, record.sender, record.message)) {
+                added++;
+            }
+        }
+        if (added > 1) {
+            Log.d(TAG, "Indexed " + added + " OTP records in " + (System.nanoTime() - start) / 1000000 + "ms");
+        }
+        return log;
+    }
+}
@@ -0,0 +1,202 @@
+package com.otplink;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.provider.Telephony;
+import android.util.Log;
+
+/**
+ * Native fallback for delayed or suppressed SMS_RECEIVED broadcasts. A ContentObserver
+ * on the SMS provider triggers an incremental scan of the inbox for rows with an _id
+ * above the last one seen, reading only the columns the pipeline needs, and feeds each
+ * row into the pipeline through {@link SmsBackgroundService}. Messages the receiver already
+ * handled are dropped there as duplicates. A safety rescan runs on a timer that backs
+ * off from {@link #MIN_RESCAN_MS} to {@link #MAX_RESCAN_MS} while nothing changes.
+ * Rows older than {@link ForwardOutbox#OTP_TTL_MS} are skipped, since their code has
+ * expired, and forwarded rows keep the provider's received time.
+ */
+final class InboxScanner {
+    private static final String TAG = "InboxScanner";
+    private static final String PREFS_NAME = "otp_inbox_scanner";
+    private static final String LAST_ID_KEY = "last_id";
+    private static final long DEBOUNCE_MS = 250;
+    static final long MIN_RESCAN_MS = 5_000;
+    static final long MAX_RESCAN_MS = 5 * 60 * 1000;
+    private static final int MAX_ROWS_PER_SCAN = 200;
+    private static final String[] PROJECTION = {
+        Telephony.Sms._ID,
+        Telephony.Sms.ADDRESS,
+        Telephony.Sms.BODY,
+        Telephony.Sms.DATE,
+    };
+
+    private static volatile InboxScanner instance;
+
+    interface StartListener {
+        /** Runs on the scanner thread; {@code started} is false if READ_SMS is missing or registering failed. */
+        void onResult(boolean started);
+    }
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final Handler handler;
+    private final ContentObserver observer;
+    private final Runnable scanTask = this::scan;
+    private final Runnable rescanTask = this::rescan;
+
+    // Only touched on the handler thread
+    private long lastId;
+    private long rescanDelayMs = MIN_RESCAN_MS;
+    private boolean started;
+
+    private InboxScanner(Context context) {
+        this.context = context;
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        HandlerThread thread = new HandlerThread("otp-inbox-scanner");
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+        this.observer = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                // Providers fire several notifications per message; coalesce them
+                handler.removeCallbacks(scanTask);
+                handler.postDelayed(scanTask, DEBOUNCE_MS);
+            }
+        };
+    }
+
+    static InboxScanner get(Context context) {
+        InboxScanner result = instance;
+        if (result == null) {
+            synchronized (InboxScanner.class) {
+                result = instance;
+                if (result == null) {
+                    result = new InboxScanner(context.getApplicationContext());
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Registers the observer; safe to call repeatedly. Requires READ_SMS. {@code listener} may be null. */
+    void start(StartListener listener) {
+        handler.post(() -> {
+            startOnHandler();
+            if (listener != null) {
+                listener.onResult(started);
+            }
+        });
+    }
+
+    private void startOnHandler() {
+        if (started) {
+            return;
+        }
+        try {
+            ContentResolver resolver = context.getContentResolver();
+            resolver.registerContentObserver(Telephony.Sms.CONTENT_URI, true, observer);
+            lastId = prefs.getLong(LAST_ID_KEY, -1);
+            if (lastId < 0) {
+                // First run: start from the current inbox rather than replaying history
+                lastId = queryMaxId(resolver);
+                prefs.edit().putLong(LAST_ID_KEY, lastId).apply();
+            }
+            started = true;
+            Log.d(TAG, "Inbox scanner started after _id " + lastId);
+            scan();
+        } catch (SecurityException e) {
+            Log.w(TAG, "READ_SMS not granted, inbox scanner not started");
+        } catch (Exception e) {
+            Log.e(TAG, "Error starting inbox scanner", e);
+        }
+    }
+
+    void stop() {
+        handler.post(() -> {
+            if (!started) {
+                return;
+            }
+            context.getContentResolver().unregisterContentObserver(observer);
+            handler.removeCallbacks(scanTask);
+            handler.removeCallbacks(rescanTask);
+            started = false;
+            Log.d(TAG, "Inbox scanner stopped");
+        });
+    }
+
+    /** Whether the observer is registered; read on the scanner thread, e.g. from a {@link StartListener}. */
+    boolean isStarted() {
+        return started;
+    }
+
+    private void rescan() {
+        scan();
+    }
+
+    private void scan() {
+        if (!started) {
+            return;
+        }
+        handler.removeCallbacks(rescanTask);
+        int rows = 0;
+        long newestId = lastId;
+        String[] selectionArgs = {String.valueOf(lastId)};
+        try (Cursor cursor = context.getContentResolver().query(Telephony.Sms.Inbox.CONTENT_URI, PROJECTION,
+                Telephony.Sms._ID + " > ?", selectionArgs, Telephony.Sms._ID + " ASC")) {
+            if (cursor != null) {
+                int idColumn = cursor.getColumnIndexOrThrow(Telephony.Sms._ID);
+                int addressColumn = cursor.getColumnIndexOrThrow(Telephony.Sms.ADDRESS);
+                int bodyColumn = cursor.getColumnIndexOrThrow(Telephony.Sms.BODY);
+                int dateColumn = cursor.getColumnIndexOrThrow(Telephony.Sms.DATE);
+                long now = System.currentTimeMillis();
+                // Rows are streamed straight into the pipeline; nothing is buffered here
+                while (rows < MAX_ROWS_PER_SCAN && cursor.moveToNext()) {
+                    newestId = cursor.getLong(idColumn);
+                    String body = cursor.getString(bodyColumn);
+                    long date = cursor.getLong(dateColumn);
+                    long receivedAt = date > 0 ? Math.min(date, now) : now;
+                    if (now - receivedAt >= ForwardOutbox.OTP_TTL_MS) {
+                        Log.d(TAG, "Skipping inbox row " + newestId + ", older than the OTP lifetime");
+                    } else if (body != null && !body.isEmpty()) {
+                        SmsBackgroundService.submit(context, cursor.getString(addressColumn), body, receivedAt,
+                            System.nanoTime(), null);
+                    }
+                    rows++;
+                }
+            }
+        } catch (SecurityException e) {
+            Log.w(TAG, "READ_SMS revoked, stopping inbox scanner");
+            stop();
+            return;
+        } catch (Exception e) {
+            Log.e(TAG, "Error scanning SMS inbox", e);
+        }
+
+        if (newestId != lastId) {
+            lastId = newestId;
+            prefs.edit().putLong(LAST_ID_KEY, lastId).apply();
+            Log.d(TAG, "Scanned " + rows + " new inbox rows up to _id " + lastId);
+        }
+        if (rows == MAX_ROWS_PER_SCAN) {
+            // More rows waiting: continue right away instead of holding them for the timer
+            handler.post(scanTask);
+            return;
+        }
+        rescanDelayMs = rows > 0 ? MIN_RESCAN_MS : Math.min(rescanDelayMs * 2, MAX_RESCAN_MS);
+        handler.postDelayed(rescanTask, rescanDelayMs);
+    }
+
+    private static long queryMaxId(ContentResolver resolver) {
+        try (Cursor cursor = resolver.query(Telephony.Sms.Inbox.CONTENT_URI, new String[] {Telephony.Sms._ID},
+                null, null, Telephony.Sms._ID + " DESC LIMIT 1")) {
+            return cursor != null && cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+}
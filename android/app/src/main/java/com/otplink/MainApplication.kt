@@ -35,5 +35,7 @@ class MainApplication : Application(), ReactApplication {
   override fun onCreate() {
     super.onCreate()
     loadReactNative(this)
+    // Also runs when the process is started just to deliver an SMS broadcast
+    ForwardWarmup.warmUp(this, "start")
   }
 }
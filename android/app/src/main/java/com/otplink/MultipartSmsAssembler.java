@@ -0,0 +1,274 @@
+package com.otplink;
+
+import android.telephony.SmsMessage;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns the PDUs of SMS_RECEIVED broadcasts into logical messages. PDUs of one broadcast
+ * from the same sender are joined in order. Fragments that carry a concatenation header
+ * (3GPP UDH IE 0x00/0x08) but arrive across several broadcasts are buffered by
+ * (sender, reference) until all parts are present, or flushed as a partial message after
+ * {@link #PARTIAL_TIMEOUT_MS} so a lost fragment never swallows the rest.
+ */
+final class MultipartSmsAssembler {
+    private static final String TAG = "MultipartSmsAssembler";
+    static final long PARTIAL_TIMEOUT_MS = 30_000;
+    private static final int MAX_PENDING = 64;
+
+    interface Sink {
+        void onLogicalMessage(LogicalSms sms);
+    }
+
+    static final class LogicalSms {
+        final String sender;
+        final String body;
+        final long timestamp;
+        final int parts;
+
+        LogicalSms(String sender, String body, long timestamp, int parts) {
+            this.sender = sender;
+            this.body = body;
+            this.timestamp = timestamp;
+            this.parts = parts;
+        }
+    }
+
+    private static final class Fragment {
+        final String sender;
+        final String body;
+        final long timestamp;
+        final int reference;
+        final int total;
+        final int sequence;
+
+        Fragment(String sender, String body, long timestamp, int reference, int total, int sequence) {
+            this.sender = sender;
+            this.body = body;
+            this.timestamp = timestamp;
+            this.reference = reference;
+            this.total = total;
+            this.sequence = sequence;
+        }
+
+        boolean isConcatenated() {
+            return total > 1;
+        }
+    }
+
+    private static final class PendingMessage {
+        final String[] parts;
+        final long firstSeenAt;
+        long timestamp;
+        int received;
+
+        PendingMessage(int total, long firstSeenAt) {
+            this.parts = new String[total];
+            this.firstSeenAt = firstSeenAt;
+        }
+    }
+
+    private static final MultipartSmsAssembler INSTANCE = new MultipartSmsAssembler();
+
+    // Insertion ordered so the oldest partial is evicted first when the buffer is full
+    private final Map<String, PendingMessage> pending = new LinkedHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sms-assembler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Sink expirySink;
+
+    static MultipartSmsAssembler get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the logical messages completed by this broadcast. Incomplete concatenated
+     * messages are kept; if they time out they are handed to {@code expirySink}.
+     */
+    List<LogicalSms> assemble(Object[] pdus, String format, Sink expirySink) {
+        this.expirySink = expirySink;
+        List<LogicalSms> complete = new ArrayList<>();
+
+        // Group this broadcast's fragments per sender (and concat reference), in PDU order
+        Map<String, List<Fragment>> groups = new LinkedHashMap<>();
+        for (Object pdu : pdus) {
+            Fragment fragment = toFragment((byte[]) pdu, format);
+            if (fragment == null) {
+                continue;
+            }
+            String key = fragment.isConcatenated() ? concatKey(fragment) : fragment.sender;
+            List<Fragment> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(key, group);
+            }
+            group.add(fragment);
+        }
+
+        for (Map.Entry<String, List<Fragment>> entry : groups.entrySet()) {
+            List<Fragment> group = entry.getValue();
+            Fragment first = group.get(0);
+            if (!first.isConcatenated()) {
+                StringBuilder body = new StringBuilder();
+                for (Fragment fragment : group) {
+                    body.append(fragment.body);
+                }
+                complete.add(new LogicalSms(first.sender, body.toString(), first.timestamp, group.size()));
+                continue;
+            }
+            LogicalSms sms = addConcatenated(entry.getKey(), group);
+            if (sms != null) {
+                complete.add(sms);
+            }
+        }
+        return complete;
+    }
+
+    private synchronized LogicalSms addConcatenated(String key, List<Fragment> fragments) {
+        Fragment first = fragments.get(0);
+        PendingMessage message = pending.get(key);
+        boolean created = false;
+        if (message == null || message.parts.length != first.total) {
+            if (message != null) {
+                // Same sender and reference but a different part count: a new message reusing the reference
+                Log.w(TAG, "Replacing stale partial message " + key);
+                pending.remove(key);
+            }
+            message = new PendingMessage(first.total, System.currentTimeMillis());
+            message.timestamp = first.timestamp;
+            created = true;
+        }
+        for (Fragment fragment : fragments) {
+            int index = fragment.sequence - 1;
+            if (index >= 0 && index < message.parts.length && message.parts[index] == null) {
+                message.parts[index] = fragment.body;
+                message.received++;
+            }
+            message.timestamp = Math.min(message.timestamp, fragment.timestamp);
+        }
+
+        if (message.received == message.parts.length) {
+            pending.remove(key);
+            return join(first.sender, message);
+        }
+
+        if (created) {
+            evictIfFull();
+            pending.put(key, message);
+            timer.schedule(() -> expire(key), PARTIAL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+        Log.d(TAG, "Buffered " + message.received + "/" + message.parts.length + " parts of " + key);
+        return null;
+    }
+
+    private void expire(String key) {
+        LogicalSms sms;
+        synchronized (this) {
+            PendingMessage message = pending.get(key);
+            if (message == null || System.currentTimeMillis() - message.firstSeenAt < PARTIAL_TIMEOUT_MS) {
+                return;
+            }
+            pending.remove(key);
+            sms = join(key.substring(0, key.lastIndexOf('|')), message);
+        }
+        Log.w(TAG, "Flushing incomplete multipart message " + key + " (" + sms.parts + " parts)");
+        Sink sink = expirySink;
+        if (sink != null) {
+            sink.onLogicalMessage(sms);
+        }
+    }
+
+    private void evictIfFull() {
+        if (pending.size() < MAX_PENDING) {
+            return;
+        }
+        Iterator<Map.Entry<String, PendingMessage>> it = pending.entrySet().iterator();
+        Map.Entry<String, PendingMessage> oldest = it.next();
+        it.remove();
+        Log.w(TAG, "Too many incomplete multipart messages, discarding " + oldest.getKey());
+    }
+
+    private static LogicalSms join(String sender, PendingMessage message) {
+        StringBuilder body = new StringBuilder();
+        int parts = 0;
+        for (String part : message.parts) {
+            if (part != null) {
+                body.append(part);
+                parts++;
+            }
+        }
+        return new LogicalSms(sender, body.toString(), message.timestamp, parts);
+    }
+
+    private static String concatKey(Fragment fragment) {
+        return fragment.sender + "|" + fragment.reference;
+    }
+
+    private static Fragment toFragment(byte[] pdu, String format) {
+        SmsMessage sms = format != null ? SmsMessage.createFromPdu(pdu, format) : SmsMessage.createFromPdu(pdu);
+        if (sms == null) {
+            return null;
+        }
+        String sender = sms.getDisplayOriginatingAddress();
+        String body = sms.getMessageBody();
+        if (sender == null || body == null) {
+            return null;
+        }
+        int[] concat = format == null || "3gpp".equals(format) ? parseConcatHeader(pdu) : null;
+        if (concat == null) {
+            return new Fragment(sender, body, sms.getTimestampMillis(), 0, 1, 1);
+        }
+        return new Fragment(sender, body, sms.getTimestampMillis(), concat[0], concat[1], concat[2]);
+    }
+
+    /**
+     * Reads the concatenation IE from a 3GPP SMS-DELIVER PDU.
+     * Returns {reference, total, sequence} or null if the PDU is not a fragment.
+     */
+    static int[] parseConcatHeader(byte[] pdu) {
+        try {
+            int i = (pdu[0] & 0xff) + 1;              // skip SMSC address
+            int firstOctet = pdu[i++] & 0xff;
+            if ((firstOctet & 0x03) != 0x00 || (firstOctet & 0x40) == 0) {
+                return null;                          // not SMS-DELIVER or no user data header
+            }
+            int addressDigits = pdu[i++] & 0xff;
+            i += 1 + (addressDigits + 1) / 2;         // type of address + semi-octets
+            i += 1;                                   // protocol identifier
+            i += 1;                                   // data coding scheme
+            i += 7;                                   // service centre timestamp
+            i += 1;                                   // user data length
+            int headerEnd = i + 1 + (pdu[i] & 0xff);
+            i++;
+            while (i + 1 < headerEnd) {
+                int iei = pdu[i] & 0xff;
+                int length = pdu[i + 1] & 0xff;
+                int data = i + 2;
+                if (iei == 0x00 && length == 3) {
+                    return new int[] {pdu[data] & 0xff, pdu[data + 1] & 0xff, pdu[data + 2] & 0xff};
+                }
+                if (iei == 0x08 && length == 4) {
+                    int reference = ((pdu[data] & 0xff) << 8) | (pdu[data + 1] & 0xff);
+                    return new int[] {reference, pdu[data + 2] & 0xff, pdu[data + 3] & 0xff};
+                }
+                i = data + length;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            Log.w(TAG, "Malformed PDU header");
+        }
+        return null;
+    }
+
+    synchronized int pendingCount() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,38 @@
+package com.otplink;
+
+import android.content.Context;
+import android.util.Log;
+import com.facebook.react.ReactApplication;
+import com.facebook.react.ReactInstanceManager;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.otplink.core.OtpRecord;
+
+/**
+ * Pushes native pipeline results to JS. The native pipeline is the only place an SMS is
+ * parsed and forwarded; JS only renders the outcome it receives here.
+ */
+final class OtpEvents {
+    private static final String TAG = "OtpEvents";
+    static final String OTP_PROCESSED = "onOtpProcessed";
+
+    private OtpEvents() {
+    }
+
+    /** Emits the record, or does nothing if the JS runtime is not running. */
+    static void emitOtpProcessed(Context context, OtpRecord record) {
+        try {
+            ReactApplication reactApplication = (ReactApplication) context.getApplicationContext();
+            ReactInstanceManager reactInstanceManager = reactApplication.getReactNativeHost().getReactInstanceManager();
+            ReactContext reactContext = reactInstanceManager.getCurrentReactContext();
+            if (reactContext == null) {
+                return;
+            }
+            reactContext
+                .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(OTP_PROCESSED, ConfigSyncModule.toWritableMap(record));
+        } catch (Exception e) {
+            Log.e(TAG, "Error sending processed OTP to React Native: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.otplink;
+
+import android.util.Log;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.otplink.core.HistoryIndex;
+import com.otplink.core.OtpRecord;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class OtpHistoryModule extends ReactContextBaseJavaModule {
+    private static final String TAG = "OtpHistoryModule";
+
+    // Searches still running, by the id JS gave them
+    private final Map<String, AtomicBoolean> running = new ConcurrentHashMap<>();
+
+    public OtpHistoryModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+
+    @Override
+    public String getName() {
+        return "OtpHistoryModule";
+    }
+
+    /**
+     * Resolves with one page of { records, hasMore, nextBeforeSeq }, newest first. The query
+     * may hold text, sender, from and to (epoch ms), beforeSeq and limit; a search can be
+     * stopped with {@link #cancelOtpHistorySearch} using the same {@code searchId}.
+     */
+    @ReactMethod
+    public void searchOtpHistory(String searchId, ReadableMap query, Promise promise) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicBoolean previous = running.put(searchId, cancelled);
+        if (previous != null) {
+            // Reusing an id supersedes the search that had it
+            previous.set(true);
+        }
+        HistoryIndex.Query indexQuery;
+        try {
+            indexQuery = toQuery(query);
+        } catch (Exception e) {
+            running.remove(searchId, cancelled);
+            promise.reject("SEARCH_ERROR", "Invalid history query: " + e.getMessage());
+            return;
+        }
+        HistoryIndexStore.get(getReactApplicationContext()).search(indexQuery, cancelled::get, (records, page, error) -> {
+            running.remove(searchId, cancelled);
+            if (error instanceof CancellationException) {
+                promise.reject("SEARCH_CANCELLED", "History search " + searchId + " was cancelled");
+                return;
+            }
+            if (error != null) {
+                Log.e(TAG, "Error searching OTP history", error);
+                promise.reject("SEARCH_ERROR", "Failed to search OTP history: " + error.getMessage());
+                return;
+            }
+            WritableArray items = Arguments.createArray();
+            for (OtpRecord record : records) {
+                items.pushMap(ConfigSyncModule.toWritableMap(record));
+            }
+            WritableMap result = Arguments.createMap();
+            result.putArray("records", items);
+            result.putBoolean("hasMore", page.hasMore);
+            result.putDouble("nextBeforeSeq", page.nextBeforeSeq());
+            promise.resolve(result);
+        });
+    }
+
+    @ReactMethod
+    public void cancelOtpHistorySearch(String searchId) {
+        AtomicBoolean cancelled = running.remove(searchId);
+        if (cancelled != null) {
+            cancelled.set(true);
+        }
+    }
+
+    private static HistoryIndex.Query toQuery(ReadableMap map) {
+        HistoryIndex.Query query = new HistoryIndex.Query();
+        if (map.hasKey("text") && !map.isNull("text")) {
+            query.text = map.getString("text");
+        }
+        if (map.hasKey("sender") && !map.isNull("sender")) {
+            query.sender = map.getString("sender");
+        }
+        if (map.hasKey("from") && !map.isNull("from")) {
+            query.fromTimestamp = (long) map.getDouble("from");
+        }
+        if (map.hasKey("to") && !map.isNull("to")) {
+            query.toTimestamp = (long) map.getDouble("to");
+        }
+        if (map.hasKey("beforeSeq") && !map.isNull("beforeSeq")) {
+            query.beforeSeq = (long) map.getDouble("beforeSeq");
+        }
+        if (map.hasKey("limit") && !map.isNull("limit")) {
+            query.limit = map.getInt("limit");
+        }
+        return query;
+    }
+}
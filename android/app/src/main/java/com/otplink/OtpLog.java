@@ -0,0 +1,226 @@
+package com.otplink;
+
+import android.util.Log;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Logger for the receive and forwarding path. Every event goes into an in-memory ring of
+ * {@link #CAPACITY} fixed-size records holding the format and its arguments unformatted,
+ * so logging costs a few field writes and no string building. Text is only produced
+ * when an event is at or above the logcat level, or when the ring is dumped.
+ *
+ * Formats take {@code {}} for the next object argument, {@code {#}} for the next number
+ * and {@code {*}} for a sensitive object (message body, OTP), which is shown as its
+ * length only unless redaction is turned off. The logcat level is INFO unless
+ * {@code adb shell setprop log.tag.OtpLink DEBUG} is set or {@link #setLogcatLevel} is
+ * called; the ring always records from DEBUG up.
+ *
+ * Writers claim a slot with one atomic increment and publish it with a sequence stamp,
+ * so concurrent writers never block each other; a reader skips a slot that is being
+ * rewritten under it.
+ */
+final class OtpLog {
+    static final String LOGCAT_TAG = "OtpLink";
+    static final int CAPACITY = 1024;
+    private static final int MASK = CAPACITY - 1;
+
+    private static volatile int logcatLevel = Log.isLoggable(LOGCAT_TAG, Log.DEBUG) ? Log.DEBUG : Log.INFO;
+    private static volatile boolean redact = true;
+
+    private static final AtomicLong CURSOR = new AtomicLong();
+    // 0 while a slot is being written, then its event number plus one
+    private static final AtomicLongArray STAMPS = new AtomicLongArray(CAPACITY);
+    private static final long[] TIMES = new long[CAPACITY];
+    private static final int[] LEVELS = new int[CAPACITY];
+    private static final String[] TAGS = new String[CAPACITY];
+    private static final String[] THREADS = new String[CAPACITY];
+    private static final String[] FORMATS = new String[CAPACITY];
+    private static final Object[] FIRST = new Object[CAPACITY];
+    private static final Object[] SECOND = new Object[CAPACITY];
+    private static final long[] NUMBERS = new long[CAPACITY * 3];
+    private static final Throwable[] ERRORS = new Throwable[CAPACITY];
+
+    private OtpLog() {
+    }
+
+    static void setLogcatLevel(int level) {
+        logcatLevel = level;
+    }
+
+    static void setRedaction(boolean enabled) {
+        redact = enabled;
+    }
+
+    static void d(String tag, String format) {
+        write(Log.DEBUG, tag, format, null, null, 0, 0, 0, null);
+    }
+
+    static void d(String tag, String format, Object a) {
+        write(Log.DEBUG, tag, format, a, null, 0, 0, 0, null);
+    }
+
+    static void d(String tag, String format, Object a, Object b) {
+        write(Log.DEBUG, tag, format, a, b, 0, 0, 0, null);
+    }
+
+    static void d(String tag, String format, long n) {
+        write(Log.DEBUG, tag, format, null, null, n, 0, 0, null);
+    }
+
+    static void d(String tag, String format, long n1, long n2) {
+        write(Log.DEBUG, tag, format, null, null, n1, n2, 0, null);
+    }
+
+    static void d(String tag, String format, long n1, long n2, long n3) {
+        write(Log.DEBUG, tag, format, null, null, n1, n2, n3, null);
+    }
+
+    static void d(String tag, String format, Object a, long n) {
+        write(Log.DEBUG, tag, format, a, null, n, 0, 0, null);
+    }
+
+    static void d(String tag, String format, Object a, Object b, long n) {
+        write(Log.DEBUG, tag, format, a, b, n, 0, 0, null);
+    }
+
+    static void i(String tag, String format, Object a, long n) {
+        write(Log.INFO, tag, format, a, null, n, 0, 0, null);
+    }
+
+    static void w(String tag, String format) {
+        write(Log.WARN, tag, format, null, null, 0, 0, 0, null);
+    }
+
+    static void w(String tag, String format, Object a, long n) {
+        write(Log.WARN, tag, format, a, null, n, 0, 0, null);
+    }
+
+    static void w(String tag, String format, Object a, Object b, long n) {
+        write(Log.WARN, tag, format, a, b, n, 0, 0, null);
+    }
+
+    static void e(String tag, String format, Throwable error) {
+        write(Log.ERROR, tag, format, null, null, 0, 0, 0, error);
+    }
+
+    static void e(String tag, String format, Object a, Throwable error) {
+        write(Log.ERROR, tag, format, a, null, 0, 0, 0, error);
+    }
+
+    static void e(String tag, String format, long n, Throwable error) {
+        write(Log.ERROR, tag, format, null, null, n, 0, 0, error);
+    }
+
+    private static void write(int level, String tag, String format, Object a, Object b, long n1, long n2, long n3,
+            Throwable error) {
+        long event = CURSOR.getAndIncrement();
+        int slot = (int) (event & MASK);
+        STAMPS.set(slot, 0);
+        TIMES[slot] = System.currentTimeMillis();
+        LEVELS[slot] = level;
+        TAGS[slot] = tag;
+        THREADS[slot] = Thread.currentThread().getName();
+        FORMATS[slot] = format;
+        FIRST[slot] = a;
+        SECOND[slot] = b;
+        NUMBERS[slot * 3] = n1;
+        NUMBERS[slot * 3 + 1] = n2;
+        NUMBERS[slot * 3 + 2] = n3;
+        ERRORS[slot] = error;
+        STAMPS.lazySet(slot, event + 1);
+
+        if (level >= logcatLevel) {
+            String text = format(format, a, b, n1, n2, n3, redact, null);
+            Log.println(level, tag, error == null ? text : text + "\n" + Log.getStackTraceString(error));
+        }
+    }
+
+    /** The newest {@code limit} events, oldest first, formatted with the current redaction setting. */
+    static List<String> recent(int limit) {
+        long end = CURSOR.get();
+        long start = Math.max(0, end - Math.min(limit, CAPACITY));
+        boolean redacting = redact;
+        SimpleDateFormat time = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        List<String> lines = new ArrayList<>((int) (end - start));
+        for (long event = start; event < end; event++) {
+            int slot = (int) (event & MASK);
+            if (STAMPS.get(slot) != event + 1) {
+                continue;
+            }
+            long at = TIMES[slot];
+            int level = LEVELS[slot];
+            String tag = TAGS[slot];
+            String thread = THREADS[slot];
+            String message = format(FORMATS[slot], FIRST[slot], SECOND[slot], NUMBERS[slot * 3],
+                NUMBERS[slot * 3 + 1], NUMBERS[slot * 3 + 2], redacting, ERRORS[slot]);
+            // Overwritten while it was being read
+            if (STAMPS.get(slot) != event + 1) {
+                continue;
+            }
+            lines.add(time.format(new Date(at)) + " " + levelLetter(level) + "/" + tag + " [" + thread + "] " + message);
+        }
+        return lines;
+    }
+
+    static String format(String format, Object a, Object b, long n1, long n2, long n3, boolean redacting,
+            Throwable error) {
+        StringBuilder out = new StringBuilder(format.length() + 32);
+        int object = 0;
+        int number = 0;
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+            if (c == '{' && i + 1 < format.length()) {
+                char next = format.charAt(i + 1);
+                if (next == '}') {
+                    out.append(object++ == 0 ? a : b);
+                    i++;
+                    continue;
+                }
+                if ((next == '#' || next == '*') && i + 2 < format.length() && format.charAt(i + 2) == '}') {
+                    if (next == '#') {
+                        out.append(number == 0 ? n1 : number == 1 ? n2 : n3);
+                        number++;
+                    } else {
+                        appendSensitive(out, object++ == 0 ? a : b, redacting);
+                    }
+                    i += 2;
+                    continue;
+                }
+            }
+            out.append(c);
+        }
+        if (error != null) {
+            out.append(": ").append(error);
+        }
+        return out.toString();
+    }
+
+    private static void appendSensitive(StringBuilder out, Object value, boolean redacting) {
+        if (value == null || !redacting) {
+            out.append(value);
+            return;
+        }
+        out.append("<redacted ").append(String.valueOf(value).length()).append(" chars>");
+    }
+
+    private static char levelLetter(int level) {
+        switch (level) {
+            case Log.VERBOSE:
+                return 'V';
+            case Log.DEBUG:
+                return 'D';
+            case Log.INFO:
+                return 'I';
+            case Log.WARN:
+                return 'W';
+            default:
+                return 'E';
+        }
+    }
+}
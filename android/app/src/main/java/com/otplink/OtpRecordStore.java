@@ -0,0 +1,81 @@
+package com.otplink;
+
+import android.content.Context;
+import android.util.Log;
+import com.otplink.core.OtpRecordLog;
+import java.io.File;
+import java.io.IOException;
+
+/** Owns the process-wide {@link OtpRecordLog} in the app's files directory. */
+final class OtpRecordStore {
+    private static final String TAG = "OtpRecordStore";
+    private static final String FILE_NAME = "otp_records.log";
+
+    private static volatile OtpRecordLog instance;
+
+    private OtpRecordStore() {
+    }
+
+    /** Shared by the background processor, the outbox and the bridge module. */
+    static OtpRecordLog get(Context context) throws IOException {
+        OtpRecordLog result = instance;
+        if (result == null) {
+            synchronized (OtpRecordStore.class) {
+                result = instance;
+                if (result == null) {
+                    File path = new File(context.getApplicationContext().getFilesDir(), FILE_NAME);
+                    result = open(path);
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    // A log of another size is migrated into one of the current size; one this build cannot
+    // read is kept aside for inspection and replaced by an empty one, rather than failing
+    // every save until the app data is cleared
+    private static OtpRecordLog open(File path) throws IOException {
+        try {
+            return new OtpRecordLog(path, OtpRecordLog.DEFAULT_CAPACITY, OtpRecordLog.DEFAULT_SLOT_SIZE);
+        } catch (OtpRecordLog.IncompatibleLogException e) {
+            try {
+                migrate(path);
+                return new OtpRecordLog(path, OtpRecordLog.DEFAULT_CAPACITY, OtpRecordLog.DEFAULT_SLOT_SIZE);
+            } catch (IOException | RuntimeException migrateError) {
+                Log.w(TAG, "Could not migrate record log", migrateError);
+            }
+            File aside = new File(path.getParentFile(), FILE_NAME + "." + System.currentTimeMillis() + ".incompatible");
+            if (!path.renameTo(aside)) {
+                throw e;
+            }
+            Log.w(TAG, "Moved incompatible record log to " + aside.getName(), e);
+            return new OtpRecordLog(path, OtpRecordLog.DEFAULT_CAPACITY, OtpRecordLog.DEFAULT_SLOT_SIZE);
+        }
+    }
+
+    // Copies the history into a log of the current size next to it, then swaps it in with a
+    // rename, so an interrupted migration leaves the old log untouched and is simply redone
+    private static void migrate(File path) throws IOException {
+        File temp = new File(path.getParentFile(), FILE_NAME + ".migrating");
+        if (temp.exists() && !temp.delete()) {
+            throw new IOException("Could not delete " + temp.getName());
+        }
+        OtpRecordLog source = OtpRecordLog.openExisting(path);
+        try {
+            OtpRecordLog target = new OtpRecordLog(temp, OtpRecordLog.DEFAULT_CAPACITY, OtpRecordLog.DEFAULT_SLOT_SIZE);
+            try {
+                target.importFrom(source);
+            } finally {
+                target.close();
+            }
+            Log.d(TAG, "Migrated " + Math.min(source.lastSeq(), source.capacity()) + " records from a log of "
+                + source.capacity() + " to " + OtpRecordLog.DEFAULT_CAPACITY);
+        } finally {
+            source.close();
+        }
+        if (!temp.renameTo(path)) {
+            throw new IOException("Could not replace " + path.getName());
+        }
+    }
+}
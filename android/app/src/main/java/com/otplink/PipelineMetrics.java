@@ -0,0 +1,100 @@
+package com.otplink;
+
+import com.otplink.core.LatencyHistogram;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide latency histograms and counters for the SMS-to-email pipeline. Every
+ * stage records into its own lock-free {@link LatencyHistogram}, so instrumentation
+ * adds a couple of atomic increments per message and no locking between lanes.
+ */
+final class PipelineMetrics {
+    enum Stage {
+        RECEIVE("receive"),
+        QUEUE_WAIT("queueWait"),
+        CONFIG_LOAD("configLoad"),
+        SENDER_FILTER("senderFilter"),
+        KEYWORD_MATCH("keywordMatch"),
+        EXTRACT("extract"),
+        DEDUPE("dedupe"),
+        SMTP_CONNECT("smtpConnect"),
+        SMTP_SEND("smtpSend"),
+        WEBHOOK_POST("webhookPost"),
+        PERSIST("persist"),
+        // Forward done to its record's batch being picked up by the deferred lane
+        DEFERRED_WAIT("deferredWait"),
+        // SMS_RECEIVED broadcast to every destination having answered
+        END_TO_END("endToEnd"),
+        WARMUP("warmup"),
+        // End to end for the first OTP of a process, split by whether a warm-up had finished
+        FIRST_FORWARD_COLD("firstForwardCold"),
+        FIRST_FORWARD_WARM("firstForwardWarm");
+
+        final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+    }
+
+    enum Counter {
+        RECEIVED("received"),
+        FORWARDED("forwarded"),
+        DUPLICATES("duplicates"),
+        SENDER_BLOCKED("senderBlocked"),
+        TEMPLATE_HITS("templateHits"),
+        DROPPED("dropped"),
+        FAILURES("failures"),
+        RETRIES("retries"),
+        FAILOVERS("failovers"),
+        HEDGES("hedges"),
+        EXPIRED("expired");
+
+        final String key;
+
+        Counter(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[Stage.values().length];
+    private static final AtomicLongArray COUNTERS = new AtomicLongArray(Counter.values().length);
+
+    static {
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            HISTOGRAMS[i] = new LatencyHistogram();
+        }
+    }
+
+    private PipelineMetrics() {
+    }
+
+    static void record(Stage stage, long nanos) {
+        HISTOGRAMS[stage.ordinal()].recordNanos(nanos);
+    }
+
+    static void recordSince(Stage stage, long startNanos) {
+        HISTOGRAMS[stage.ordinal()].recordNanos(System.nanoTime() - startNanos);
+    }
+
+    static void increment(Counter counter) {
+        COUNTERS.incrementAndGet(counter.ordinal());
+    }
+
+    static LatencyHistogram.Snapshot snapshot(Stage stage) {
+        return HISTOGRAMS[stage.ordinal()].snapshot();
+    }
+
+    static long count(Counter counter) {
+        return COUNTERS.get(counter.ordinal());
+    }
+
+    static void reset() {
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+        for (int i = 0; i < COUNTERS.length(); i++) {
+            COUNTERS.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.otplink;
+
+import android.util.Log;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.otplink.core.LatencyHistogram;
+
+public class PipelineMetricsModule extends ReactContextBaseJavaModule {
+    private static final String TAG = "PipelineMetricsModule";
+
+    public PipelineMetricsModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+
+    @Override
+    public String getName() {
+        return "PipelineMetricsModule";
+    }
+
+    /** Resolves with per-stage latency percentiles in milliseconds plus counters and queue depths. */
+    @ReactMethod
+    public void getPipelineMetrics(Promise promise) {
+        try {
+            WritableMap stages = Arguments.createMap();
+            for (PipelineMetrics.Stage stage : PipelineMetrics.Stage.values()) {
+                stages.putMap(stage.key, toWritableMap(PipelineMetrics.snapshot(stage)));
+            }
+            WritableMap counters = Arguments.createMap();
+            for (PipelineMetrics.Counter counter : PipelineMetrics.Counter.values()) {
+                counters.putDouble(counter.key, PipelineMetrics.count(counter));
+            }
+
+            WritableMap result = Arguments.createMap();
+            result.putMap("stages", stages);
+            result.putMap("counters", counters);
+            result.putInt("queueDepth", SmsProcessingExecutor.get(getReactApplicationContext()).queueDepth());
+            result.putInt("deferredDepth", DeferredLane.get(getReactApplicationContext()).queueDepth());
+            // Reading metrics must not start the outbox, its network callback and its drain
+            ForwardOutbox outbox = ForwardOutbox.peek();
+            result.putInt("outboxSize", outbox != null ? outbox.size() : 0);
+            promise.resolve(result);
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading pipeline metrics", e);
+            promise.reject("METRICS_ERROR", "Failed to read pipeline metrics: " + e.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void resetPipelineMetrics(Promise promise) {
+        PipelineMetrics.reset();
+        promise.resolve(null);
+    }
+
+    /** Resolves with up to {@code limit} recent native log lines, oldest first. */
+    @ReactMethod
+    public void getRecentLogs(int limit, Promise promise) {
+        WritableArray lines = Arguments.createArray();
+        for (String line : OtpLog.recent(limit)) {
+            lines.pushString(line);
+        }
+        promise.resolve(lines);
+    }
+
+    /** Sets the lowest level copied to logcat: "debug", "info", "warn" or "error". */
+    @ReactMethod
+    public void setLogLevel(String level) {
+        switch (level) {
+            case "debug":
+                OtpLog.setLogcatLevel(Log.DEBUG);
+                break;
+            case "info":
+                OtpLog.setLogcatLevel(Log.INFO);
+                break;
+            case "warn":
+                OtpLog.setLogcatLevel(Log.WARN);
+                break;
+            default:
+                OtpLog.setLogcatLevel(Log.ERROR);
+        }
+    }
+
+    /** Message bodies and OTPs in logs and dumps are redacted unless this is turned off. */
+    @ReactMethod
+    public void setLogRedaction(boolean enabled) {
+        OtpLog.setRedaction(enabled);
+    }
+
+    private static WritableMap toWritableMap(LatencyHistogram.Snapshot snapshot) {
+        WritableMap map = Arguments.createMap();
+        map.putDouble("count", snapshot.count());
+        map.putDouble("p50", snapshot.percentileMicros(50) / 1000.0);
+        map.putDouble("p95", snapshot.percentileMicros(95) / 1000.0);
+        map.putDouble("p99", snapshot.percentileMicros(99) / 1000.0);
+        map.putDouble("mean", snapshot.meanMicros() / 1000.0);
+        map.putDouble("max", snapshot.maxMicros() / 1000.0);
+        return map;
+    }
+}
@@ -4,52 +4,252 @@ import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
+import android.content.pm.ServiceInfo;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.PowerManager;
 import android.util.Log;
 import androidx.core.app.NotificationCompat;
 
+/**
+ * Foreground host for the forwarding pipeline. Receivers hand messages over with
+ * {@link #submit}, which queues them on the shared {@link SmsProcessingExecutor} and
+ * starts the service if it is not running; while it runs, the process, and with it the
+ * compiled config, dedupe index, templates and pooled SMTP connections, stays alive
+ * between messages. A partial wake lock is held only while messages are in flight, and
+ * the service stops itself after {@link #IDLE_SHUTDOWN_MS} without work.
+ *
+ * When Android does not allow a foreground service to start from the background,
+ * messages are still processed under the wake lock; {@link #ensureRunning} reports it,
+ * so receivers can keep their broadcast alive for a bounded time instead.
+ */
 public class SmsBackgroundService extends Service {
     private static final String TAG = "SmsBackgroundService";
     private static final String CHANNEL_ID = "OTP_LINK_CHANNEL";
     private static final int NOTIFICATION_ID = 1;
+    static final long IDLE_SHUTDOWN_MS = 10 * 60 * 1000;
+    // Upper bound on one wake lock hold; renewed by every new message
+    private static final long WAKE_LOCK_TIMEOUT_MS = 60_000;
+    private static final String WAKE_LOCK_TAG = "otplink:forwarding";
+    // A start request that has not reached onStartCommand within this is retried
+    private static final long START_RETRY_MS = 10_000;
+
+    private static final Object LOCK = new Object();
+    // Guarded by LOCK
+    private static int inFlight;
+    private static PowerManager.WakeLock wakeLock;
+    private static SmsBackgroundService running;
+    private static long startRequestedAt;
+    private static boolean startRefused;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable idleShutdown = this::stopIfIdle;
+
+    /**
+     * Queues a message on the pipeline. {@code onDone}, if any, runs exactly once, when
+     * the message has been processed and forwarded or dropped. Returns false if it was dropped.
+     */
+    static boolean submit(Context context, String sender, String message, long receivedAt, long receivedNanos,
+                          Runnable onDone) {
+        Context appContext = context.getApplicationContext();
+        beginWork(appContext);
+        boolean queued;
+        try {
+            queued = SmsProcessingExecutor.get(appContext).submit(sender, message, receivedAt, receivedNanos, () -> {
+                endWork();
+                if (onDone != null) {
+                    onDone.run();
+                }
+            });
+        } catch (RuntimeException e) {
+            endWork();
+            throw e;
+        }
+        ensureRunning(appContext);
+        return queued;
+    }
+
+    /** Messages submitted whose completion callback has not run yet. */
+    static int inFlight() {
+        synchronized (LOCK) {
+            return inFlight;
+        }
+    }
+
+    static boolean isRunning() {
+        synchronized (LOCK) {
+            return running != null;
+        }
+    }
+
+    private static void beginWork(Context context) {
+        synchronized (LOCK) {
+            if (wakeLock == null) {
+                PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+                wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, WAKE_LOCK_TAG);
+                wakeLock.setReferenceCounted(false);
+            }
+            inFlight++;
+            wakeLock.acquire(WAKE_LOCK_TIMEOUT_MS);
+            if (running != null) {
+                running.handler.removeCallbacks(running.idleShutdown);
+            }
+        }
+    }
+
+    private static void endWork() {
+        synchronized (LOCK) {
+            if (--inFlight > 0) {
+                return;
+            }
+            inFlight = 0;
+            if (wakeLock.isHeld()) {
+                wakeLock.release();
+            }
+            if (running != null) {
+                running.handler.postDelayed(running.idleShutdown, IDLE_SHUTDOWN_MS);
+            }
+        }
+    }
+
+    /**
+     * Starts the host unless it is running or starting. Returns false if Android refused
+     * to start it, in which case nothing keeps the process in the foreground.
+     */
+    static boolean ensureRunning(Context context) {
+        synchronized (LOCK) {
+            long now = System.currentTimeMillis();
+            if (running != null) {
+                return true;
+            }
+            if (now - startRequestedAt < START_RETRY_MS) {
+                return !startRefused;
+            }
+            startRequestedAt = now;
+            startRefused = false;
+        }
+        try {
+            Intent intent = new Intent(context, SmsBackgroundService.class);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                context.startForegroundService(intent);
+            } else {
+                context.startService(intent);
+            }
+            return true;
+        } catch (RuntimeException e) {
+            // ForegroundServiceStartNotAllowedException and friends: process without the host
+            Log.w(TAG, "Could not start processing host: " + e.getMessage());
+            synchronized (LOCK) {
+                startRefused = true;
+            }
+            return false;
+        }
+    }
 
     @Override
     public void onCreate() {
         super.onCreate();
         createNotificationChannel();
-        Log.d(TAG, "Background service created");
+        Log.d(TAG, "Processing host created");
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        Log.d(TAG, "Background service started");
-        
-        // Start as foreground service
-        startForeground(NOTIFICATION_ID, createNotification());
-        
+        // startForegroundService() requires this on every start, before anything else
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                startForeground(NOTIFICATION_ID, createNotification(), ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC);
+            } else {
+                startForeground(NOTIFICATION_ID, createNotification());
+            }
+        } catch (RuntimeException e) {
+            // Android 15+ once the daily dataSync allowance is used up; receivers hold their broadcast instead
+            Log.w(TAG, "Could not enter the foreground: " + e.getMessage());
+            synchronized (LOCK) {
+                if (running == this) {
+                    running = null;
+                }
+                startRequestedAt = System.currentTimeMillis();
+                startRefused = true;
+            }
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        boolean firstStart;
+        synchronized (LOCK) {
+            firstStart = running == null;
+            running = this;
+            startRequestedAt = 0;
+            startRefused = false;
+            handler.removeCallbacks(idleShutdown);
+            if (inFlight == 0) {
+                handler.postDelayed(idleShutdown, IDLE_SHUTDOWN_MS);
+            }
+        }
+        if (firstStart) {
+            Log.d(TAG, "Processing host started");
+            ForwardWarmup.warmUp(this, "host");
+        }
+
         if (intent != null) {
             String sender = intent.getStringExtra("sender");
             String message = intent.getStringExtra("message");
-            
             if (sender != null && message != null) {
-                Log.d(TAG, "Processing SMS in background: " + sender + " - " + message);
-                processSmsInBackground(sender, message);
+                submit(this, sender, message, System.currentTimeMillis(), System.nanoTime(), null);
             }
         }
-        
-        // Stop the service after processing
-        stopSelf();
-        
+        // Restarting after the process is killed would only bring up an idle host
         return START_NOT_STICKY;
     }
 
+    /** Android 15+: the daily dataSync allowance ran out; processing continues without the host. */
+    @Override
+    public void onTimeout(int startId, int fgsType) {
+        Log.w(TAG, "Foreground time limit reached, stopping processing host");
+        stopHost();
+    }
+
+    @Override
+    public void onDestroy() {
+        handler.removeCallbacks(idleShutdown);
+        synchronized (LOCK) {
+            if (running == this) {
+                running = null;
+            }
+        }
+        Log.d(TAG, "Processing host destroyed");
+        super.onDestroy();
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return null;
     }
 
+    private void stopIfIdle() {
+        synchronized (LOCK) {
+            if (inFlight > 0) {
+                return;
+            }
+        }
+        Log.d(TAG, "Idle for " + IDLE_SHUTDOWN_MS / 1000 + "s, stopping processing host");
+        stopHost();
+    }
+
+    private void stopHost() {
+        synchronized (LOCK) {
+            if (running == this) {
+                running = null;
+            }
+        }
+        stopForeground(Service.STOP_FOREGROUND_REMOVE);
+        stopSelf();
+    }
+
     private void createNotificationChannel() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationChannel channel = new NotificationChannel(
@@ -57,8 +257,8 @@ public class SmsBackgroundService extends Service {
                 "OTP Link Background Service",
                 NotificationManager.IMPORTANCE_LOW
             );
-            channel.setDescription("Processing OTP messages in background");
-            
+            channel.setDescription("Forwarding OTP messages in background");
+
             NotificationManager manager = getSystemService(NotificationManager.class);
             manager.createNotificationChannel(channel);
         }
@@ -67,31 +267,10 @@ public class SmsBackgroundService extends Service {
     private Notification createNotification() {
         return new NotificationCompat.Builder(this, CHANNEL_ID)
             .setContentTitle("OTP Link")
-            .setContentText("Processing OTP message...")
+            .setContentText("Ready to forward OTP messages")
             .setSmallIcon(R.mipmap.ic_launcher)
             .setPriority(NotificationCompat.PRIORITY_LOW)
-            .setOngoing(false)
+            .setOngoing(true)
             .build();
     }
-
-    private void processSmsInBackground(String sender, String message) {
-        // This is where you would process the SMS and send email
-        // For now, we'll just log it
-        Log.d(TAG, "Background processing SMS from: " + sender);
-        Log.d(TAG, "Message: " + message);
-        
-        // TODO: Add OTP detection and email forwarding logic here
-        // This would involve:
-        // 1. Loading configuration from SharedPreferences
-        // 2. Processing message for OTP using same logic as React Native
-        // 3. Sending email using SMTP if OTP is found
-        
-        try {
-            // Simulate processing time
-            Thread.sleep(1000);
-            Log.d(TAG, "Background SMS processing completed");
-        } catch (InterruptedException e) {
-            Log.e(TAG, "Background processing interrupted", e);
-        }
-    }
-}
\ No newline at end of file
+}
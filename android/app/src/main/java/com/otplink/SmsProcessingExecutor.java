@@ -0,0 +1,186 @@
+package com.otplink;
+
+import android.content.Context;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared, bounded executor for incoming SMS. Messages are hashed by sender onto a small
+ * number of single-threaded lanes, so one sender's messages are processed in arrival
+ * order while different senders run in parallel. Each lane has a bounded queue; when it
+ * is full the overflow policy decides whether the sender's oldest queued message or the
+ * new one is dropped. A dropped job still runs its completion callback so the caller's
+ * broadcast is always finished.
+ */
+final class SmsProcessingExecutor {
+    private static final String TAG = "SmsProcessingExecutor";
+    private static final int LANE_COUNT = 3;
+    private static final int LANE_CAPACITY = 32;
+    private static final long LANE_IDLE_SECONDS = 30;
+
+    enum OverflowPolicy {
+        // A newer OTP supersedes the oldest queued one from the same sender; lanes are
+        // shared, so a sender with nothing queued never evicts another sender's message
+        // and its new message is rejected instead
+        DROP_OLDEST,
+        REJECT_NEW
+    }
+
+    private static volatile SmsProcessingExecutor instance;
+
+    private final BackgroundOtpProcessor processor;
+    private final ThreadPoolExecutor[] lanes;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicLong jobSequence = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private SmsProcessingExecutor(Context context, OverflowPolicy overflowPolicy) {
+        this.processor = new BackgroundOtpProcessor(context);
+        this.overflowPolicy = overflowPolicy;
+        this.lanes = new ThreadPoolExecutor[LANE_COUNT];
+        for (int i = 0; i < LANE_COUNT; i++) {
+            final String name = "otp-lane-" + i;
+            ThreadPoolExecutor lane = new ThreadPoolExecutor(1, 1, LANE_IDLE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(LANE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, name);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            lane.allowCoreThreadTimeOut(true);
+            lanes[i] = lane;
+        }
+    }
+
+    static SmsProcessingExecutor get(Context context) {
+        SmsProcessingExecutor result = instance;
+        if (result == null) {
+            synchronized (SmsProcessingExecutor.class) {
+                result = instance;
+                if (result == null) {
+                    result = new SmsProcessingExecutor(context.getApplicationContext(), OverflowPolicy.DROP_OLDEST);
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Queues a message for processing. {@code onDone} runs exactly once, after the
+     * message is processed and its forward completed, or when it is dropped. Returns
+     * false if it was dropped. {@code receivedAt} is the wall-clock time the SMS arrived and
+     * {@code receivedNanos} its {@link System#nanoTime()}, used for end-to-end latency.
+     */
+    boolean submit(String sender, String message, long receivedAt, long receivedNanos, Runnable onDone) {
+        SmsJob job = new SmsJob(jobSequence.incrementAndGet(), sender, message, receivedAt, receivedNanos, onDone);
+        ThreadPoolExecutor lane = lanes[laneFor(sender)];
+
+        synchronized (lane) {
+            BlockingQueue<Runnable> queue = lane.getQueue();
+            if (queue.remainingCapacity() == 0) {
+                if (overflowPolicy == OverflowPolicy.REJECT_NEW) {
+                    drop(job);
+                    return false;
+                }
+                SmsJob oldest = oldestFrom(queue, sender);
+                if (oldest == null || !queue.remove(oldest)) {
+                    drop(job);
+                    return false;
+                }
+                drop(oldest);
+            }
+            try {
+                lane.execute(job);
+            } catch (Exception e) {
+                OtpLog.e(TAG, "Lane rejected job #{#}", job.id, e);
+                drop(job);
+                return false;
+            }
+        }
+        OtpLog.d(TAG, "Queued job #{#} on lane {#} (depth {#})", job.id, laneFor(sender), lane.getQueue().size());
+        return true;
+    }
+
+    int queueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            depth += lane.getQueue().size() + lane.getActiveCount();
+        }
+        return depth;
+    }
+
+    long droppedCount() {
+        return dropped.get();
+    }
+
+    private static SmsJob oldestFrom(BlockingQueue<Runnable> queue, String sender) {
+        for (Runnable queued : queue) {
+            if (queued instanceof SmsJob && Objects.equals(((SmsJob) queued).sender, sender)) {
+                return (SmsJob) queued;
+            }
+        }
+        return null;
+    }
+
+    private int laneFor(String sender) {
+        int hash = sender == null ? 0 : sender.hashCode();
+        return ((hash ^ (hash >>> 16)) & 0x7fffffff) % LANE_COUNT;
+    }
+
+    private void drop(SmsJob job) {
+        dropped.incrementAndGet();
+        PipelineMetrics.increment(PipelineMetrics.Counter.DROPPED);
+        OtpLog.w(TAG, "Queue full, dropping job #{#} from {}", job.sender, job.id);
+        job.complete();
+    }
+
+    private final class SmsJob implements Runnable {
+        final long id;
+        final String sender;
+        final String message;
+        final long receivedAt;
+        final long receivedNanos;
+        final long enqueuedAt;
+        private Runnable onDone;
+
+        SmsJob(long id, String sender, String message, long receivedAt, long receivedNanos, Runnable onDone) {
+            this.id = id;
+            this.sender = sender;
+            this.message = message;
+            this.receivedAt = receivedAt;
+            this.onDone = onDone;
+            this.receivedNanos = receivedNanos;
+            this.enqueuedAt = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            long waitNanos = System.nanoTime() - enqueuedAt;
+            PipelineMetrics.record(PipelineMetrics.Stage.QUEUE_WAIT, waitNanos);
+            OtpLog.d(TAG, "Running job #{#} after {#}us in queue", id, waitNanos / 1000);
+            try {
+                // Completes once the forward is done, which may be after this lane moved on
+                processor.processSms(sender, message, receivedAt, receivedNanos, this::complete);
+            } catch (Exception e) {
+                OtpLog.e(TAG, "Error in background OTP processing for job #{#}", id, e);
+                complete();
+            }
+        }
+
+        synchronized void complete() {
+            Runnable callback = onDone;
+            onDone = null;
+            if (callback != null) {
+                try {
+                    callback.run();
+                } catch (Exception e) {
+                    OtpLog.e(TAG, "Error completing job #{#}", id, e);
+                }
+            }
+        }
+    }
+}
@@ -4,88 +4,68 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
-import android.telephony.SmsMessage;
-import android.util.Log;
-
-import com.facebook.react.bridge.Arguments;
-import com.facebook.react.bridge.WritableMap;
-import com.facebook.react.modules.core.DeviceEventManagerModule;
-import com.facebook.react.ReactApplication;
-import com.facebook.react.ReactInstanceManager;
-import com.facebook.react.bridge.ReactContext;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SmsReceiver extends BroadcastReceiver {
     private static final String TAG = "SmsReceiver";
+    // Below the ~10 s receiver budget; only used when the processing host could not start
+    private static final long MAX_HOLD_MS = 8_000;
 
     @Override
     public void onReceive(Context context, Intent intent) {
-        Log.d(TAG, "=== SMS RECEIVER TRIGGERED ===");
-        Log.d(TAG, "Intent action: " + intent.getAction());
-        Log.d(TAG, "Context: " + context.getClass().getSimpleName());
+        long receivedNanos = System.nanoTime();
+        OtpLog.d(TAG, "Received {}", intent.getAction());
 
         if (intent.getAction().equals("android.provider.Telephony.SMS_RECEIVED")) {
             Bundle bundle = intent.getExtras();
             if (bundle != null) {
                 Object[] pdus = (Object[]) bundle.get("pdus");
-                if (pdus != null) {
-                    for (Object pdu : pdus) {
-                        SmsMessage smsMessage = SmsMessage.createFromPdu((byte[]) pdu);
-                        String sender = smsMessage.getDisplayOriginatingAddress();
-                        String messageBody = smsMessage.getMessageBody();
-                        
-                        Log.d(TAG, "SMS from: " + sender + ", Message: " + messageBody);
-                        
-                        // Send to React Native if app is running
-                        sendSmsToReactNative(context, sender, messageBody);
-                        
-                        // Process SMS directly in receiver (simpler approach)
-                        processSmsDirectly(context, sender, messageBody);
+                if (pdus != null && pdus.length > 0) {
+                    Context appContext = context.getApplicationContext();
+                    
+                    // Reassemble fragments so each logical SMS is processed exactly once
+                    List<MultipartSmsAssembler.LogicalSms> messages = MultipartSmsAssembler.get().assemble(
+                        pdus, bundle.getString("format"), sms -> dispatch(appContext, sms, System.nanoTime(), () -> { }));
+                    if (messages.isEmpty()) {
+                        OtpLog.d(TAG, "Only partial multipart fragments received, waiting for the rest");
+                        return;
+                    }
+                    
+                    // Once queued, the foreground host and its wake lock cover the forwards. Only when
+                    // Android refused to start the host is the broadcast kept alive, and only briefly
+                    BoundedPendingResult hold = SmsBackgroundService.ensureRunning(appContext)
+                        ? null : BoundedPendingResult.hold(this, "SMS", MAX_HOLD_MS);
+                    AtomicInteger remaining = new AtomicInteger(messages.size());
+                    Runnable onDone = () -> {
+                        if (remaining.decrementAndGet() == 0 && hold != null) {
+                            hold.finish();
+                        }
+                    };
+                    
+                    for (MultipartSmsAssembler.LogicalSms sms : messages) {
+                        dispatch(appContext, sms, receivedNanos, onDone);
                     }
                 }
             }
         }
     }
 
-    private void sendSmsToReactNative(Context context, String sender, String message) {
-        try {
-            ReactApplication reactApplication = (ReactApplication) context.getApplicationContext();
-            ReactInstanceManager reactInstanceManager = reactApplication.getReactNativeHost().getReactInstanceManager();
-            ReactContext reactContext = reactInstanceManager.getCurrentReactContext();
-            
-            if (reactContext != null) {
-                WritableMap params = Arguments.createMap();
-                params.putString("originatingAddress", sender);
-                params.putString("messageBody", message);
-                params.putDouble("timestamp", System.currentTimeMillis());
-                
-                reactContext
-                    .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                    .emit("onSMSReceived", params);
-                    
-                Log.d(TAG, "SMS sent to React Native");
-            } else {
-                Log.d(TAG, "React context not available");
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error sending SMS to React Native: " + e.getMessage());
-        }
+    private void dispatch(Context context, MultipartSmsAssembler.LogicalSms sms, long receivedNanos, Runnable onDone) {
+        PipelineMetrics.increment(PipelineMetrics.Counter.RECEIVED);
+        OtpLog.d(TAG, "SMS from {} ({#} parts): {*}", sms.sender, sms.body, sms.parts);
+        
+        // The native pipeline is the only processor; JS hears about results via onOtpProcessed
+        processSmsDirectly(context, sms.sender, sms.body, receivedNanos, onDone);
+        PipelineMetrics.recordSince(PipelineMetrics.Stage.RECEIVE, receivedNanos);
     }
 
-    private void processSmsDirectly(Context context, String sender, String message) {
-        Log.d(TAG, "Processing SMS directly in background: " + sender + " - " + message);
-        
+    private void processSmsDirectly(Context context, String sender, String message, long receivedNanos, Runnable onDone) {
         try {
-            // Start background processing in a separate thread
-            new Thread(() -> {
-                try {
-                    BackgroundOtpProcessor processor = new BackgroundOtpProcessor(context);
-                    processor.processSms(sender, message);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error in background OTP processing", e);
-                }
-            }).start();
+            SmsBackgroundService.submit(context, sender, message, System.currentTimeMillis(), receivedNanos, onDone);
         } catch (Exception e) {
-            Log.e(TAG, "Error starting background processing", e);
+            OtpLog.e(TAG, "Error starting background processing", e);
+            onDone.run();
         }
     }
 }
\ No newline at end of file
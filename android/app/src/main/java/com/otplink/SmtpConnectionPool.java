@@ -0,0 +1,302 @@
+package com.otplink;
+
+import android.util.Log;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import com.sun.mail.smtp.SMTPTransport;
+import com.sun.mail.util.MailSSLSocketFactory;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.URLName;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * Keeps one authenticated SMTP transport per host/port/user open between sends, so only
+ * the first OTP pays DNS, TCP, STARTTLS and AUTH. Idle connections are closed after
+ * {@link #IDLE_TIMEOUT_MS}; a connection idle for longer than {@link #HEALTH_CHECK_MS}
+ * is probed with NOOP before reuse. A send that fails on a reused connection before
+ * DATA was issued is retried once on a fresh one; once DATA has started the relay may
+ * already have queued the message, so the failure is reported rather than risking a
+ * duplicate. Sends on the same connection are serialised.
+ *
+ * STARTTLS goes through one socket factory per host for the life of the process. Left
+ * to itself javax.mail builds a new SSL context for every connection, so a reconnect
+ * could never resume the previous TLS session.
+ */
+final class SmtpConnectionPool {
+    private static final String TAG = "SmtpConnectionPool";
+    static final long IDLE_TIMEOUT_MS = 60_000;
+    static final long HEALTH_CHECK_MS = 10_000;
+
+    private static final Map<String, MailSSLSocketFactory> TLS_FACTORIES = new ConcurrentHashMap<>();
+    private static final SmtpConnectionPool INSTANCE = new SmtpConnectionPool();
+
+    private final Map<String, PooledConnection> connections = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService idleReaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "smtp-idle-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The connection failed after DATA was issued, so the relay may already have queued
+     * the message. Neither the pool nor the relay failover resends it.
+     */
+    static final class DeliveryUnknownException extends MessagingException {
+        DeliveryUnknownException(String message, Exception cause) {
+            super(message, cause);
+        }
+    }
+
+    static SmtpConnectionPool get() {
+        return INSTANCE;
+    }
+
+    /** Creates a message bound to the pooled session of {@code endpoint}. */
+    MimeMessage newMessage(SmtpEndpoint endpoint) {
+        return new MimeMessage(connectionFor(endpoint).session);
+    }
+
+    /**
+     * Creates a message whose Message-ID stays {@code messageId} through saveChanges, so
+     * copies sent through different relays are recognised as one message by the recipient.
+     */
+    MimeMessage newMessage(SmtpEndpoint endpoint, String messageId) {
+        return new StableIdMessage(connectionFor(endpoint).session, messageId);
+    }
+
+    void send(SmtpEndpoint endpoint, Message message) throws MessagingException {
+        PooledConnection connection = connectionFor(endpoint);
+        synchronized (connection) {
+            connection.cancelIdleClose();
+            try {
+                message.saveChanges();
+                boolean reused = connection.ensureConnected();
+                while (true) {
+                    try {
+                        connection.send(message);
+                        break;
+                    } catch (MessagingException | IllegalStateException e) {
+                        if (e instanceof SendFailedException && !isConnectionLoss(e)) {
+                            // Rejected recipients: the connection is fine, the message is not
+                            throw (SendFailedException) e;
+                        }
+                        boolean dataStarted = connection.transport != null && connection.transport.dataStarted;
+                        connection.close();
+                        if (dataStarted) {
+                            throw new DeliveryUnknownException("Connection to " + endpoint + " failed after DATA", e);
+                        }
+                        if (!reused) {
+                            throw new MessagingException("Send to " + endpoint + " failed: " + e.getMessage(), e);
+                        }
+                        // The server dropped the idle connection before it saw anything of this message
+                        Log.w(TAG, "Pooled connection to " + endpoint + " was dead, resending: " + e.getMessage());
+                        reused = connection.ensureConnected();
+                    }
+                }
+                connection.lastUsedAt = System.currentTimeMillis();
+            } finally {
+                connection.scheduleIdleClose();
+            }
+        }
+    }
+
+    // javax.mail reports a connection closed by the server as a failed send with code -1
+    private static boolean isConnectionLoss(Exception e) {
+        return e instanceof SMTPSendFailedException && ((SMTPSendFailedException) e).getReturnCode() == -1;
+    }
+
+    /** Opens (or health-checks) the pooled connection to {@code endpoint} ahead of the first send. */
+    void warm(SmtpEndpoint endpoint) throws MessagingException {
+        PooledConnection connection = connectionFor(endpoint);
+        synchronized (connection) {
+            connection.cancelIdleClose();
+            try {
+                connection.ensureConnected();
+                connection.lastUsedAt = System.currentTimeMillis();
+            } finally {
+                connection.scheduleIdleClose();
+            }
+        }
+    }
+
+    /** Closes every pooled connection, e.g. when the app is going away. */
+    void closeAll() {
+        for (PooledConnection connection : connections.values()) {
+            synchronized (connection) {
+                connection.cancelIdleClose();
+                connection.close();
+            }
+        }
+        connections.clear();
+    }
+
+    private PooledConnection connectionFor(SmtpEndpoint endpoint) {
+        String key = endpoint.key();
+        PooledConnection connection = connections.get(key);
+        if (connection != null && !connection.endpoint.sameSession(endpoint)) {
+            // Credentials or timeouts changed: drop the old session rather than reuse its authentication
+            synchronized (connection) {
+                connection.cancelIdleClose();
+                connection.close();
+            }
+            connections.remove(key, connection);
+            connection = null;
+        }
+        if (connection == null) {
+            connection = connections.computeIfAbsent(key, k -> new PooledConnection(endpoint));
+        }
+        return connection;
+    }
+
+    static Properties sessionProperties(SmtpEndpoint endpoint) {
+        Properties props = new Properties();
+        props.put("mail.smtp.auth", "true");
+        props.put("mail.smtp.starttls.enable", "true");
+        props.put("mail.smtp.host", endpoint.host);
+        props.put("mail.smtp.port", String.valueOf(endpoint.port));
+        props.put("mail.smtp.ssl.trust", endpoint.host);
+        MailSSLSocketFactory tlsFactory = tlsFactoryFor(endpoint.host);
+        if (tlsFactory != null) {
+            props.put("mail.smtp.ssl.socketFactory", tlsFactory);
+        }
+        // javax.mail waits forever by default; a stalled relay must fail over instead
+        props.put("mail.smtp.connectiontimeout", String.valueOf(endpoint.connectTimeoutMs));
+        props.put("mail.smtp.timeout", String.valueOf(endpoint.readTimeoutMs));
+        return props;
+    }
+
+    // Same trust rule as mail.smtp.ssl.trust, but one SSL context (and session cache) per host
+    private static MailSSLSocketFactory tlsFactoryFor(String host) {
+        MailSSLSocketFactory factory = TLS_FACTORIES.get(host);
+        if (factory == null) {
+            try {
+                factory = new MailSSLSocketFactory();
+                factory.setTrustedHosts(new String[] {host});
+            } catch (GeneralSecurityException e) {
+                Log.w(TAG, "Falling back to per-connection TLS for " + host + ": " + e.getMessage());
+                return null;
+            }
+            MailSSLSocketFactory existing = TLS_FACTORIES.putIfAbsent(host, factory);
+            if (existing != null) {
+                factory = existing;
+            }
+        }
+        return factory;
+    }
+
+    private static final class StableIdMessage extends MimeMessage {
+        private final String messageId;
+
+        StableIdMessage(Session session, String messageId) {
+            super(session);
+            this.messageId = messageId;
+        }
+
+        @Override
+        protected void updateMessageID() throws MessagingException {
+            setHeader("Message-ID", messageId);
+        }
+    }
+
+    // Records whether the current send got as far as DATA
+    private static final class TrackingTransport extends SMTPTransport {
+        boolean dataStarted;
+
+        TrackingTransport(Session session, URLName url) {
+            super(session, url);
+        }
+
+        @Override
+        public synchronized void sendMessage(Message message, Address[] addresses) throws MessagingException {
+            dataStarted = false;
+            super.sendMessage(message, addresses);
+        }
+
+        @Override
+        protected OutputStream data() throws MessagingException {
+            dataStarted = true;
+            return super.data();
+        }
+    }
+
+    private final class PooledConnection {
+        final SmtpEndpoint endpoint;
+        final Session session;
+        TrackingTransport transport;
+        long lastUsedAt;
+        long connectedAt;
+        ScheduledFuture<?> idleClose;
+
+        PooledConnection(SmtpEndpoint endpoint) {
+            this.endpoint = endpoint;
+            this.session = Session.getInstance(sessionProperties(endpoint));
+        }
+
+        /** Returns true if an existing connection is reused, false if a new one was opened. */
+        boolean ensureConnected() throws MessagingException {
+            if (transport != null) {
+                long idle = System.currentTimeMillis() - Math.max(lastUsedAt, connectedAt);
+                // Transport.isConnected() issues a NOOP on SMTP; only trust it after an idle gap
+                if (idle < HEALTH_CHECK_MS || transport.isConnected()) {
+                    return true;
+                }
+            }
+            close();
+            long start = System.currentTimeMillis();
+            transport = new TrackingTransport(session, new URLName("smtp", endpoint.host, endpoint.port, null,
+                endpoint.username, null));
+            transport.connect(endpoint.host, endpoint.port, endpoint.username, endpoint.password);
+            connectedAt = System.currentTimeMillis();
+            PipelineMetrics.record(PipelineMetrics.Stage.SMTP_CONNECT, (connectedAt - start) * 1000000);
+            Log.d(TAG, "Connected to " + endpoint + " in " + (connectedAt - start) + "ms");
+            return false;
+        }
+
+        void send(Message message) throws MessagingException {
+            long start = System.nanoTime();
+            transport.sendMessage(message, message.getAllRecipients());
+            PipelineMetrics.recordSince(PipelineMetrics.Stage.SMTP_SEND, start);
+        }
+
+        void close() {
+            if (transport != null) {
+                try {
+                    transport.close();
+                } catch (MessagingException e) {
+                    Log.w(TAG, "Error closing connection to " + endpoint + ": " + e.getMessage());
+                }
+                transport = null;
+            }
+        }
+
+        void scheduleIdleClose() {
+            idleClose = idleReaper.schedule(() -> {
+                synchronized (PooledConnection.this) {
+                    if (System.currentTimeMillis() - lastUsedAt >= IDLE_TIMEOUT_MS) {
+                        Log.d(TAG, "Closing idle connection to " + endpoint);
+                        close();
+                    }
+                }
+            }, IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+
+        void cancelIdleClose() {
+            if (idleClose != null) {
+                idleClose.cancel(false);
+                idleClose = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.otplink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/** SMTP server plus the account used to authenticate against it. */
+final class SmtpEndpoint {
+    static final int DEFAULT_CONNECT_TIMEOUT_MS = 10_000;
+    static final int DEFAULT_READ_TIMEOUT_MS = 20_000;
+
+    final String host;
+    final int port;
+    final String username;
+    final String password;
+    final int connectTimeoutMs;
+    final int readTimeoutMs;
+
+    SmtpEndpoint(String host, int port, String username, String password) {
+        this(host, port, username, password, DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS);
+    }
+
+    SmtpEndpoint(String host, int port, String username, String password, int connectTimeoutMs, int readTimeoutMs) {
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    /** The primary relay. */
+    static SmtpEndpoint from(EmailSettings settings) {
+        return new SmtpEndpoint(settings.smtpHost, settings.smtpPort, settings.username, settings.password,
+            settings.connectTimeoutMs, settings.readTimeoutMs);
+    }
+
+    /** The primary relay followed by the configured fallbacks, in preference order. */
+    static List<SmtpEndpoint> relays(EmailSettings settings) {
+        List<SmtpEndpoint> relays = new ArrayList<>(1 + settings.fallbackRelays.size());
+        relays.add(from(settings));
+        relays.addAll(settings.fallbackRelays);
+        return relays;
+    }
+
+    // Same server and account, but the session must be rebuilt to pick up new credentials or timeouts
+    boolean sameSession(SmtpEndpoint other) {
+        return Objects.equals(password, other.password)
+            && connectTimeoutMs == other.connectTimeoutMs
+            && readTimeoutMs == other.readTimeoutMs;
+    }
+
+    // Connections are shared per host/port/user; the password only decides whether to re-authenticate
+    String key() {
+        return host + ":" + port + ":" + username;
+    }
+
+    @Override
+    public String toString() {
+        return key();
+    }
+}
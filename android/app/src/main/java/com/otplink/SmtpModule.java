@@ -6,14 +6,9 @@ import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReadableMap;
 
-import java.util.Properties;
 import javax.mail.Message;
 import javax.mail.MessagingException;
-import javax.mail.PasswordAuthentication;
-import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
-import javax.mail.internet.MimeMessage;
 
 import android.os.AsyncTask;
 import android.util.Log;
@@ -74,27 +69,12 @@ public class SmtpModule extends ReactContextBaseJavaModule {
         @Override
         protected String doInBackground(Void... voids) {
             try {
-                // Setup mail server properties
-                Properties props = new Properties();
-                props.put("mail.smtp.auth", "true");
-                props.put("mail.smtp.starttls.enable", "true");
-                props.put("mail.smtp.host", host);
-                props.put("mail.smtp.port", String.valueOf(port));
-                props.put("mail.smtp.ssl.trust", host);
-
-                Log.d(TAG, "SMTP Properties configured");
-
-                // Create session with authentication
-                Session session = Session.getInstance(props, new javax.mail.Authenticator() {
-                    protected PasswordAuthentication getPasswordAuthentication() {
-                        return new PasswordAuthentication(username, password);
-                    }
-                });
-
-                Log.d(TAG, "SMTP Session created");
+                // Reuse the pooled, already authenticated connection when there is one
+                SmtpConnectionPool pool = SmtpConnectionPool.get();
+                SmtpEndpoint endpoint = new SmtpEndpoint(host, port, username, password);
 
                 // Create message
-                Message message = new MimeMessage(session);
+                Message message = pool.newMessage(endpoint);
                 message.setFrom(new InternetAddress(username));
                 message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(to));
                 message.setSubject(subject);
@@ -103,7 +83,7 @@ public class SmtpModule extends ReactContextBaseJavaModule {
                 Log.d(TAG, "Message created, sending...");
 
                 // Send message
-                Transport.send(message);
+                pool.send(endpoint, message);
 
                 Log.d(TAG, "Email sent successfully!");
                 return "SUCCESS";
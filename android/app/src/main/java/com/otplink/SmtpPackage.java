@@ -16,6 +16,8 @@ public class SmtpPackage implements ReactPackage {
         modules.add(new SmtpModule(reactContext));
         modules.add(new ConfigSyncModule(reactContext));
         modules.add(new SmsTestModule(reactContext));
+        modules.add(new PipelineMetricsModule(reactContext));
+        modules.add(new OtpHistoryModule(reactContext));
         return modules;
     }
 
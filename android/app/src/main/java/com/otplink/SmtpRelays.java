@@ -0,0 +1,229 @@
+package com.otplink;
+
+import android.util.Log;
+import com.otplink.core.LatencyHistogram;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * Sends through an ordered list of SMTP relays. Relays that failed recently are moved
+ * to the back of the list for a growing cool-down, and a failed send moves on to the
+ * next relay. With hedging enabled, a primary that has not acknowledged within its
+ * recent p95 is raced against the first fallback; both copies carry the same
+ * Message-ID, so the recipient's mail store keeps one.
+ */
+final class SmtpRelays {
+    private static final String TAG = "SmtpRelays";
+    static final long COOL_DOWN_BASE_MS = 30_000;
+    static final long COOL_DOWN_MAX_MS = 5 * 60 * 1000;
+    static final long DEFAULT_HEDGE_MS = 3_000;
+    static final long MIN_HEDGE_MS = 250;
+    static final long MAX_HEDGE_MS = 10_000;
+    // Samples needed before a relay's own p95 replaces the default, and per p95 window
+    private static final int MIN_SAMPLES = 8;
+    private static final int WINDOW_SAMPLES = 64;
+
+    private static final SmtpRelays INSTANCE = new SmtpRelays();
+
+    private final Map<String, Health> health = new ConcurrentHashMap<>();
+    private final ExecutorService hedgeExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "smtp-hedge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    interface Composer {
+        /** Builds the message for one relay; called once per relay tried. */
+        MimeMessage compose(SmtpEndpoint endpoint) throws MessagingException;
+    }
+
+    static SmtpRelays get() {
+        return INSTANCE;
+    }
+
+    void send(EmailSettings settings, Composer composer) throws MessagingException {
+        List<SmtpEndpoint> relays = order(SmtpEndpoint.relays(settings));
+        MessagingException last = null;
+        int next = 0;
+        if (settings.hedgeSends && relays.size() > 1) {
+            try {
+                sendHedged(relays.get(0), relays.get(1), composer);
+                return;
+            } catch (SendFailedException | SmtpConnectionPool.DeliveryUnknownException e) {
+                throw e;
+            } catch (MessagingException e) {
+                last = e;
+                next = 2;
+            }
+        }
+        for (; next < relays.size(); next++) {
+            SmtpEndpoint relay = relays.get(next);
+            try {
+                sendTo(relay, composer);
+                return;
+            } catch (SendFailedException | SmtpConnectionPool.DeliveryUnknownException e) {
+                // Recipients rejected: another relay would reject them too. Or this relay
+                // may already have the message, and a second relay would deliver a duplicate.
+                throw e;
+            } catch (MessagingException e) {
+                last = e;
+                if (next + 1 < relays.size()) {
+                    PipelineMetrics.increment(PipelineMetrics.Counter.FAILOVERS);
+                    Log.w(TAG, "Relay " + relay + " failed, failing over: " + e.getMessage());
+                }
+            }
+        }
+        throw last;
+    }
+
+    // Healthy relays first, each group in configured order
+    private List<SmtpEndpoint> order(List<SmtpEndpoint> relays) {
+        if (relays.size() == 1) {
+            return relays;
+        }
+        long now = System.currentTimeMillis();
+        List<SmtpEndpoint> ordered = new ArrayList<>(relays.size());
+        List<SmtpEndpoint> coolingDown = new ArrayList<>();
+        for (SmtpEndpoint relay : relays) {
+            (healthOf(relay).isHealthy(now) ? ordered : coolingDown).add(relay);
+        }
+        ordered.addAll(coolingDown);
+        return ordered;
+    }
+
+    private void sendTo(SmtpEndpoint relay, Composer composer) throws MessagingException {
+        Health relayHealth = healthOf(relay);
+        long start = System.nanoTime();
+        try {
+            SmtpConnectionPool.get().send(relay, composer.compose(relay));
+            relayHealth.success(System.nanoTime() - start);
+        } catch (SendFailedException e) {
+            // The relay answered; it is the message that was refused
+            relayHealth.success(System.nanoTime() - start);
+            throw e;
+        } catch (MessagingException | RuntimeException e) {
+            relayHealth.failure(relay);
+            throw e;
+        }
+    }
+
+    private void sendHedged(SmtpEndpoint primary, SmtpEndpoint secondary, Composer composer) throws MessagingException {
+        ExecutorCompletionService<SmtpEndpoint> race = new ExecutorCompletionService<>(hedgeExecutor);
+        race.submit(() -> {
+            sendTo(primary, composer);
+            return primary;
+        });
+        long threshold = healthOf(primary).hedgeThresholdMs();
+        int running = 1;
+        MessagingException last = null;
+        try {
+            Future<SmtpEndpoint> done = race.poll(threshold, TimeUnit.MILLISECONDS);
+            if (done != null) {
+                running--;
+                try {
+                    done.get();
+                    return;
+                } catch (ExecutionException e) {
+                    last = asMessagingException(e);
+                    // Only a failure before DATA is safe to resend; a slow ack is hedged below
+                    if (last instanceof SendFailedException || last instanceof SmtpConnectionPool.DeliveryUnknownException) {
+                        throw last;
+                    }
+                    PipelineMetrics.increment(PipelineMetrics.Counter.FAILOVERS);
+                    Log.w(TAG, "Relay " + primary + " failed, failing over: " + last.getMessage());
+                }
+            } else {
+                PipelineMetrics.increment(PipelineMetrics.Counter.HEDGES);
+                Log.d(TAG, "Relay " + primary + " slower than " + threshold + "ms, hedging to " + secondary);
+            }
+            race.submit(() -> {
+                sendTo(secondary, composer);
+                return secondary;
+            });
+            running++;
+            // First acknowledgement wins; the other send finishes in the background
+            while (running > 0) {
+                Future<SmtpEndpoint> next = race.take();
+                running--;
+                try {
+                    SmtpEndpoint winner = next.get();
+                    Log.d(TAG, "Hedged send acknowledged by " + winner);
+                    return;
+                } catch (ExecutionException e) {
+                    last = asMessagingException(e);
+                    if (last instanceof SendFailedException || last instanceof SmtpConnectionPool.DeliveryUnknownException) {
+                        throw last;
+                    }
+                }
+            }
+            throw last;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for relay", e);
+        }
+    }
+
+    private static MessagingException asMessagingException(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof MessagingException) {
+            return (MessagingException) cause;
+        }
+        return new MessagingException(String.valueOf(cause), cause instanceof Exception ? (Exception) cause : e);
+    }
+
+    private Health healthOf(SmtpEndpoint relay) {
+        return health.computeIfAbsent(relay.key(), key -> new Health());
+    }
+
+    private static final class Health {
+        // Ack latency of the current window; its p95 is kept when the window rolls over
+        private final LatencyHistogram window = new LatencyHistogram();
+        private long p95Micros = -1;
+        private int consecutiveFailures;
+        private long coolDownUntil;
+
+        synchronized void success(long nanos) {
+            consecutiveFailures = 0;
+            coolDownUntil = 0;
+            window.recordNanos(nanos);
+            if (window.count() >= WINDOW_SAMPLES) {
+                p95Micros = window.snapshot().percentileMicros(95);
+                window.reset();
+            }
+        }
+
+        synchronized void failure(SmtpEndpoint relay) {
+            int shift = Math.min(consecutiveFailures++, 4);
+            long coolDown = Math.min(COOL_DOWN_MAX_MS, COOL_DOWN_BASE_MS << shift);
+            coolDownUntil = System.currentTimeMillis() + coolDown;
+            Log.w(TAG, "Relay " + relay + " cooling down for " + coolDown + "ms");
+        }
+
+        synchronized boolean isHealthy(long now) {
+            return coolDownUntil <= now;
+        }
+
+        synchronized long hedgeThresholdMs() {
+            long p95 = p95Micros;
+            if (window.count() >= MIN_SAMPLES) {
+                // Prefer the current window once it has enough samples to be meaningful
+                p95 = window.snapshot().percentileMicros(95);
+            }
+            if (p95 < 0) {
+                return DEFAULT_HEDGE_MS;
+            }
+            return Math.max(MIN_HEDGE_MS, Math.min(MAX_HEDGE_MS, p95 / 1000));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.otplink;
+
+import android.content.Context;
+import android.util.Log;
+import com.otplink.core.TemplateCache;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the process-wide {@link TemplateCache} and keeps it in the app's files directory.
+ * Templates change rarely, so saves are coalesced and written off the processing lanes.
+ */
+final class TemplateStore {
+    private static final String TAG = "TemplateStore";
+    private static final String FILE_NAME = "otp_templates.bin";
+    private static final long SAVE_DELAY_MS = 2_000;
+
+    private static volatile TemplateStore instance;
+
+    private final File file;
+    private final TemplateCache cache = new TemplateCache(TemplateCache.DEFAULT_CAPACITY);
+    private final ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "otp-template-saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by this
+    private long savedVersion;
+    private boolean saveScheduled;
+
+    private TemplateStore(File file) {
+        this.file = file;
+        load();
+        savedVersion = cache.version();
+    }
+
+    static TemplateStore get(Context context) {
+        TemplateStore result = instance;
+        if (result == null) {
+            synchronized (TemplateStore.class) {
+                result = instance;
+                if (result == null) {
+                    result = new TemplateStore(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    TemplateCache cache() {
+        return cache;
+    }
+
+    /** Schedules a save if a template was learned or dropped since the last one. */
+    void saveIfChanged() {
+        synchronized (this) {
+            if (saveScheduled || cache.version() == savedVersion) {
+                return;
+            }
+            saveScheduled = true;
+        }
+        saver.schedule(this::save, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (cache.readFrom(in)) {
+                Log.d(TAG, "Restored " + cache.size() + " sender templates");
+            } else {
+                Log.w(TAG, "Ignoring template file with unknown format");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Error reading templates: " + e.getMessage());
+        }
+    }
+
+    private void save() {
+        long version;
+        synchronized (this) {
+            saveScheduled = false;
+            version = cache.version();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            cache.writeTo(out);
+            out.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving templates", e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Could not replace template file");
+            temp.delete();
+            return;
+        }
+        synchronized (this) {
+            savedVersion = version;
+        }
+        Log.d(TAG, "Saved " + cache.size() + " sender templates");
+    }
+}
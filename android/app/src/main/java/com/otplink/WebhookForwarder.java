@@ -0,0 +1,203 @@
+package com.otplink;
+
+import android.util.Log;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts OTPs to webhook URLs with the same JSON body the JS forwarder sends. Connections
+ * are plain {@link HttpURLConnection}s, which the platform keeps alive and pools per
+ * host as long as each response body is read to the end, so only the first post to a
+ * host pays DNS, TCP and TLS. Every post runs against an absolute deadline that bounds
+ * connect plus response time together.
+ */
+final class WebhookForwarder {
+    private static final String TAG = "WebhookForwarder";
+    static final long DEFAULT_TIMEOUT_MS = 5_000;
+    private static final int MAX_THREADS = 4;
+
+    private static final WebhookForwarder INSTANCE = new WebhookForwarder();
+
+    private static final ThreadLocal<SimpleDateFormat> ISO_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return format;
+        }
+    };
+
+    private final ThreadPoolExecutor executor;
+
+    interface Callback {
+        /** {@code error} is null when the webhook answered with a 2xx status. */
+        void onResult(Exception error);
+    }
+
+    /** Thrown for a non-2xx response, after the body was read so the connection stays reusable. */
+    static final class HttpStatusException extends IOException {
+        final int status;
+
+        HttpStatusException(String url, int status) {
+            super("Webhook " + url + " answered HTTP " + status);
+            this.status = status;
+        }
+    }
+
+    private WebhookForwarder() {
+        executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "otp-webhook");
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    static WebhookForwarder get() {
+        return INSTANCE;
+    }
+
+    /** Posts on the webhook pool; {@code callback} runs exactly once on a pool thread. */
+    void postAsync(String url, byte[] payload, long deadlineNanos, Callback callback) {
+        try {
+            executor.execute(() -> {
+                Exception error = null;
+                try {
+                    post(url, payload, deadlineNanos);
+                } catch (Exception e) {
+                    error = e;
+                }
+                callback.onResult(error);
+            });
+        } catch (RuntimeException e) {
+            callback.onResult(e);
+        }
+    }
+
+    /** Posts {@code payload} to {@code url}, failing once {@code deadlineNanos} ({@link System#nanoTime()}) has passed. */
+    void post(String url, byte[] payload, long deadlineNanos) throws IOException {
+        long start = System.nanoTime();
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setConnectTimeout(remaining(url, deadlineNanos));
+            connection.setReadTimeout(remaining(url, deadlineNanos));
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setUseCaches(false);
+            connection.setFixedLengthStreamingMode(payload.length);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setRequestProperty("Connection", "keep-alive");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(payload);
+            }
+            // Connect and upload may have used part of the budget
+            connection.setReadTimeout(remaining(url, deadlineNanos));
+            int status = connection.getResponseCode();
+            // Reading the body to the end is what returns the socket to the keep-alive pool
+            drain(status >= 400 ? connection.getErrorStream() : connection.getInputStream());
+            PipelineMetrics.recordSince(PipelineMetrics.Stage.WEBHOOK_POST, start);
+            if (status < 200 || status >= 300) {
+                throw new HttpStatusException(url, status);
+            }
+            Log.d(TAG, "Posted OTP to " + connection.getURL().getHost() + " in "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+        } catch (IOException e) {
+            // The connection may be half-used; never hand it back to the pool
+            if (!(e instanceof HttpStatusException)) {
+                connection.disconnect();
+            }
+            throw e;
+        }
+    }
+
+    // Monotonic, so a wall-clock change cannot stretch or cut the budget
+    private static int remaining(String url, long deadlineNanos) throws SocketTimeoutException {
+        long remaining = (deadlineNanos - System.nanoTime()) / 1_000_000;
+        if (remaining <= 0) {
+            throw new SocketTimeoutException("Deadline passed before webhook " + url + " completed");
+        }
+        return (int) Math.min(remaining, Integer.MAX_VALUE);
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        try (InputStream body = in) {
+            byte[] buffer = new byte[512];
+            while (body.read(buffer) != -1) {
+                // discard
+            }
+        }
+    }
+
+    /** Short destination name for delivery results: "webhook:" plus the URL's host. */
+    static String label(String url) {
+        try {
+            return "webhook:" + new URL(url).getHost();
+        } catch (IOException e) {
+            return "webhook";
+        }
+    }
+
+    /** {"otp":..,"sender":..,"message":..,"timestamp":ISO-8601}, matching forwardViaWebhook in JS. */
+    static byte[] payload(String otp, String sender, String message, long timestamp) {
+        StringBuilder json = new StringBuilder(64 + (message != null ? message.length() : 0));
+        json.append("{\"otp\":");
+        appendString(json, otp);
+        json.append(",\"sender\":");
+        appendString(json, sender);
+        json.append(",\"message\":");
+        appendString(json, message);
+        json.append(",\"timestamp\":\"").append(ISO_FORMAT.get().format(new Date(timestamp))).append("\"}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format(Locale.US, "\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,57 @@
+package com.otplink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import com.otplink.core.OtpRecord;
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class BackgroundOtpProcessorTest {
+    private ReplayStandIns.Http http;
+
+    @After
+    public void tearDown() {
+        if (http != null) {
+            http.close();
+        }
+    }
+
+    private static int closedPort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Test
+    public void retriesAFailedEmailEvenWhenAWebhookDelivered() throws Exception {
+        Context context = RuntimeEnvironment.getApplication();
+        http = new ReplayStandIns.Http(0);
+        ConfigStore.update(context, "{\"keywords\":[\"otp\"],"
+            + "\"webhookUrl\":\"" + http.url() + "\","
+            + "\"emailSettings\":{\"smtpHost\":\"127.0.0.1\",\"smtpPort\":" + closedPort() + ","
+            + "\"username\":\"user\",\"password\":\"secret\",\"recipient\":\"me@example.com\","
+            + "\"coalesceWindowMs\":0,\"connectTimeoutMs\":1000}}");
+        CountDownLatch done = new CountDownLatch(1);
+
+        new BackgroundOtpProcessor(context).processSms("BANK", "Your OTP is 482913",
+            System.currentTimeMillis(), System.nanoTime(), done::countDown);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, http.received());
+        assertNotNull(ForwardOutbox.peek());
+        assertEquals(1, ForwardOutbox.peek().size());
+        OtpRecord record = OtpRecordStore.get(context).read(OtpRecordStore.get(context).lastSeq());
+        assertEquals(OtpRecord.STATUS_SENT, record.status);
+        assertTrue(record.deliveries, record.deliveries.contains("email=" + OtpRecord.STATUS_RETRYING));
+    }
+}
@@ -0,0 +1,22 @@
+package com.otplink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class ConfigSnapshotTest {
+    @Test
+    public void skipsSenderRulesWithAnInvalidOtpPattern() throws Exception {
+        ConfigSnapshot config = ConfigSnapshot.parse("{\"keywords\":[\"otp\"],\"senderRules\":["
+            + "{\"pattern\":\"SHOP\",\"otpPattern\":\"code ([0-9]{5\"},"
+            + "{\"pattern\":\"BANK\",\"otpPattern\":\"OTP ([0-9]{6})\"}]}", 1);
+
+        assertEquals(1, config.senderRules.ruleCount());
+        assertEquals("BANK", config.senderRules.rule(0).pattern);
+        assertTrue(config.senderRules.match("BANK").hasOtpPattern());
+    }
+}
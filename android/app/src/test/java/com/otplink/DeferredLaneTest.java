@@ -0,0 +1,47 @@
+package com.otplink;
+
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import com.otplink.core.OtpRecord;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class DeferredLaneTest {
+    @Test
+    public void completesEveryEntryWhenTheBatchFails() throws Exception {
+        Context context = RuntimeEnvironment.getApplication();
+        DeferredLane lane = DeferredLane.get(context);
+        CountDownLatch done = new CountDownLatch(2);
+        AtomicLong secondSeq = new AtomicLong();
+        // Hold the lane so both entries below are drained as one batch
+        CountDownLatch release = new CountDownLatch(1);
+        lane.save(new OtpRecord("100200", "BANK", "Your OTP is 100200", 0), seq -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, null);
+
+        lane.save(new OtpRecord("482913", "BANK", "Your OTP is 482913", 1), seq -> {
+            throw new AssertionError("after save failed");
+        }, done::countDown);
+        lane.save(new OtpRecord("771204", "BANK", "Your OTP is 771204", 2), secondSeq::set, done::countDown);
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        // The failure stays with its own entry
+        assertTrue(secondSeq.get() > 0);
+
+        // The lane survives the failure and keeps saving
+        CountDownLatch next = new CountDownLatch(1);
+        lane.save(new OtpRecord("550019", "BANK", "Your OTP is 550019", 3), null, next::countDown);
+        assertTrue(next.await(10, TimeUnit.SECONDS));
+    }
+}
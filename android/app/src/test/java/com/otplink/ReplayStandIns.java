@@ -0,0 +1,216 @@
+package com.otplink;
+
+import android.util.Log;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loopback stand-ins for an SMTP relay and a webhook endpoint, so a replay or a test
+ * exercises the real forwarding code without leaving the machine. Both accept everything, count
+ * what they receive and can add a fixed delay to each acknowledgement to mimic a slow
+ * relay. The SMTP server speaks just enough ESMTP for javax.mail: no STARTTLS, any AUTH.
+ */
+final class ReplayStandIns {
+    private static final String TAG = "ReplayStandIns";
+
+    private ReplayStandIns() {
+    }
+
+    abstract static class Server implements AutoCloseable {
+        private final ServerSocket socket;
+        private final ExecutorService connections;
+        final long delayMs;
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong accepted = new AtomicLong();
+
+        Server(String name, long delayMs) throws IOException {
+            this.socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            this.delayMs = delayMs;
+            this.connections = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "otp-replay-" + name);
+                thread.setDaemon(true);
+                return thread;
+            });
+            connections.execute(this::acceptLoop);
+        }
+
+        int port() {
+            return socket.getLocalPort();
+        }
+
+        long received() {
+            return received.get();
+        }
+
+        long accepted() {
+            return accepted.get();
+        }
+
+        private void acceptLoop() {
+            while (!socket.isClosed()) {
+                try {
+                    Socket client = socket.accept();
+                    accepted.incrementAndGet();
+                    connections.execute(() -> {
+                        try (Socket s = client) {
+                            serve(s.getInputStream(), s.getOutputStream());
+                        } catch (IOException e) {
+                            // Client went away; nothing to clean up
+                        }
+                    });
+                } catch (IOException e) {
+                    if (!socket.isClosed()) {
+                        Log.w(TAG, "Stand-in accept failed: " + e.getMessage());
+                    }
+                }
+            }
+        }
+
+        abstract void serve(InputStream in, OutputStream out) throws IOException;
+
+        void pause() {
+            if (delayMs <= 0) {
+                return;
+            }
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+            connections.shutdownNow();
+        }
+    }
+
+    static final class Smtp extends Server {
+        // Hang up after acknowledging each message, as a relay that drops idle sessions does
+        volatile boolean closeAfterMessage;
+
+        Smtp(long delayMs) throws IOException {
+            super("smtp", delayMs);
+        }
+
+        @Override
+        void serve(InputStream in, OutputStream out) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+            reply(out, "220 localhost ESMTP replay stand-in");
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase(Locale.ROOT) : line;
+                switch (command) {
+                    case "EHLO":
+                        reply(out, "250-localhost\r\n250-AUTH PLAIN LOGIN\r\n250 8BITMIME");
+                        break;
+                    case "HELO":
+                        reply(out, "250 localhost");
+                        break;
+                    case "AUTH":
+                        if (line.toUpperCase(Locale.ROOT).startsWith("AUTH LOGIN")) {
+                            // Username and password prompts; the answers are not checked
+                            reply(out, "334 VXNlcm5hbWU6");
+                            reader.readLine();
+                            reply(out, "334 UGFzc3dvcmQ6");
+                            reader.readLine();
+                        }
+                        reply(out, "235 2.7.0 Accepted");
+                        break;
+                    case "DATA":
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                        while ((line = reader.readLine()) != null && !line.equals(".")) {
+                            // Message content is discarded
+                        }
+                        pause();
+                        received.incrementAndGet();
+                        reply(out, "250 2.0.0 Queued");
+                        if (closeAfterMessage) {
+                            return;
+                        }
+                        break;
+                    case "QUIT":
+                        reply(out, "221 Bye");
+                        return;
+                    default:
+                        // MAIL, RCPT, RSET, NOOP
+                        reply(out, "250 OK");
+                }
+            }
+        }
+
+        private static void reply(OutputStream out, String response) throws IOException {
+            out.write((response + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+    }
+
+    static final class Http extends Server {
+        volatile int status = 200;
+
+        Http(long delayMs) throws IOException {
+            super("http", delayMs);
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + port() + "/otp";
+        }
+
+        @Override
+        void serve(InputStream in, OutputStream out) throws IOException {
+            // Keep-alive: one request after another until the client closes
+            while (true) {
+                int contentLength = 0;
+                String line = readLine(in);
+                if (line == null) {
+                    return;
+                }
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                        contentLength = Integer.parseInt(line.substring(15).trim());
+                    }
+                }
+                for (int i = 0; i < contentLength; i++) {
+                    if (in.read() < 0) {
+                        return;
+                    }
+                }
+                pause();
+                received.incrementAndGet();
+                out.write(("HTTP/1.1 " + status + " Stand-in\r\nContent-Length: 0\r\nConnection: keep-alive\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+            }
+        }
+
+        // Reads one CRLF-terminated header line; the body is read by length, so no buffering reader
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) >= 0) {
+                if (c == '\n') {
+                    int end = line.length();
+                    return end > 0 && line.charAt(end - 1) == '\r' ? line.substring(0, end - 1) : line.toString();
+                }
+                line.append((char) c);
+            }
+            return line.length() > 0 ? line.toString() : null;
+        }
+    }
+}
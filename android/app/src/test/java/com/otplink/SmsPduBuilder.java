@@ -0,0 +1,166 @@
+package com.otplink;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Builds 3GPP SMS-DELIVER PDUs as they appear in the "pdus" extra of SMS_RECEIVED, for
+ * replaying messages through {@link SmsReceiver}. Bodies are UCS-2 encoded, so any text
+ * round-trips; a body longer than one PDU holds is split with a concatenation header
+ * (UDH IE 0x00). Numeric senders are BCD encoded, anything else as a GSM alphanumeric
+ * address.
+ */
+final class SmsPduBuilder {
+    // UCS-2 characters per PDU without and with the 6-byte concatenation header
+    static final int SINGLE_PART_CHARS = 70;
+    static final int MULTIPART_CHARS = 67;
+    private static final int MAX_ALPHANUMERIC_SENDER = 11;
+
+    private SmsPduBuilder() {
+    }
+
+    /**
+     * Returns the PDUs of one message, split into at least {@code minParts} parts when the
+     * body is long enough. {@code reference} identifies the parts of one message.
+     */
+    static byte[][] deliver(String sender, String body, long timestamp, int reference, int minParts) {
+        List<String> parts = split(body, minParts);
+        byte[][] pdus = new byte[parts.size()][];
+        for (int i = 0; i < pdus.length; i++) {
+            pdus[i] = pdu(sender, parts.get(i), timestamp, reference, pdus.length, i + 1);
+        }
+        return pdus;
+    }
+
+    private static List<String> split(String body, int minParts) {
+        List<String> parts = new ArrayList<>();
+        int length = body.length();
+        if (length <= SINGLE_PART_CHARS && minParts <= 1) {
+            parts.add(body);
+            return parts;
+        }
+        int count = Math.max(Math.max(minParts, 1), (length + MULTIPART_CHARS - 1) / MULTIPART_CHARS);
+        int size = Math.max(1, (length + count - 1) / count);
+        for (int start = 0; start < length; ) {
+            int end = Math.min(length, start + size);
+            // Never separate the halves of a surrogate pair
+            if (end < length && Character.isHighSurrogate(body.charAt(end - 1))) {
+                end = end - 1 > start ? end - 1 : end + 1;
+            }
+            parts.add(body.substring(start, end));
+            start = end;
+        }
+        return parts;
+    }
+
+    private static byte[] pdu(String sender, String text, long timestamp, int reference, int total, int sequence) {
+        byte[] userData = text.getBytes(StandardCharsets.UTF_16BE);
+        boolean concatenated = total > 1;
+        byte[] address = address(sender);
+        int headerLength = concatenated ? 6 : 0;
+        byte[] pdu = new byte[1 + 1 + address.length + 1 + 1 + 7 + 1 + headerLength + userData.length];
+        int at = 0;
+        pdu[at++] = 0x00;                                          // no SMSC address
+        pdu[at++] = (byte) (0x04 | (concatenated ? 0x40 : 0));     // SMS-DELIVER, no more messages, UDHI
+        System.arraycopy(address, 0, pdu, at, address.length);
+        at += address.length;
+        pdu[at++] = 0x00;                                          // TP-PID
+        pdu[at++] = 0x08;                                          // TP-DCS: UCS-2
+        at = putTimestamp(pdu, at, timestamp);
+        pdu[at++] = (byte) (headerLength + userData.length);       // TP-UDL in octets for UCS-2
+        if (concatenated) {
+            pdu[at++] = 0x05;                                      // UDH length
+            pdu[at++] = 0x00;                                      // IE: concatenated, 8-bit reference
+            pdu[at++] = 0x03;
+            pdu[at++] = (byte) reference;
+            pdu[at++] = (byte) total;
+            pdu[at++] = (byte) sequence;
+        }
+        System.arraycopy(userData, 0, pdu, at, userData.length);
+        return pdu;
+    }
+
+    // TP-OA: length, type of address, then the address itself
+    private static byte[] address(String sender) {
+        String digits = sender.startsWith("+") ? sender.substring(1) : sender;
+        if (!digits.isEmpty() && isDigits(digits)) {
+            byte[] address = new byte[2 + (digits.length() + 1) / 2];
+            address[0] = (byte) digits.length();
+            address[1] = (byte) (sender.startsWith("+") ? 0x91 : 0x81);
+            for (int i = 0; i < digits.length(); i++) {
+                int digit = digits.charAt(i) - '0';
+                int index = 2 + i / 2;
+                address[index] |= (byte) (i % 2 == 0 ? digit : digit << 4);
+            }
+            if (digits.length() % 2 == 1) {
+                address[address.length - 1] |= (byte) 0xf0;
+            }
+            return address;
+        }
+
+        String name = sender.length() > MAX_ALPHANUMERIC_SENDER ? sender.substring(0, MAX_ALPHANUMERIC_SENDER) : sender;
+        byte[] packed = packSeptets(name);
+        byte[] address = new byte[2 + packed.length];
+        // Length counts semi-octets of the packed septets
+        address[0] = (byte) ((name.length() * 7 + 3) / 4);
+        address[1] = (byte) 0xd0;
+        System.arraycopy(packed, 0, address, 2, packed.length);
+        return address;
+    }
+
+    // GSM default alphabet, limited to the characters that share their ASCII code
+    private static byte[] packSeptets(String text) {
+        byte[] packed = new byte[(text.length() * 7 + 7) / 8];
+        int bit = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int septet = gsmCode(text.charAt(i));
+            int index = bit / 8;
+            int shift = bit % 8;
+            packed[index] |= (byte) (septet << shift);
+            if (shift > 1) {
+                packed[index + 1] |= (byte) (septet >> (8 - shift));
+            }
+            bit += 7;
+        }
+        return packed;
+    }
+
+    private static int gsmCode(char c) {
+        if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= 0x20 && c <= 0x3f && c != '$')) {
+            return c;
+        }
+        return '?';
+    }
+
+    // TP-SCTS: swapped-BCD year, month, day, hour, minute, second and a UTC time zone
+    private static int putTimestamp(byte[] pdu, int at, long timestamp) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(timestamp);
+        int[] fields = {
+            calendar.get(Calendar.YEAR) % 100,
+            calendar.get(Calendar.MONTH) + 1,
+            calendar.get(Calendar.DAY_OF_MONTH),
+            calendar.get(Calendar.HOUR_OF_DAY),
+            calendar.get(Calendar.MINUTE),
+            calendar.get(Calendar.SECOND),
+            0,
+        };
+        for (int field : fields) {
+            pdu[at++] = (byte) (((field % 10) << 4) | (field / 10));
+        }
+        return at;
+    }
+
+    private static boolean isDigits(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
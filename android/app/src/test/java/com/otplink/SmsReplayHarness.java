@@ -0,0 +1,291 @@
+package com.otplink;
+
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+import com.otplink.core.LatencyHistogram;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Drives a corpus of messages through {@link SmsReceiver#onReceive} as real SMS-DELIVER
+ * PDUs and reports how the pipeline coped. It runs under Robolectric only, against the
+ * test application's own preferences and files: the configuration saved there (keywords
+ * and rules kept) is published with every destination replaced by loopback
+ * {@link ReplayStandIns}, and the pipeline metrics are reset so the report covers only
+ * the replay. A device's configuration, dedupe index and history are never touched.
+ *
+ * Corpus files hold one message per line: inter-arrival delay in ms, sender and body,
+ * separated by tabs; {@code \n} in a body is a line break and lines starting with
+ * {@code #} are comments.
+ */
+final class SmsReplayHarness {
+    private static final String TAG = "SmsReplayHarness";
+    private static final long DRAIN_POLL_MS = 20;
+
+    private static final AtomicBoolean RUNNING = new AtomicBoolean();
+
+    enum Pattern {
+        // The corpus's own inter-arrival delays
+        REPLAY,
+        // Evenly spaced at ratePerSecond
+        STEADY,
+        // burstSize messages at once, every burstIntervalMs
+        BURST
+    }
+
+    static final class Row {
+        final String sender;
+        final String body;
+        final long delayMs;
+
+        Row(String sender, String body, long delayMs) {
+            this.sender = sender;
+            this.body = body;
+            this.delayMs = delayMs;
+        }
+    }
+
+    static final class Options {
+        Pattern pattern = Pattern.STEADY;
+        double ratePerSecond = 20;
+        int burstSize = 10;
+        long burstIntervalMs = 1_000;
+        // Split every message into at least two PDUs, each in its own broadcast
+        boolean multipart;
+        int repeat = 1;
+        // Added to every acknowledgement of the stand-ins
+        long smtpDelayMs;
+        long webhookDelayMs;
+        long drainTimeoutMs = 60_000;
+    }
+
+    static final class Report {
+        int messages;
+        int pdus;
+        boolean drained;
+        long dispatchMs;
+        long elapsedMs;
+        double throughputPerSecond;
+        LatencyHistogram.Snapshot endToEnd;
+        long received;
+        long forwarded;
+        long duplicates;
+        long senderBlocked;
+        long dropped;
+        long failures;
+        long emailsAccepted;
+        long webhooksAccepted;
+    }
+
+    private SmsReplayHarness() {
+    }
+
+    static List<Row> parseCorpus(BufferedReader reader) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t", 3);
+            if (fields.length < 3) {
+                throw new IOException("Corpus line " + lineNumber + " needs delay, sender and body separated by tabs");
+            }
+            long delayMs;
+            try {
+                delayMs = Long.parseLong(fields[0].trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Corpus line " + lineNumber + " has an invalid delay: " + fields[0]);
+            }
+            rows.add(new Row(fields[1].trim(), fields[2].replace("\\n", "\n"), Math.max(0, delayMs)));
+        }
+        return rows;
+    }
+
+    /**
+     * Generates {@code count} messages: bank and 2FA OTPs with unique codes, promotions
+     * without one, and long bodies that need several PDUs, with exponential inter-arrival
+     * delays around 50ms. The same seed gives the same corpus.
+     */
+    static List<Row> syntheticCorpus(int count, long seed) {
+        String[] bankSenders = {"AX-HDFCBK", "VM-ICICIB", "JD-SBIINB", "BZ-KOTAKB"};
+        String[] merchants = {"AMAZON", "FLIPKART", "SWIGGY", "IRCTC", "UBER"};
+        Random random = new Random(seed);
+        List<Row> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String otp = String.valueOf(100000 + random.nextInt(900000));
+            long delayMs = (long) (-Math.log(1 - random.nextDouble()) * 50);
+            String sender;
+            String body;
+            switch (random.nextInt(10)) {
+                case 0:
+                case 1:
+                case 2:
+                case 3:
+                    sender = bankSenders[random.nextInt(bankSenders.length)];
+                    body = "Your OTP for txn of Rs " + (100 + random.nextInt(50000)) + " at "
+                        + merchants[random.nextInt(merchants.length)] + " is " + otp
+                        + ". Valid for 5 mins. Do not share it with anyone.";
+                    break;
+                case 4:
+                case 5:
+                    sender = "+1555" + (1000000 + random.nextInt(9000000));
+                    body = "G-" + otp + " is your Google verification code.";
+                    break;
+                case 6:
+                    sender = "VM-" + merchants[random.nextInt(merchants.length)];
+                    body = otp + " is your verification code. Don't share it with anyone.";
+                    break;
+                case 7:
+                    sender = "AD-" + merchants[random.nextInt(merchants.length)];
+                    body = "Flat " + (10 + random.nextInt(60)) + "% off on all orders this weekend! Use code SAVE50 at checkout.";
+                    break;
+                default:
+                    sender = bankSenders[random.nextInt(bankSenders.length)];
+                    body = "Dear Customer, " + otp + " is the One Time Password for your net banking login. "
+                        + "It is valid for 10 minutes. The bank never asks for your OTP, PIN or password "
+                        + "over a call, SMS or email. If you did not request this, please call customer care.";
+            }
+            rows.add(new Row(sender, body, delayMs));
+        }
+        return rows;
+    }
+
+    static Report run(Context context, List<Row> corpus, Options options) throws Exception {
+        if (!RUNNING.compareAndSet(false, true)) {
+            throw new IllegalStateException("A replay is already running");
+        }
+        Context appContext = context.getApplicationContext();
+        try (ReplayStandIns.Smtp smtp = new ReplayStandIns.Smtp(options.smtpDelayMs);
+             ReplayStandIns.Http http = new ReplayStandIns.Http(options.webhookDelayMs)) {
+            ConfigStore.update(appContext, replayConfigJson(appContext, smtp.port(), http.url()));
+            try {
+                PipelineMetrics.reset();
+                Report report = new Report();
+                long start = System.nanoTime();
+                dispatch(appContext, corpus, options, report);
+                report.dispatchMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                report.drained = awaitDrain(options.drainTimeoutMs);
+                report.elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                report.throughputPerSecond = report.messages * 1000.0 / Math.max(1, report.elapsedMs);
+                report.endToEnd = PipelineMetrics.snapshot(PipelineMetrics.Stage.END_TO_END);
+                report.received = PipelineMetrics.count(PipelineMetrics.Counter.RECEIVED);
+                report.forwarded = PipelineMetrics.count(PipelineMetrics.Counter.FORWARDED);
+                report.duplicates = PipelineMetrics.count(PipelineMetrics.Counter.DUPLICATES);
+                report.senderBlocked = PipelineMetrics.count(PipelineMetrics.Counter.SENDER_BLOCKED);
+                report.dropped = PipelineMetrics.count(PipelineMetrics.Counter.DROPPED);
+                report.failures = PipelineMetrics.count(PipelineMetrics.Counter.FAILURES);
+                report.emailsAccepted = smtp.received();
+                report.webhooksAccepted = http.received();
+                Log.d(TAG, "Replayed " + report.messages + " messages (" + report.pdus + " PDUs) in " + report.elapsedMs
+                    + "ms, p95 " + report.endToEnd.percentileMicros(95) / 1000.0 + "ms"
+                    + (report.drained ? "" : ", pipeline not drained"));
+                return report;
+            } finally {
+                // Drop the connections to the stand-in relay
+                SmtpConnectionPool.get().closeAll();
+            }
+        } finally {
+            RUNNING.set(false);
+        }
+    }
+
+    // The saved configuration with every destination replaced by a stand-in
+    private static String replayConfigJson(Context context, int smtpPort, String webhookUrl) throws Exception {
+        String json = context.getSharedPreferences(ConfigStore.PREFS_NAME, Context.MODE_PRIVATE)
+            .getString(ConfigStore.CONFIG_KEY, null);
+        JSONObject config = json != null ? new JSONObject(json) : new JSONObject();
+        config.put("smsListenerEnabled", true);
+        config.put("webhookUrl", webhookUrl);
+        config.put("webhookUrls", new JSONArray());
+        JSONObject email = config.optJSONObject("emailSettings");
+        if (email == null) {
+            email = new JSONObject();
+            config.put("emailSettings", email);
+        }
+        email.put("smtpHost", "127.0.0.1");
+        email.put("smtpPort", smtpPort);
+        email.put("username", "replay");
+        email.put("password", "replay");
+        email.put("recipient", "replay@localhost");
+        email.remove("relays");
+        email.put("hedgeSends", false);
+        return config.toString();
+    }
+
+    private static void dispatch(Context context, List<Row> corpus, Options options, Report report) {
+        SmsReceiver receiver = new SmsReceiver();
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / Math.max(0.001, options.ratePerSecond));
+        int minParts = options.multipart ? 2 : 1;
+        int reference = 0;
+        int index = 0;
+        // Absolute schedule, so time spent in onReceive does not slow the offered load
+        long due = System.nanoTime();
+        for (int round = 0; round < Math.max(1, options.repeat); round++) {
+            for (Row row : corpus) {
+                if (index > 0) {
+                    switch (options.pattern) {
+                        case REPLAY:
+                            due += TimeUnit.MILLISECONDS.toNanos(row.delayMs);
+                            break;
+                        case STEADY:
+                            due += intervalNanos;
+                            break;
+                        case BURST:
+                            if (index % Math.max(1, options.burstSize) == 0) {
+                                due += TimeUnit.MILLISECONDS.toNanos(options.burstIntervalMs);
+                            }
+                            break;
+                    }
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                index++;
+                reference = (reference + 1) & 0xff;
+                byte[][] pdus = SmsPduBuilder.deliver(row.sender, row.body, System.currentTimeMillis(), reference, minParts);
+                if (options.multipart) {
+                    // One broadcast per fragment, as when the network delivers them apart
+                    for (byte[] pdu : pdus) {
+                        receiver.onReceive(context, smsIntent(new byte[][] {pdu}));
+                    }
+                } else {
+                    receiver.onReceive(context, smsIntent(pdus));
+                }
+                report.messages++;
+                report.pdus += pdus.length;
+            }
+        }
+    }
+
+    static Intent smsIntent(byte[][] pdus) {
+        Intent intent = new Intent("android.provider.Telephony.SMS_RECEIVED");
+        intent.putExtra("pdus", pdus);
+        intent.putExtra("format", "3gpp");
+        return intent;
+    }
+
+    // Waits until every submitted message has completed and no fragment is waiting for its siblings
+    private static boolean awaitDrain(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (System.currentTimeMillis() < deadline) {
+            if (SmsBackgroundService.inFlight() == 0 && MultipartSmsAssembler.get().pendingCount() == 0) {
+                return true;
+            }
+            Thread.sleep(DRAIN_POLL_MS);
+        }
+        return false;
+    }
+}
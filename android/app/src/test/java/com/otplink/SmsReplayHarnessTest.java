@@ -0,0 +1,60 @@
+package com.otplink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class SmsReplayHarnessTest {
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        context.getSharedPreferences(ConfigStore.PREFS_NAME, Context.MODE_PRIVATE).edit()
+            .putString(ConfigStore.CONFIG_KEY, "{\"keywords\":[\"otp\",\"code\",\"password\"],"
+                + "\"emailSettings\":{\"coalesceWindowMs\":0}}")
+            .commit();
+    }
+
+    @Test
+    public void parsesTabSeparatedCorpus() throws Exception {
+        List<SmsReplayHarness.Row> rows = SmsReplayHarness.parseCorpus(new BufferedReader(new StringReader(
+            "# delay\tsender\tbody\n"
+                + "0\tAX-HDFCBK\tYour OTP is 482913\n"
+                + "\n"
+                + "25\tVM-AMAZON\tLine one\\nCode 771204\n")));
+
+        assertEquals(2, rows.size());
+        assertEquals("AX-HDFCBK", rows.get(0).sender);
+        assertEquals(25, rows.get(1).delayMs);
+        assertEquals("Line one\nCode 771204", rows.get(1).body);
+    }
+
+    @Test
+    public void replaysMultipartMessagesThroughTheStandIns() throws Exception {
+        SmsReplayHarness.Options options = new SmsReplayHarness.Options();
+        options.ratePerSecond = 200;
+        options.multipart = true;
+        options.drainTimeoutMs = 20_000;
+
+        SmsReplayHarness.Report report = SmsReplayHarness.run(context, SmsReplayHarness.syntheticCorpus(30, 7), options);
+
+        assertTrue(report.drained);
+        assertEquals(30, report.messages);
+        assertTrue(report.pdus >= 60);
+        assertEquals(30, report.received);
+        assertTrue(report.forwarded > 0);
+        assertEquals(report.forwarded, report.webhooksAccepted);
+        assertEquals(0, report.failures);
+    }
+}
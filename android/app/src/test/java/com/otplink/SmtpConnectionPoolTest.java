@@ -0,0 +1,94 @@
+package com.otplink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class SmtpConnectionPoolTest {
+    private ReplayStandIns.Smtp smtp;
+
+    @After
+    public void tearDown() {
+        SmtpConnectionPool.get().closeAll();
+        if (smtp != null) {
+            smtp.close();
+        }
+    }
+
+    @Test
+    public void reusesOneConnectionAcrossSends() throws Exception {
+        smtp = new ReplayStandIns.Smtp(0);
+        SmtpEndpoint endpoint = endpoint(smtp, SmtpEndpoint.DEFAULT_READ_TIMEOUT_MS);
+
+        for (int i = 0; i < 3; i++) {
+            SmtpConnectionPool.get().send(endpoint, message(endpoint, "OTP " + i));
+        }
+
+        assertEquals(3, smtp.received());
+        assertEquals(1, smtp.accepted());
+    }
+
+    @Test
+    public void resendsWhenTheServerDroppedThePooledConnection() throws Exception {
+        smtp = new ReplayStandIns.Smtp(0);
+        smtp.closeAfterMessage = true;
+        SmtpEndpoint endpoint = endpoint(smtp, SmtpEndpoint.DEFAULT_READ_TIMEOUT_MS);
+
+        SmtpConnectionPool.get().send(endpoint, message(endpoint, "first"));
+        // Reused without a NOOP probe; MAIL FROM hits the closed session and is retried
+        SmtpConnectionPool.get().send(endpoint, message(endpoint, "second"));
+
+        assertEquals(2, smtp.received());
+        assertEquals(2, smtp.accepted());
+    }
+
+    @Test
+    public void doesNotResendWhenTheFailureCameAfterData() throws Exception {
+        // The relay acknowledges the message only after the client stopped waiting
+        smtp = new ReplayStandIns.Smtp(1_000);
+        SmtpEndpoint endpoint = endpoint(smtp, 200);
+
+        try {
+            SmtpConnectionPool.get().send(endpoint, message(endpoint, "slow"));
+            fail("Expected the read timeout to surface");
+        } catch (SmtpConnectionPool.DeliveryUnknownException expected) {
+            // The relay may have queued it; a resend would be a duplicate
+        }
+
+        Thread.sleep(1_500);
+        assertEquals(1, smtp.received());
+        assertEquals(1, smtp.accepted());
+    }
+
+    @Test
+    public void samePasswordCheckToleratesMissingPasswords() {
+        SmtpEndpoint withoutPassword = new SmtpEndpoint("127.0.0.1", 25, "user", null);
+        SmtpEndpoint withPassword = new SmtpEndpoint("127.0.0.1", 25, "user", "secret");
+
+        assertEquals(true, withoutPassword.sameSession(new SmtpEndpoint("127.0.0.1", 25, "user", null)));
+        assertEquals(false, withoutPassword.sameSession(withPassword));
+    }
+
+    private static SmtpEndpoint endpoint(ReplayStandIns.Smtp smtp, int readTimeoutMs) {
+        return new SmtpEndpoint("127.0.0.1", smtp.port(), "replay", "replay",
+            SmtpEndpoint.DEFAULT_CONNECT_TIMEOUT_MS, readTimeoutMs);
+    }
+
+    private static MimeMessage message(SmtpEndpoint endpoint, String text) throws MessagingException {
+        MimeMessage message = SmtpConnectionPool.get().newMessage(endpoint);
+        message.setFrom(new InternetAddress("otp@localhost"));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress("inbox@localhost"));
+        message.setSubject("OTP");
+        message.setText(text);
+        return message;
+    }
+}
@@ -0,0 +1,80 @@
+package com.otplink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class WebhookForwarderTest {
+    private static final byte[] PAYLOAD = "{\"otp\":\"123456\"}".getBytes(StandardCharsets.UTF_8);
+
+    private ReplayStandIns.Http http;
+
+    @After
+    public void tearDown() {
+        if (http != null) {
+            http.close();
+        }
+    }
+
+    private static long deadline(long millis) {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    public void postsOverOneKeptAliveConnection() throws Exception {
+        http = new ReplayStandIns.Http(0);
+
+        WebhookForwarder.get().post(http.url(), PAYLOAD, deadline(WebhookForwarder.DEFAULT_TIMEOUT_MS));
+        WebhookForwarder.get().post(http.url(), PAYLOAD, deadline(WebhookForwarder.DEFAULT_TIMEOUT_MS));
+
+        assertEquals(2, http.received());
+        assertEquals(1, http.accepted());
+    }
+
+    @Test
+    public void reportsNon2xxStatus() throws Exception {
+        http = new ReplayStandIns.Http(0);
+        http.status = 503;
+
+        try {
+            WebhookForwarder.get().post(http.url(), PAYLOAD, deadline(WebhookForwarder.DEFAULT_TIMEOUT_MS));
+            fail("Expected HttpStatusException");
+        } catch (WebhookForwarder.HttpStatusException e) {
+            assertEquals(503, e.status);
+        }
+    }
+
+    @Test
+    public void stopsAtTheDeadline() throws Exception {
+        http = new ReplayStandIns.Http(2_000);
+        long start = System.nanoTime();
+
+        try {
+            WebhookForwarder.get().post(http.url(), PAYLOAD, deadline(200));
+            fail("Expected SocketTimeoutException");
+        } catch (SocketTimeoutException e) {
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1_500));
+        }
+    }
+
+    @Test
+    public void doesNotConnectOnceTheDeadlinePassed() throws Exception {
+        http = new ReplayStandIns.Http(0);
+
+        try {
+            WebhookForwarder.get().post(http.url(), PAYLOAD, System.nanoTime() - 1);
+            fail("Expected SocketTimeoutException");
+        } catch (SocketTimeoutException e) {
+            assertEquals(0, http.accepted());
+        }
+    }
+}
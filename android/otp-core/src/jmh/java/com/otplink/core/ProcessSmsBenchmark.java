@@ -0,0 +1,82 @@
+package com.otplink.core;
+
+import java.io.File;
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The processSms path minus SMTP: detect, mark and append the record, as the background
+ * processor does for an OTP it accepts. The clock advances a full dedupe window per
+ * sender cycle so OTPs are accepted rather than short-circuited as duplicates.
+ */
+@State(Scope.Thread)
+public class ProcessSmsBenchmark {
+    private static final int SENDERS = 256;
+
+    @Param({"bank", "twoFactor", "spam", "multipart", "unicode"})
+    public String category;
+
+    private String[] messages;
+    private String[] senders;
+    private OtpRules rules;
+    private final OtpPipeline.Detection detection = new OtpPipeline.Detection();
+    private DedupeWindow window;
+    private OtpPipeline pipeline;
+    private File logFile;
+    private OtpRecordLog recordLog;
+    private long clock;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        messages = SmsCorpus.category(category);
+        rules = SmsCorpus.rules();
+        senders = new String[SENDERS];
+        for (int i = 0; i < SENDERS; i++) {
+            senders[i] = "VM-BANK" + i;
+        }
+        logFile = File.createTempFile("otp-bench", ".log");
+        logFile.delete();
+        recordLog = new OtpRecordLog(logFile, OtpRecordLog.DEFAULT_CAPACITY, OtpRecordLog.DEFAULT_SLOT_SIZE);
+    }
+
+    // A fresh window per iteration keeps the expiry FIFO from growing without bound
+    @Setup(Level.Iteration)
+    public void resetWindow() {
+        window = new DedupeWindow();
+        pipeline = new OtpPipeline(window);
+        clock = System.currentTimeMillis();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        recordLog.close();
+        logFile.delete();
+    }
+
+    @Benchmark
+    public OtpPipeline.Outcome processSms() {
+        String message = messages[next % messages.length];
+        String sender = senders[next % SENDERS];
+        next++;
+        clock += DedupeWindow.WINDOW_MS / SENDERS + 1;
+
+        OtpPipeline.Outcome outcome = pipeline.detect(rules, sender, message, clock, detection);
+        if (outcome == OtpPipeline.Outcome.ACCEPTED) {
+            window.mark(detection.dedupeKey, clock);
+            OtpRecord record = new OtpRecord(detection.otp, sender, message, clock);
+            record.forwardingMethod = "email";
+            record.status = OtpRecord.STATUS_SENT;
+            record.forwarded = true;
+            record.attempts = 1;
+            recordLog.append(record);
+        }
+        return outcome;
+    }
+}
@@ -0,0 +1,106 @@
+package com.otplink.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** Representative inbox traffic for the benchmarks, grouped by the kind of message. Non-ASCII text is escaped. */
+final class SmsCorpus {
+    static final List<String> KEYWORDS = Arrays.asList(
+        "otp", "verification code", "one time password", "passcode", "login", "code", "pin", "\u0915\u094b\u0921");
+
+    static final String[] BANK = {
+        "Your OTP for txn of Rs 2,499.00 at AMAZON on HDFC Bank card XX1234 is 482913. Valid for 10 mins. Do not share.",
+        "INR 15,000.00 debited from A/c XX5678 on 12-03-24. OTP 719204 for beneficiary addition. Call 18002586161 if not you.",
+        "Dear Customer, 553201 is your one time password for NetBanking login. Never share it with anyone - SBI",
+    };
+
+    static final String[] TWO_FA = {
+        "G-482913 is your Google verification code.",
+        "Your WhatsApp code: 719-204. Don't share this code with others",
+        "Use 553 201 as your login code for Instagram. #553201",
+        "Your Microsoft account passcode is 8842. It expires in 5 minutes.",
+    };
+
+    static final String[] SPAM = {
+        "Congratulations! You have won Rs 50,000 cashback. Click http://bit.ly/x9z to claim before 31-12-2024 11:59 PM.",
+        "Flat 60% off on all orders above Rs 999. Use code SALE60 at checkout. T&C apply.",
+        "Your order #40219931 has been shipped and will arrive by 14/03. Track at amzn.in/t/40219931",
+    };
+
+    static final String[] MULTIPART = {
+        "Dear valued customer, thank you for banking with us. As part of our ongoing efforts to keep your account secure, "
+            + "we have introduced an additional verification step for all high value online transactions made using your "
+            + "debit or credit card. A transaction of INR 48,250.00 was attempted at MERCHANT XYZ PRIVATE LIMITED on "
+            + "12/03/2024 at 14:32:05 using card ending 4421. To approve this transaction please enter the one time "
+            + "password 602175 on the merchant page. This OTP is valid for 10 minutes and can be used only once. "
+            + "If you did not initiate this transaction, please call our 24x7 helpline at 1800-XXX-XXXX immediately "
+            + "and block your card. Never share your OTP, PIN or CVV with anyone, including bank staff.",
+    };
+
+    static final String[] UNICODE = {
+        "\u0906\u092a\u0915\u093e \u0915\u094b\u0921 \u096a\u096e\u0968\u096f\u0967\u0969 \u0939\u0948\u0964 "
+            + "\u0907\u0938\u0947 \u0915\u093f\u0938\u0940 \u0915\u0947 \u0938\u093e\u0925 \u0938\u093e\u091d\u093e "
+            + "\u0928 \u0915\u0930\u0947\u0902\u0964",
+        "\u3010\u8a8d\u8a3c\u3011\u30ef\u30f3\u30bf\u30a4\u30e0\u30d1\u30b9\u30ef\u30fc\u30c9 code: "
+            + "\uff17\uff11\uff19\uff12\uff10\uff14",
+        "Votre code de v\u00e9rification est 553201 \ud83d\udd10 Ne le partagez pas.",
+    };
+
+    static String[] category(String name) {
+        switch (name) {
+            case "bank":
+                return BANK;
+            case "twoFactor":
+                return TWO_FA;
+            case "spam":
+                return SPAM;
+            case "multipart":
+                return MULTIPART;
+            case "unicode":
+                return UNICODE;
+            default:
+                throw new IllegalArgumentException("Unknown corpus category " + name);
+        }
+    }
+
+    // Promotional headers and short codes denied, known banks allowed with tighter bounds
+    static final List<SenderRules.Rule> SENDER_RULES = Arrays.asList(
+        new SenderRules.Rule("HDFCBK", true, 6, 6, null),
+        new SenderRules.Rule("SBI*", true, 0, 0, null),
+        new SenderRules.Rule("PROMO*", false, 0, 0, null),
+        new SenderRules.Rule("OFFERS*", false, 0, 0, null),
+        new SenderRules.Rule("56161*", false, 0, 0, null));
+
+    static final String[] SENDERS = {
+        "AX-HDFCBK", "VM-SBIINB", "JD-PROMOS", "BZ-OFFERSZ", "+919876543210", "561610", "G-Verify", "AD-AMAZON",
+    };
+
+    static OtpRules rules() {
+        KeywordMatcher matcher = KeywordMatcher.compile(KEYWORDS);
+        SenderRules senderRules = SenderRules.compile(SENDER_RULES, true);
+        return new OtpRules() {
+            @Override
+            public SenderRules senderRules() {
+                return senderRules;
+            }
+
+            @Override
+            public KeywordMatcher keywordMatcher() {
+                return matcher;
+            }
+
+            @Override
+            public int otpMinLength() {
+                return 4;
+            }
+
+            @Override
+            public int otpMaxLength() {
+                return 8;
+            }
+        };
+    }
+
+    private SmsCorpus() {
+    }
+}
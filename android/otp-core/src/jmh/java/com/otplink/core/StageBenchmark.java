@@ -0,0 +1,133 @@
+package com.otplink.core;
+
+import java.io.File;
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Each pipeline stage on its own, over every corpus category. */
+@State(Scope.Thread)
+public class StageBenchmark {
+    @Param({"bank", "twoFactor", "spam", "multipart", "unicode"})
+    public String category;
+
+    private String[] messages;
+    private int next;
+    private SenderRules senderRules;
+    private KeywordMatcher matcher;
+    private final KeywordMatcher.Hits hits = new KeywordMatcher.Hits();
+    private TemplateCache templates;
+    private String[] templateSenders;
+
+    private DedupeWindow window;
+    private long[] presentKeys;
+
+    private File logFile;
+    private OtpRecordLog recordLog;
+    private OtpRecord record;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        messages = SmsCorpus.category(category);
+        OtpRules rules = SmsCorpus.rules();
+        senderRules = rules.senderRules();
+        matcher = rules.keywordMatcher();
+
+        // One learned template per message, as after a few OTPs from each sender
+        templates = new TemplateCache(TemplateCache.DEFAULT_CAPACITY);
+        templateSenders = new String[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            templateSenders[i] = String.valueOf(i);
+            matcher.scan(messages[i], hits);
+            String otp = OtpExtractor.extract(messages[i], 4, 8, hits);
+            for (int j = 0; otp != null && j < TemplateCache.CONFIRMATIONS; j++) {
+                templates.learn(templateSenders[i], messages[i], otp);
+            }
+        }
+
+        // A window holding a busy day's worth of recent OTPs
+        window = new DedupeWindow();
+        presentKeys = new long[1024];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < presentKeys.length; i++) {
+            presentKeys[i] = DedupeWindow.key(String.valueOf(100000 + i), "SENDER-" + (i % 37));
+            window.mark(presentKeys[i], now);
+        }
+
+        logFile = File.createTempFile("otp-bench", ".log");
+        logFile.delete();
+        recordLog = new OtpRecordLog(logFile, OtpRecordLog.DEFAULT_CAPACITY, OtpRecordLog.DEFAULT_SLOT_SIZE);
+        record = new OtpRecord("482913", "HDFCBK", messages[0], now);
+        record.forwarded = true;
+        record.forwardingMethod = "email";
+        record.status = OtpRecord.STATUS_SENT;
+        record.attempts = 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        recordLog.close();
+        logFile.delete();
+    }
+
+    private String nextMessage() {
+        String message = messages[next];
+        next = next + 1 == messages.length ? 0 : next + 1;
+        return message;
+    }
+
+    @Benchmark
+    public SenderRules.Rule senderMatch() {
+        String sender = SmsCorpus.SENDERS[next];
+        next = next + 1 == SmsCorpus.SENDERS.length ? 0 : next + 1;
+        return senderRules.match(sender);
+    }
+
+    @Benchmark
+    public int keywordMatch() {
+        return matcher.scan(nextMessage(), hits);
+    }
+
+    @Benchmark
+    public String extract() {
+        String message = nextMessage();
+        matcher.scan(message, hits);
+        return OtpExtractor.extract(message, 4, 8, hits);
+    }
+
+    @Benchmark
+    public String extractWithTemplate() {
+        int index = next;
+        String message = nextMessage();
+        String otp = templates.extract(templateSenders[index], message, 4, 8);
+        if (otp == null) {
+            matcher.scan(message, hits);
+            otp = OtpExtractor.extract(message, 4, 8, hits);
+        }
+        return otp;
+    }
+
+    @Benchmark
+    public boolean dedupeLookup() {
+        long key = presentKeys[next];
+        next = (next + 1) & (presentKeys.length - 1);
+        return window.contains(key, System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public long recordAppend() {
+        return recordLog.append(record);
+    }
+
+    @Benchmark
+    public long recordAppendDurable() {
+        long seq = recordLog.append(record);
+        recordLog.awaitDurable(seq);
+        return seq;
+    }
+}
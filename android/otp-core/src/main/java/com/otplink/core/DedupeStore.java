@@ -0,0 +1,9 @@
+package com.otplink.core;
+
+/** Sliding-window record of forwarded OTPs, keyed by {@link DedupeWindow#key(String, String)}. */
+public interface DedupeStore {
+    /** True if the key was marked within the window around {@code timestamp}. */
+    boolean contains(long key, long timestamp);
+
+    void mark(long key, long timestamp);
+}
@@ -0,0 +1,186 @@
+package com.otplink.core;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * In-memory sliding-window duplicate detector. Each (otp, sender) pair is reduced to a
+ * 64-bit key and kept in an open-addressing table with the time it was last marked; a
+ * FIFO of marks drives expiry, so an entry lives exactly {@link #WINDOW_MS} instead of
+ * until a fixed bucket boundary. Not thread-safe; callers synchronise.
+ */
+public final class DedupeWindow implements DedupeStore {
+    public static final long WINDOW_MS = 5 * 60 * 1000;
+    private static final long EMPTY = 0L;
+
+    // Linear-probing table; key 0 is reserved as the empty marker
+    private long[] keys = new long[64];
+    private long[] times = new long[64];
+    private int size;
+
+    // Marks in insertion order, used to expire table entries
+    private long[] fifoKeys = new long[64];
+    private long[] fifoTimes = new long[64];
+    private int fifoHead;
+    private int fifoCount;
+
+    /** Stable 64-bit FNV-1a hash of the pair; never returns the reserved empty key. */
+    public static long key(String otp, String sender) {
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, otp);
+        hash = (hash ^ 0x1f) * 0x100000001b3L;
+        hash = mix(hash, sender == null ? "" : sender);
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    private static long mix(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean contains(long key, long timestamp) {
+        expire(System.currentTimeMillis());
+        int slot = find(key);
+        return slot >= 0 && Math.abs(timestamp - times[slot]) < WINDOW_MS;
+    }
+
+    @Override
+    public void mark(long key, long timestamp) {
+        expire(System.currentTimeMillis());
+        put(key, timestamp);
+    }
+
+    /** Adds an entry without expiring first, e.g. while replaying a persisted log. */
+    public void restore(long key, long timestamp) {
+        if (key != EMPTY) {
+            put(key, timestamp);
+        }
+    }
+
+    public void expire(long now) {
+        long cutoff = now - WINDOW_MS;
+        while (fifoCount > 0 && fifoTimes[fifoHead] <= cutoff) {
+            long key = fifoKeys[fifoHead];
+            int slot = find(key);
+            // Only drop the entry if it was not refreshed by a later mark
+            if (slot >= 0 && times[slot] <= cutoff) {
+                remove(slot);
+            }
+            fifoHead = (fifoHead + 1) & (fifoKeys.length - 1);
+            fifoCount--;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Writes every live entry as a 16-byte (key, time) record and returns how many were written. */
+    public int writeTo(DataOutputStream out) throws IOException {
+        int written = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                out.writeLong(keys[i]);
+                out.writeLong(times[i]);
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private void put(long key, long timestamp) {
+        int slot = find(key);
+        if (slot >= 0) {
+            times[slot] = Math.max(times[slot], timestamp);
+        } else {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            insert(key, timestamp);
+            size++;
+        }
+        if (fifoCount == fifoKeys.length) {
+            growFifo();
+        }
+        int tail = (fifoHead + fifoCount) & (fifoKeys.length - 1);
+        fifoKeys[tail] = key;
+        fifoTimes[tail] = timestamp;
+        fifoCount++;
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = spread(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(long key, long timestamp) {
+        int mask = keys.length - 1;
+        int slot = spread(key) & mask;
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        times[slot] = timestamp;
+    }
+
+    // Backward-shift deletion keeps probe chains intact without tombstones
+    private void remove(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = spread(keys[next]) & mask;
+            boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (movable) {
+                keys[hole] = keys[next];
+                times[hole] = times[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+        times[hole] = 0;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldTimes = times;
+        keys = new long[capacity];
+        times = new long[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                insert(oldKeys[i], oldTimes[i]);
+            }
+        }
+    }
+
+    private void growFifo() {
+        int capacity = fifoKeys.length * 2;
+        long[] newKeys = new long[capacity];
+        long[] newTimes = new long[capacity];
+        for (int i = 0; i < fifoCount; i++) {
+            int index = (fifoHead + i) & (fifoKeys.length - 1);
+            newKeys[i] = fifoKeys[index];
+            newTimes[i] = fifoTimes[index];
+        }
+        fifoKeys = newKeys;
+        fifoTimes = newTimes;
+        fifoHead = 0;
+    }
+
+    private static int spread(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,399 @@
+package com.otplink.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Search index over the records of an {@link OtpRecordLog}: an inverted index from
+ * message words to record sequence numbers, a sorted index of normalised senders and
+ * an index sorted by timestamp. It is sized like the log and mirrors its ring, so a
+ * record the log has overwritten is no longer returned; its postings are trimmed in
+ * bulk once every {@code capacity} additions.
+ *
+ * Query terms and the sender filter match by prefix ({@code amaz} finds Amazon), every
+ * term must match, and results are returned newest first in pages. The most selective
+ * filter drives the scan and the others are checked by binary search. Not thread-safe:
+ * callers confine an index to one thread.
+ */
+public final class HistoryIndex {
+    // Words shorter than this are not indexed; longer ones are cut to MAX_TOKEN_LENGTH
+    static final int MIN_TOKEN_LENGTH = 2;
+    static final int MAX_TOKEN_LENGTH = 24;
+    // Candidates examined between cancellation checks
+    private static final int CANCEL_CHECK_INTERVAL = 256;
+
+    public interface Cancellation {
+        boolean isCancelled();
+    }
+
+    /** Filters for one page; unset filters match everything. */
+    public static final class Query {
+        // Free text, split into words like the indexed messages
+        public String text;
+        // A sender, normalised as in SenderRules; matches as a prefix
+        public String sender;
+        public long fromTimestamp = Long.MIN_VALUE;
+        public long toTimestamp = Long.MAX_VALUE;
+        // Only records older than this; 0 for the newest page, then the previous page's nextBeforeSeq
+        public long beforeSeq;
+        public int limit = 50;
+    }
+
+    public static final class Page {
+        // Matching sequence numbers, newest first
+        public final long[] seqs;
+        public final boolean hasMore;
+
+        Page(long[] seqs, boolean hasMore) {
+            this.seqs = seqs;
+            this.hasMore = hasMore;
+        }
+
+        /** The beforeSeq that fetches the next page. */
+        public long nextBeforeSeq() {
+            return seqs.length == 0 ? 0 : seqs[seqs.length - 1];
+        }
+    }
+
+    // Ascending sequence numbers; appends arrive in order, so eviction trims a prefix
+    private static final class Postings {
+        long[] seqs = new long[4];
+        int size;
+
+        void add(long seq) {
+            if (size == seqs.length) {
+                seqs = Arrays.copyOf(seqs, size * 2);
+            }
+            seqs[size++] = seq;
+        }
+
+        void trimBelow(long oldest) {
+            int from = lowerBound(seqs, 0, size, oldest);
+            if (from > 0) {
+                System.arraycopy(seqs, from, seqs, 0, size - from);
+                size -= from;
+            }
+        }
+    }
+
+    private final int capacity;
+    private final TreeMap<String, Postings> words = new TreeMap<>();
+    private final TreeMap<String, Postings> senders = new TreeMap<>();
+    // Slot per sequence number, as in the log ring
+    private final long[] slotSeq;
+    private final long[] slotTimestamp;
+    // (timestamp, seq) pairs sorted by timestamp, then seq
+    private long[] byTimeTimestamp;
+    private long[] byTimeSeq;
+    private int byTimeSize;
+    private long lastSeq;
+    private int addedSinceTrim;
+
+    public HistoryIndex(int capacity) {
+        this.capacity = capacity;
+        this.slotSeq = new long[capacity];
+        this.slotTimestamp = new long[capacity];
+        this.byTimeTimestamp = new long[Math.min(capacity, 256)];
+        this.byTimeSeq = new long[byTimeTimestamp.length];
+    }
+
+    /** Sequence number of the newest record added, 0 if none. */
+    public long lastSeq() {
+        return lastSeq;
+    }
+
+    /** Adds one record. Records must arrive in sequence order; ones already indexed are ignored. */
+    public boolean add(long seq, long timestamp, String sender, CharSequence message) {
+        if (seq <= lastSeq) {
+            return false;
+        }
+        lastSeq = seq;
+        int slot = (int) (seq % capacity);
+        slotSeq[slot] = seq;
+        slotTimestamp[slot] = timestamp;
+
+        if (sender != null) {
+            String key = SenderRules.normalize(sender);
+            if (!key.isEmpty()) {
+                postingsFor(senders, key).add(seq);
+            }
+        }
+        if (message != null) {
+            for (String word : tokenize(message)) {
+                postingsFor(words, word).add(seq);
+            }
+        }
+        insertByTime(timestamp, seq);
+
+        if (++addedSinceTrim >= capacity) {
+            trim();
+        }
+        return true;
+    }
+
+    private static Postings postingsFor(Map<String, Postings> index, String key) {
+        Postings postings = index.get(key);
+        if (postings == null) {
+            postings = new Postings();
+            index.put(key, postings);
+        }
+        return postings;
+    }
+
+    private void insertByTime(long timestamp, long seq) {
+        if (byTimeSize == byTimeTimestamp.length) {
+            byTimeTimestamp = Arrays.copyOf(byTimeTimestamp, byTimeSize * 2);
+            byTimeSeq = Arrays.copyOf(byTimeSeq, byTimeSize * 2);
+        }
+        // Usually the newest timestamp, so this is almost always an append
+        int at = byTimeSize;
+        while (at > 0 && byTimeTimestamp[at - 1] > timestamp) {
+            at--;
+        }
+        System.arraycopy(byTimeTimestamp, at, byTimeTimestamp, at + 1, byTimeSize - at);
+        System.arraycopy(byTimeSeq, at, byTimeSeq, at + 1, byTimeSize - at);
+        byTimeTimestamp[at] = timestamp;
+        byTimeSeq[at] = seq;
+        byTimeSize++;
+    }
+
+    // Drops postings of records the ring has overwritten
+    private void trim() {
+        addedSinceTrim = 0;
+        long oldest = oldestLiveSeq();
+        trim(words, oldest);
+        trim(senders, oldest);
+        int kept = 0;
+        for (int i = 0; i < byTimeSize; i++) {
+            if (byTimeSeq[i] >= oldest) {
+                byTimeTimestamp[kept] = byTimeTimestamp[i];
+                byTimeSeq[kept] = byTimeSeq[i];
+                kept++;
+            }
+        }
+        byTimeSize = kept;
+    }
+
+    private static void trim(Map<String, Postings> index, long oldest) {
+        Iterator<Postings> it = index.values().iterator();
+        while (it.hasNext()) {
+            Postings postings = it.next();
+            postings.trimBelow(oldest);
+            if (postings.size == 0) {
+                it.remove();
+            }
+        }
+    }
+
+    private long oldestLiveSeq() {
+        return Math.max(1, lastSeq - capacity + 1);
+    }
+
+    /**
+     * Returns one page of matches. {@code cancellation} is polled while scanning; a
+     * cancelled search throws {@link CancellationException}.
+     */
+    public Page search(Query query, Cancellation cancellation) {
+        long newest = query.beforeSeq > 0 ? Math.min(query.beforeSeq - 1, lastSeq) : lastSeq;
+        long oldest = oldestLiveSeq();
+        int limit = Math.max(0, query.limit);
+        boolean timeFiltered = query.fromTimestamp != Long.MIN_VALUE || query.toTimestamp != Long.MAX_VALUE;
+
+        // One ascending seq list per filter; a filter that matches nothing ends the search
+        List<long[]> sources = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        if (query.text != null) {
+            for (String term : tokenize(query.text, 1)) {
+                if (!addSource(sources, sizes, prefixUnion(words, term))) {
+                    return new Page(new long[0], false);
+                }
+            }
+        }
+        if (query.sender != null) {
+            String key = SenderRules.normalize(query.sender);
+            if (!key.isEmpty() && !addSource(sources, sizes, prefixUnion(senders, key))) {
+                return new Page(new long[0], false);
+            }
+        }
+        checkCancelled(cancellation);
+
+        // The time index drives only when it is narrower than every other filter
+        int driver = smallest(sizes);
+        if (timeFiltered) {
+            int from = lowerBoundTime(query.fromTimestamp);
+            int to = query.toTimestamp == Long.MAX_VALUE ? byTimeSize : lowerBoundTime(query.toTimestamp + 1);
+            int rangeSize = Math.max(0, to - from);
+            if (driver < 0 || rangeSize < sizes.get(driver)) {
+                long[] range = Arrays.copyOfRange(byTimeSeq, from, Math.max(from, to));
+                Arrays.sort(range);
+                sources.add(range);
+                sizes.add(range.length);
+                driver = sources.size() - 1;
+            }
+        }
+
+        long[] found = new long[Math.min(limit, capacity)];
+        int count = 0;
+        boolean hasMore = false;
+        int examined = 0;
+        if (driver < 0) {
+            for (long seq = newest; seq >= oldest; seq--) {
+                if (++examined % CANCEL_CHECK_INTERVAL == 0) {
+                    checkCancelled(cancellation);
+                }
+                if (!matches(seq, query, timeFiltered, sources, sizes, -1)) {
+                    continue;
+                }
+                if (count == limit) {
+                    hasMore = true;
+                    break;
+                }
+                found[count++] = seq;
+            }
+        } else {
+            long[] driving = sources.get(driver);
+            int start = lowerBound(driving, 0, sizes.get(driver), newest + 1) - 1;
+            for (int i = start; i >= 0 && driving[i] >= oldest; i--) {
+                if (++examined % CANCEL_CHECK_INTERVAL == 0) {
+                    checkCancelled(cancellation);
+                }
+                long seq = driving[i];
+                if (!matches(seq, query, timeFiltered, sources, sizes, driver)) {
+                    continue;
+                }
+                if (count == limit) {
+                    hasMore = true;
+                    break;
+                }
+                found[count++] = seq;
+            }
+        }
+        return new Page(Arrays.copyOf(found, count), hasMore);
+    }
+
+    private boolean matches(long seq, Query query, boolean timeFiltered, List<long[]> sources, List<Integer> sizes,
+            int skip) {
+        int slot = (int) (seq % capacity);
+        if (slotSeq[slot] != seq) {
+            return false;
+        }
+        if (timeFiltered) {
+            long timestamp = slotTimestamp[slot];
+            if (timestamp < query.fromTimestamp || timestamp > query.toTimestamp) {
+                return false;
+            }
+        }
+        for (int i = 0; i < sources.size(); i++) {
+            if (i != skip && Arrays.binarySearch(sources.get(i), 0, sizes.get(i), seq) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean addSource(List<long[]> sources, List<Integer> sizes, Postings postings) {
+        if (postings == null || postings.size == 0) {
+            return false;
+        }
+        sources.add(postings.seqs);
+        sizes.add(postings.size);
+        return true;
+    }
+
+    // Postings of every key starting with prefix, merged; the single list itself when only one key matches
+    private static Postings prefixUnion(TreeMap<String, Postings> index, String prefix) {
+        Map<String, Postings> matching = index.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        if (matching.size() <= 1) {
+            return matching.isEmpty() ? null : matching.values().iterator().next();
+        }
+        int total = 0;
+        for (Postings postings : matching.values()) {
+            total += postings.size;
+        }
+        long[] merged = new long[total];
+        int at = 0;
+        for (Postings postings : matching.values()) {
+            System.arraycopy(postings.seqs, 0, merged, at, postings.size);
+            at += postings.size;
+        }
+        Arrays.sort(merged);
+        // One record may hold several words with the same prefix
+        int unique = 0;
+        for (int i = 0; i < merged.length; i++) {
+            if (unique == 0 || merged[unique - 1] != merged[i]) {
+                merged[unique++] = merged[i];
+            }
+        }
+        Postings union = new Postings();
+        union.seqs = merged;
+        union.size = unique;
+        return union;
+    }
+
+    private static int smallest(List<Integer> sizes) {
+        int best = -1;
+        for (int i = 0; i < sizes.size(); i++) {
+            if (best < 0 || sizes.get(i) < sizes.get(best)) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private int lowerBoundTime(long timestamp) {
+        return lowerBound(byTimeTimestamp, 0, byTimeSize, timestamp);
+    }
+
+    // First index in [from, to) whose value is >= key
+    private static int lowerBound(long[] values, int from, int to, long key) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void checkCancelled(Cancellation cancellation) {
+        if (cancellation != null && cancellation.isCancelled()) {
+            throw new CancellationException("History search cancelled");
+        }
+    }
+
+    static List<String> tokenize(CharSequence text) {
+        return tokenize(text, MIN_TOKEN_LENGTH);
+    }
+
+    // Lower-cased runs of letters and digits, each word once
+    private static List<String> tokenize(CharSequence text, int minLength) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder word = new StringBuilder(MAX_TOKEN_LENGTH);
+        for (int i = 0, n = text.length(); i <= n; i++) {
+            char c = i < n ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (word.length() < MAX_TOKEN_LENGTH) {
+                    word.append(Character.toLowerCase(c));
+                }
+            } else if (word.length() > 0) {
+                if (word.length() >= minLength) {
+                    String token = word.toString();
+                    if (!tokens.contains(token)) {
+                        tokens.add(token);
+                    }
+                }
+                word.setLength(0);
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,284 @@
+package com.otplink.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho-Corasick automaton over case-folded keywords. Built once per configuration,
+ * then every message is scanned in a single pass regardless of keyword count.
+ */
+public final class KeywordMatcher {
+    private static final int ROOT = 0;
+
+    private final String[] keywords;
+    private final int[] keywordLengths;
+
+    // Sparse goto function: per state, sorted labels with matching target states
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] fail;
+    // Keyword ending exactly at this state (-1 if none) and next state on the fail chain with output
+    private final int[] output;
+    private final int[] dictLink;
+
+    private KeywordMatcher(String[] keywords, int[] keywordLengths, char[][] labels, int[][] targets,
+                           int[] fail, int[] output, int[] dictLink) {
+        this.keywords = keywords;
+        this.keywordLengths = keywordLengths;
+        this.labels = labels;
+        this.targets = targets;
+        this.fail = fail;
+        this.output = output;
+        this.dictLink = dictLink;
+    }
+
+    public static KeywordMatcher compile(List<String> keywords) {
+        List<String> accepted = new ArrayList<>();
+        List<Map<Character, Integer>> edges = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        edges.add(new HashMap<>());
+        outputs.add(-1);
+
+        for (String keyword : keywords) {
+            if (keyword == null || keyword.isEmpty()) {
+                continue;
+            }
+            int state = ROOT;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = fold(keyword.charAt(i));
+                Integer next = edges.get(state).get(c);
+                if (next == null) {
+                    next = edges.size();
+                    edges.add(new HashMap<>());
+                    outputs.add(-1);
+                    edges.get(state).put(c, next);
+                }
+                state = next;
+            }
+            // Duplicate keywords collapse onto the first occurrence
+            if (outputs.get(state) == -1) {
+                outputs.set(state, accepted.size());
+                accepted.add(keyword);
+            }
+        }
+
+        int stateCount = edges.size();
+        char[][] labels = new char[stateCount][];
+        int[][] targets = new int[stateCount][];
+        for (int s = 0; s < stateCount; s++) {
+            Map<Character, Integer> map = edges.get(s);
+            char[] l = new char[map.size()];
+            int i = 0;
+            for (Character c : map.keySet()) {
+                l[i++] = c;
+            }
+            Arrays.sort(l);
+            int[] t = new int[l.length];
+            for (i = 0; i < l.length; i++) {
+                t[i] = map.get(l[i]);
+            }
+            labels[s] = l;
+            targets[s] = t;
+        }
+
+        int[] output = new int[stateCount];
+        for (int s = 0; s < stateCount; s++) {
+            output[s] = outputs.get(s);
+        }
+
+        // Breadth-first construction of failure and dictionary suffix links
+        int[] fail = new int[stateCount];
+        int[] dictLink = new int[stateCount];
+        Arrays.fill(dictLink, -1);
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        for (int child : targets[ROOT]) {
+            fail[child] = ROOT;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            for (int i = 0; i < labels[state].length; i++) {
+                char c = labels[state][i];
+                int child = targets[state][i];
+                int f = fail[state];
+                int next;
+                while ((next = step(labels, targets, f, c)) < 0 && f != ROOT) {
+                    f = fail[f];
+                }
+                fail[child] = next < 0 ? ROOT : next;
+                int link = fail[child];
+                dictLink[child] = output[link] >= 0 ? link : dictLink[link];
+                queue[tail++] = child;
+            }
+        }
+
+        String[] acceptedArray = accepted.toArray(new String[0]);
+        int[] lengths = new int[acceptedArray.length];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = acceptedArray[i].length();
+        }
+        return new KeywordMatcher(acceptedArray, lengths, labels, targets, fail, output, dictLink);
+    }
+
+    /** Writes the compiled automaton so a cold process can reload it without rebuilding. */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(keywords.length);
+        for (String keyword : keywords) {
+            out.writeUTF(keyword);
+        }
+        out.writeInt(labels.length);
+        for (int s = 0; s < labels.length; s++) {
+            out.writeInt(labels[s].length);
+            for (int i = 0; i < labels[s].length; i++) {
+                out.writeChar(labels[s][i]);
+                out.writeInt(targets[s][i]);
+            }
+            out.writeInt(fail[s]);
+            out.writeInt(output[s]);
+            out.writeInt(dictLink[s]);
+        }
+    }
+
+    public static KeywordMatcher readFrom(DataInputStream in) throws IOException {
+        String[] keywords = new String[in.readInt()];
+        int[] lengths = new int[keywords.length];
+        for (int i = 0; i < keywords.length; i++) {
+            keywords[i] = in.readUTF();
+            lengths[i] = keywords[i].length();
+        }
+        int stateCount = in.readInt();
+        char[][] labels = new char[stateCount][];
+        int[][] targets = new int[stateCount][];
+        int[] fail = new int[stateCount];
+        int[] output = new int[stateCount];
+        int[] dictLink = new int[stateCount];
+        for (int s = 0; s < stateCount; s++) {
+            int edges = in.readInt();
+            labels[s] = new char[edges];
+            targets[s] = new int[edges];
+            for (int i = 0; i < edges; i++) {
+                labels[s][i] = in.readChar();
+                targets[s][i] = in.readInt();
+            }
+            fail[s] = in.readInt();
+            output[s] = in.readInt();
+            dictLink[s] = in.readInt();
+        }
+        return new KeywordMatcher(keywords, lengths, labels, targets, fail, output, dictLink);
+    }
+
+    public int keywordCount() {
+        return keywords.length;
+    }
+
+    public String keyword(int index) {
+        return keywords[index];
+    }
+
+    public boolean isEmpty() {
+        return keywords.length == 0;
+    }
+
+    /** Returns true as soon as any keyword occurs in the text. */
+    public boolean containsAny(CharSequence text) {
+        if (keywords.length == 0 || text == null) {
+            return false;
+        }
+        int state = ROOT;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            state = advance(state, fold(text.charAt(i)));
+            if (output[state] >= 0 || dictLink[state] >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Scans the whole text once and records every keyword occurrence into {@code hits}.
+     * Positions are char offsets in the original text (folding is one char to one char).
+     * Returns the number of hits.
+     */
+    public int scan(CharSequence text, Hits hits) {
+        hits.clear();
+        if (keywords.length == 0 || text == null) {
+            return 0;
+        }
+        int state = ROOT;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            state = advance(state, fold(text.charAt(i)));
+            int s = output[state] >= 0 ? state : dictLink[state];
+            while (s >= 0) {
+                int keyword = output[s];
+                hits.add(keyword, i + 1 - keywordLengths[keyword], i + 1);
+                s = dictLink[s];
+            }
+        }
+        return hits.count;
+    }
+
+    private int advance(int state, char c) {
+        int next;
+        while ((next = step(labels, targets, state, c)) < 0 && state != ROOT) {
+            state = fail[state];
+        }
+        return next < 0 ? ROOT : next;
+    }
+
+    private static int step(char[][] labels, int[][] targets, int state, char c) {
+        int index = Arrays.binarySearch(labels[state], c);
+        return index < 0 ? -1 : targets[state][index];
+    }
+
+    static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /** Reusable hit buffer so steady-state scans do not allocate. */
+    public static final class Hits {
+        private int[] keyword = new int[8];
+        private int[] start = new int[8];
+        private int[] end = new int[8];
+        private int count;
+
+        public int count() {
+            return count;
+        }
+
+        public int keyword(int i) {
+            return keyword[i];
+        }
+
+        public int start(int i) {
+            return start[i];
+        }
+
+        public int end(int i) {
+            return end[i];
+        }
+
+        public void clear() {
+            count = 0;
+        }
+
+        void add(int k, int s, int e) {
+            if (count == keyword.length) {
+                keyword = Arrays.copyOf(keyword, count * 2);
+                start = Arrays.copyOf(start, count * 2);
+                end = Arrays.copyOf(end, count * 2);
+            }
+            keyword[count] = k;
+            start[count] = s;
+            end[count] = e;
+            count++;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.otplink.core;
+
+/**
+ * Regex-free OTP extractor. Walks the message once, treats every digit run (including
+ * hyphenated and "123 456" groupings, Unicode and full-width digits) and every
+ * upper-case alphanumeric token as a candidate, and keeps the best scoring one.
+ * Scoring favours candidates close to matched keywords and after cues such as
+ * "is" / ":", and penalises amounts, dates, times, phone numbers and masked accounts.
+ * Only the returned code is allocated.
+ */
+public final class OtpExtractor {
+    private static final int KIND_NUMERIC = 0;
+    private static final int KIND_ALPHANUMERIC = 1;
+
+    private static final int KEYWORD_PROXIMITY = 60;
+    private static final int CUE_BONUS = 25;
+    private static final int TRAILING_IS_BONUS = 20;
+    private static final int ALPHANUMERIC_PENALTY = 30;
+    private static final int EMBEDDED_PENALTY = 20;
+    private static final int CONTEXT_PENALTY = 60;
+    private static final int STRONG_PENALTY = 80;
+
+    private static final String[] CUE_WORDS = {"is", "code", "otp", "pin", "password", "passcode", "token"};
+    private static final String[] AMOUNT_WORDS = {"rs", "inr", "usd", "eur", "amt", "amount", "balance", "bal"};
+
+    // Not ThreadLocal.withInitial, which needs API 26
+    private static final ThreadLocal<char[]> SCRATCH = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[32];
+        }
+    };
+
+    private OtpExtractor() {
+    }
+
+    public static String extract(CharSequence text, int minLength, int maxLength, KeywordMatcher.Hits hits) {
+        if (text == null || minLength <= 0 || maxLength < minLength) {
+            return null;
+        }
+        int n = text.length();
+        int bestScore = Integer.MIN_VALUE;
+        int bestStart = -1;
+        int bestEnd = -1;
+        int bestKind = KIND_NUMERIC;
+
+        int i = 0;
+        while (i < n) {
+            if (!isWordChar(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int wordStart = i;
+            int letters = 0;
+            int upper = 0;
+            int digits = 0;
+            while (i < n && isWordChar(text.charAt(i))) {
+                char c = text.charAt(i);
+                if (Character.isDigit(c)) {
+                    digits++;
+                } else {
+                    letters++;
+                    if (c >= 'A' && c <= 'Z' || c >= '\uFF21' && c <= '\uFF3A') {
+                        upper++;
+                    }
+                }
+                i++;
+            }
+            int wordEnd = i;
+            if (digits == 0) {
+                continue;
+            }
+
+            if (letters == 0) {
+                // Pure digit run; join following "-123" or " 456" groups into one code
+                int end = wordEnd;
+                int length = digits;
+                int groups = 1;
+                int secondLength = 0;
+                int thirdLength = 0;
+                while (end + 1 < n) {
+                    char sep = text.charAt(end);
+                    int next = digitRunEnd(text, end + 1);
+                    int nextLength = next - (end + 1);
+                    if (nextLength == 0 || (next < n && isWordChar(text.charAt(next)))) {
+                        break;
+                    }
+                    boolean joins = isHyphen(sep)
+                        || (sep == ' ' && groups == 1 && digits == 3 && nextLength == 3
+                            && !isDigitGroupBefore(text, wordStart) && !isDigitGroupAfter(text, next));
+                    if (!joins) {
+                        break;
+                    }
+                    if (groups == 1) {
+                        secondLength = nextLength;
+                    } else if (groups == 2) {
+                        thirdLength = nextLength;
+                    }
+                    groups++;
+                    length += nextLength;
+                    end = next;
+                }
+                // "12-05-2024", "2024-05-12" and "12-05-24" are dates, not a hyphenated code
+                boolean date = groups == 3 && isDateShaped(digits, secondLength, thirdLength);
+                if (!date && length >= minLength && length <= maxLength) {
+                    int score = score(text, wordStart, end, KIND_NUMERIC, hits);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestStart = wordStart;
+                        bestEnd = end;
+                        bestKind = KIND_NUMERIC;
+                    }
+                }
+                i = Math.max(i, end);
+                continue;
+            }
+
+            // Mixed token: the whole token may be an alphanumeric code...
+            int tokenLength = wordEnd - wordStart;
+            if (upper == letters && tokenLength >= minLength && tokenLength <= maxLength
+                    && !isMaskedAccount(text, wordStart, wordEnd)) {
+                int score = score(text, wordStart, wordEnd, KIND_ALPHANUMERIC, hits) - ALPHANUMERIC_PENALTY;
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestStart = wordStart;
+                    bestEnd = wordEnd;
+                    bestKind = KIND_ALPHANUMERIC;
+                }
+            }
+            // ...or carry an embedded digit run ("Rs500", "XX1234", "G123456")
+            int j = wordStart;
+            while (j < wordEnd) {
+                if (!Character.isDigit(text.charAt(j))) {
+                    j++;
+                    continue;
+                }
+                int runEnd = digitRunEnd(text, j);
+                int length = runEnd - j;
+                if (length >= minLength && length <= maxLength) {
+                    int score = score(text, j, runEnd, KIND_NUMERIC, hits) - EMBEDDED_PENALTY;
+                    if (j > wordStart && isMaskChar(text.charAt(j - 1))) {
+                        score -= STRONG_PENALTY;
+                    }
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestStart = j;
+                        bestEnd = runEnd;
+                        bestKind = KIND_NUMERIC;
+                    }
+                }
+                j = runEnd;
+            }
+        }
+
+        if (bestStart < 0) {
+            return null;
+        }
+        return normalize(text, bestStart, bestEnd, bestKind);
+    }
+
+    private static int score(CharSequence text, int start, int end, int kind, KeywordMatcher.Hits hits) {
+        int score = 0;
+
+        if (hits != null && hits.count() > 0) {
+            int distance = Integer.MAX_VALUE;
+            for (int h = 0; h < hits.count(); h++) {
+                int d = hits.end(h) <= start ? start - hits.end(h)
+                    : end <= hits.start(h) ? hits.start(h) - end : 0;
+                if (d < distance) {
+                    distance = d;
+                }
+            }
+            score += Math.max(0, KEYWORD_PROXIMITY - distance);
+        }
+
+        int n = text.length();
+        char before = start > 0 ? text.charAt(start - 1) : ' ';
+        char after = end < n ? text.charAt(end) : ' ';
+
+        // Punctuation glued to the candidate: dates, times, decimals, percentages, phone numbers
+        if ((before == '/' || before == '.' || before == ',' || before == ':')
+                && start > 1 && Character.isDigit(text.charAt(start - 2))) {
+            score -= CONTEXT_PENALTY;
+        }
+        if ((after == '/' || after == '.' || after == ',' || after == ':')
+                && end + 1 < n && Character.isDigit(text.charAt(end + 1))) {
+            score -= CONTEXT_PENALTY;
+        }
+        if (after == '%') {
+            score -= CONTEXT_PENALTY;
+        }
+        // One group of a longer spaced number: "987 654 3210"
+        if (isDigitGroupBefore(text, start) || isDigitGroupAfter(text, end)) {
+            score -= CONTEXT_PENALTY;
+        }
+        if (before == '+' || before == '*' || isCurrencySymbol(before)) {
+            score -= STRONG_PENALTY;
+        }
+
+        // Nearest non-space character and word before the candidate
+        int p = start - 1;
+        while (p >= 0 && Character.isWhitespace(text.charAt(p))) {
+            p--;
+        }
+        if (p >= 0) {
+            char prev = text.charAt(p);
+            if (prev == ':' || prev == '=' || prev == '-' && p < start - 1) {
+                score += CUE_BONUS;
+            } else if (isCurrencySymbol(prev)) {
+                score -= STRONG_PENALTY;
+            } else if (prev == '.' && p > 0 && Character.isLetter(text.charAt(p - 1))) {
+                // "Rs.500"
+                p--;
+            }
+            int wordEnd = p + 1;
+            while (p >= 0 && Character.isLetter(text.charAt(p))) {
+                p--;
+            }
+            int wordStart = p + 1;
+            if (wordEnd - wordStart > 0) {
+                if (matchesAny(text, wordStart, wordEnd, CUE_WORDS)) {
+                    score += CUE_BONUS;
+                } else if (matchesAny(text, wordStart, wordEnd, AMOUNT_WORDS)) {
+                    score -= STRONG_PENALTY;
+                }
+            }
+        }
+
+        // "123456 is your code"
+        int q = end;
+        while (q < n && text.charAt(q) == ' ') {
+            q++;
+        }
+        if (q + 2 <= n && equalsIgnoreCase(text, q, q + 2, "is")
+                && (q + 2 == n || !Character.isLetter(text.charAt(q + 2)))) {
+            score += TRAILING_IS_BONUS;
+        }
+        return score;
+    }
+
+    private static String normalize(CharSequence text, int start, int end, int kind) {
+        char[] out = SCRATCH.get();
+        if (out.length < end - start) {
+            out = new char[end - start];
+            SCRATCH.set(out);
+        }
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (Character.isDigit(c)) {
+                out[length++] = (char) ('0' + Character.digit(c, 10));
+            } else if (kind == KIND_ALPHANUMERIC && Character.isLetter(c)) {
+                // Fold full-width Latin letters to ASCII
+                out[length++] = c >= '\uFF21' && c <= '\uFF3A' ? (char) (c - '\uFF21' + 'A') : c;
+            }
+        }
+        return new String(out, 0, length);
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isDigit(c)
+            || c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z'
+            || c >= '\uFF21' && c <= '\uFF3A' || c >= '\uFF41' && c <= '\uFF5A';
+    }
+
+    private static int digitRunEnd(CharSequence text, int i) {
+        int n = text.length();
+        while (i < n && Character.isDigit(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isHyphen(char c) {
+        return c == '-' || c == '\u2010' || c == '\u2011';
+    }
+
+    // A digit group separated by one space or hyphen: "987 654 3210" is a phone number, not "987654"
+    private static boolean isDigitGroupBefore(CharSequence text, int start) {
+        return start >= 2 && (text.charAt(start - 1) == ' ' || isHyphen(text.charAt(start - 1)))
+            && Character.isDigit(text.charAt(start - 2));
+    }
+
+    private static boolean isDigitGroupAfter(CharSequence text, int end) {
+        return end + 1 < text.length() && (text.charAt(end) == ' ' || isHyphen(text.charAt(end)))
+            && Character.isDigit(text.charAt(end + 1));
+    }
+
+    // Day-month-year or year-month-day, with one or two digit days and months and
+    // two or four digit years; "12-05-24" may be either order, so both are covered
+    private static boolean isDateShaped(int first, int second, int third) {
+        return second <= 2 && (first <= 2 && (third <= 2 || third == 4) || first == 4 && third <= 2);
+    }
+
+    private static boolean isMaskChar(char c) {
+        return c == 'X' || c == 'x' || c == '*';
+    }
+
+    // "XX1234", "xxxx5678": letters are only the mask prefix
+    private static boolean isMaskedAccount(CharSequence text, int start, int end) {
+        int i = start;
+        while (i < end && isMaskChar(text.charAt(i))) {
+            i++;
+        }
+        return i > start && digitRunEnd(text, i) == end;
+    }
+
+    private static boolean isCurrencySymbol(char c) {
+        return Character.getType(c) == Character.CURRENCY_SYMBOL;
+    }
+
+    private static boolean matchesAny(CharSequence text, int start, int end, String[] words) {
+        for (String word : words) {
+            if (word.length() == end - start && equalsIgnoreCase(text, start, end, word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equalsIgnoreCase(CharSequence text, int start, int end, String word) {
+        for (int i = start; i < end; i++) {
+            if (KeywordMatcher.fold(text.charAt(i)) != word.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,93 @@
+package com.otplink.core;
+
+/**
+ * The Context-free detection half of SMS processing: sender rules, keyword match, OTP
+ * extraction and the duplicate check. Forwarding and persistence stay with the caller, which marks the
+ * dedupe store once it has taken ownership of an accepted OTP. With a {@link TemplateCache},
+ * extraction tries the sender's learned template before the general extractor and
+ * feeds general-extractor results back into it.
+ */
+public final class OtpPipeline {
+    public enum Outcome {
+        SENDER_BLOCKED,
+        NO_KEYWORD,
+        NO_OTP,
+        DUPLICATE,
+        ACCEPTED
+    }
+
+    /** Reusable result holder, so detection allocates nothing beyond the OTP string. */
+    public static final class Detection {
+        public final KeywordMatcher.Hits hits = new KeywordMatcher.Hits();
+        public Outcome outcome;
+        public String otp;
+        public long dedupeKey;
+        // Rule that matched the sender; its overrides were applied to extraction
+        public SenderRules.Rule senderRule;
+        // Whether the OTP came from the sender's learned template
+        public boolean templateHit;
+        // Time spent in each stage by the last detect call; 0 for stages that did not run
+        public long senderNanos;
+        public long keywordNanos;
+        public long extractNanos;
+        public long dedupeNanos;
+    }
+
+    private final DedupeStore dedupe;
+    private final TemplateCache templates;
+
+    public OtpPipeline(DedupeStore dedupe) {
+        this(dedupe, null);
+    }
+
+    public OtpPipeline(DedupeStore dedupe, TemplateCache templates) {
+        this.dedupe = dedupe;
+        this.templates = templates;
+    }
+
+    public Outcome detect(OtpRules rules, String sender, CharSequence message, long receivedAt, Detection out) {
+        out.otp = null;
+        out.templateHit = false;
+        out.dedupeKey = 0;
+        out.keywordNanos = 0;
+        out.extractNanos = 0;
+        out.dedupeNanos = 0;
+        long start = System.nanoTime();
+        SenderRules.Rule rule = rules.senderRules().match(sender);
+        out.senderRule = rule;
+        long screened = System.nanoTime();
+        out.senderNanos = screened - start;
+        if (!rule.allow) {
+            return out.outcome = Outcome.SENDER_BLOCKED;
+        }
+        int keywordHits = rules.keywordMatcher().scan(message, out.hits);
+        long matched = System.nanoTime();
+        out.keywordNanos = matched - screened;
+        if (keywordHits == 0) {
+            return out.outcome = Outcome.NO_KEYWORD;
+        }
+        if (rule.hasOtpPattern()) {
+            out.otp = rule.extract(message);
+        } else {
+            int min = rule.otpMinLength > 0 ? rule.otpMinLength : rules.otpMinLength();
+            int max = rule.otpMaxLength > 0 ? rule.otpMaxLength : rules.otpMaxLength();
+            out.otp = templates != null ? templates.extract(sender, message, min, max) : null;
+            out.templateHit = out.otp != null;
+            if (out.otp == null) {
+                out.otp = OtpExtractor.extract(message, min, max, out.hits);
+                if (out.otp != null && templates != null) {
+                    templates.learn(sender, message, out.otp);
+                }
+            }
+        }
+        long extracted = System.nanoTime();
+        out.extractNanos = extracted - matched;
+        if (out.otp == null) {
+            return out.outcome = Outcome.NO_OTP;
+        }
+        out.dedupeKey = DedupeWindow.key(out.otp, sender);
+        boolean duplicate = dedupe.contains(out.dedupeKey, receivedAt);
+        out.dedupeNanos = System.nanoTime() - extracted;
+        return out.outcome = duplicate ? Outcome.DUPLICATE : Outcome.ACCEPTED;
+    }
+}
@@ -0,0 +1,38 @@
+package com.otplink.core;
+
+/** One forwarded (or attempted) OTP as stored in {@link OtpRecordLog}. */
+public final class OtpRecord {
+    public long seq;
+    public long timestamp;
+    public String otp;
+    public String sender;
+    public String message;
+    public boolean forwarded;
+    public String forwardingMethod;
+    // Delivery outcome: one of the STATUS_* values, plus how many sends were attempted
+    public String status;
+    public int attempts;
+    // Per-destination outcome as "destination=status" pairs joined by ';', or null
+    public String deliveries;
+
+    public static final String STATUS_SENT = "sent";
+    public static final String STATUS_RETRYING = "retrying";
+    public static final String STATUS_FAILED = "failed";
+    public static final String STATUS_EXPIRED = "expired";
+    public static final String STATUS_SKIPPED = "skipped";
+
+    public OtpRecord(String otp, String sender, String message, long timestamp) {
+        this.otp = otp;
+        this.sender = sender;
+        this.message = message;
+        this.timestamp = timestamp;
+    }
+
+    public OtpRecord() {
+    }
+
+    // Stable id exposed to JS; sequence numbers never repeat within one log file
+    public String id() {
+        return "native-" + seq;
+    }
+}
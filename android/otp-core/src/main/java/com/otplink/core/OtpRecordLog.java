@@ -0,0 +1,338 @@
+package com.otplink.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only OTP history in a memory-mapped ring of fixed-size slots. Appending writes
+ * one slot and the header in place, so the cost no longer grows with history size, and
+ * the oldest record is overwritten once {@code capacity} records exist.
+ *
+ * Durability uses group commit: {@link #awaitDurable(long)} lets the first waiting
+ * writer force the mapping to disk on behalf of every record appended so far, while
+ * concurrent writers wait for that single fsync instead of issuing their own.
+ *
+ * Slot layout: seq (8) | timestamp (8) | payload length (2) | fields, where each field is
+ * tag (1) | length (2) | bytes. Unknown tags are skipped, so fields can be added later.
+ */
+public final class OtpRecordLog {
+    private static final int MAGIC = 0x4f54524c; // "OTRL"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_NEXT_SEQ = 16;
+    private static final int SLOT_HEADER = 18;
+
+    // A year of history at about 45 OTPs a day; 8 MB with the default slot size
+    public static final int DEFAULT_CAPACITY = 16384;
+    public static final int DEFAULT_SLOT_SIZE = 512;
+
+    private static final byte TAG_OTP = 1;
+    private static final byte TAG_SENDER = 2;
+    private static final byte TAG_MESSAGE = 3;
+    private static final byte TAG_FORWARDED = 4;
+    private static final byte TAG_METHOD = 5;
+    private static final byte TAG_STATUS = 6;
+    private static final byte TAG_ATTEMPTS = 7;
+    private static final byte TAG_DELIVERIES = 8;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int slotSize;
+
+    // Guarded by this
+    private long nextSeq;
+
+    // Group commit state, guarded by syncLock
+    private final Object syncLock = new Object();
+    private long durableSeq;
+    private boolean syncing;
+
+    /** The file is not a record log with this slot size and capacity. */
+    public static final class IncompatibleLogException extends IOException {
+        IncompatibleLogException(String message) {
+            super(message);
+        }
+    }
+
+    public OtpRecordLog(File path, int capacity, int slotSize) throws IOException {
+        this.file = new RandomAccessFile(path, "rw");
+        this.capacity = capacity;
+        this.slotSize = slotSize;
+        long length = HEADER_SIZE + (long) capacity * slotSize;
+        try {
+            // The magic is written last, so a file whose creation was interrupted reads as 0
+            boolean fresh = file.length() < 4 || readMagic(file) == 0;
+            if (!fresh && file.length() != length) {
+                throw new IncompatibleLogException("Record log " + path + " has an unexpected size " + file.length());
+            }
+            file.setLength(length);
+            this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+
+            if (fresh) {
+                buffer.putInt(4, FORMAT_VERSION);
+                buffer.putInt(8, slotSize);
+                buffer.putInt(12, capacity);
+                buffer.putLong(HEADER_NEXT_SEQ, 1);
+                buffer.force();
+                buffer.putInt(0, MAGIC);
+                buffer.force();
+            } else if (buffer.getInt(0) != MAGIC || buffer.getInt(8) != slotSize || buffer.getInt(12) != capacity) {
+                throw new IncompatibleLogException("Record log " + path + " has an incompatible header");
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        this.nextSeq = buffer.getLong(HEADER_NEXT_SEQ);
+        this.durableSeq = nextSeq - 1;
+    }
+
+    /** Opens an existing log with the slot size and capacity recorded in its header. */
+    public static OtpRecordLog openExisting(File path) throws IOException {
+        int slotSize;
+        int capacity;
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            if (file.length() < HEADER_SIZE || file.readInt() != MAGIC) {
+                throw new IncompatibleLogException("Record log " + path + " has no valid header");
+            }
+            file.seek(8);
+            slotSize = file.readInt();
+            capacity = file.readInt();
+        }
+        if (slotSize < SLOT_HEADER || capacity <= 0) {
+            throw new IncompatibleLogException("Record log " + path + " has an invalid geometry");
+        }
+        return new OtpRecordLog(path, capacity, slotSize);
+    }
+
+    private static int readMagic(RandomAccessFile file) throws IOException {
+        file.seek(0);
+        return file.readInt();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /** Writes the record into the next slot and returns its sequence number (not yet durable). */
+    public synchronized long append(OtpRecord record) {
+        record.seq = nextSeq++;
+        writeSlot(record);
+        buffer.putLong(HEADER_NEXT_SEQ, nextSeq);
+        return record.seq;
+    }
+
+    /**
+     * Copies the newest records of {@code source} into this log, which must be empty,
+     * keeping their sequence numbers, and forces the result to disk. Used to carry
+     * history over into a log of another size.
+     */
+    public synchronized void importFrom(OtpRecordLog source) {
+        if (nextSeq != 1) {
+            throw new IllegalStateException("Can only import into an empty record log");
+        }
+        long newest = source.lastSeq();
+        long oldest = Math.max(1, newest - Math.min(capacity, source.capacity()) + 1);
+        for (long seq = oldest; seq <= newest; seq++) {
+            OtpRecord record = source.read(seq);
+            if (record != null) {
+                writeSlot(record);
+            }
+        }
+        nextSeq = newest + 1;
+        buffer.putLong(HEADER_NEXT_SEQ, nextSeq);
+        buffer.force();
+        synchronized (syncLock) {
+            durableSeq = newest;
+        }
+    }
+
+    /** Rewrites an existing record in place, e.g. to update its forwarding state. */
+    public synchronized boolean update(OtpRecord record) {
+        if (record.seq <= 0 || record.seq >= nextSeq || record.seq <= nextSeq - 1 - capacity) {
+            return false;
+        }
+        writeSlot(record);
+        return true;
+    }
+
+    /** Blocks until every record up to {@code seq} has been forced to disk. */
+    public void awaitDurable(long seq) {
+        while (true) {
+            synchronized (syncLock) {
+                while (syncing && durableSeq < seq) {
+                    try {
+                        syncLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (durableSeq >= seq) {
+                    return;
+                }
+                syncing = true;
+            }
+
+            // This thread leads the batch: one fsync covers everything appended so far
+            long target;
+            synchronized (this) {
+                target = nextSeq - 1;
+            }
+            try {
+                buffer.force();
+            } finally {
+                synchronized (syncLock) {
+                    durableSeq = Math.max(durableSeq, target);
+                    syncing = false;
+                    syncLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /** Returns up to {@code limit} records older than {@code beforeSeq}, newest first. */
+    public synchronized List<OtpRecord> readPage(long beforeSeq, int limit) {
+        List<OtpRecord> page = new ArrayList<>(Math.max(0, Math.min(limit, capacity)));
+        long newest = Math.min(beforeSeq <= 0 ? Long.MAX_VALUE : beforeSeq - 1, nextSeq - 1);
+        long oldest = Math.max(1, nextSeq - capacity);
+        for (long seq = newest; seq >= oldest && page.size() < limit; seq--) {
+            OtpRecord record = readSlot(seq);
+            if (record != null) {
+                page.add(record);
+            }
+        }
+        return page;
+    }
+
+    public synchronized OtpRecord read(long seq) {
+        if (seq <= 0 || seq >= nextSeq || seq < nextSeq - capacity) {
+            return null;
+        }
+        return readSlot(seq);
+    }
+
+    public synchronized long lastSeq() {
+        return nextSeq - 1;
+    }
+
+    public void close() {
+        try {
+            buffer.force();
+            file.close();
+        } catch (IOException e) {
+            // Mapping stays valid until unmapped by GC
+        }
+    }
+
+    private void writeSlot(OtpRecord record) {
+        ByteBuffer slot = slotBuffer(record.seq);
+        slot.putLong(0);                                  // mark torn until fully written
+        slot.putLong(record.timestamp);
+        int lengthPosition = slot.position();
+        slot.putShort((short) 0);
+        putBoolean(slot, TAG_FORWARDED, record.forwarded);
+        putString(slot, TAG_OTP, record.otp);
+        putString(slot, TAG_SENDER, record.sender);
+        putString(slot, TAG_METHOD, record.forwardingMethod);
+        putString(slot, TAG_STATUS, record.status);
+        slot.put(TAG_ATTEMPTS);
+        slot.putShort((short) 2);
+        slot.putShort((short) Math.min(record.attempts, Short.MAX_VALUE));
+        putString(slot, TAG_DELIVERIES, record.deliveries);
+        // The message body goes last and is truncated to whatever space is left
+        putString(slot, TAG_MESSAGE, record.message);
+        slot.putShort(lengthPosition, (short) (slot.position() - SLOT_HEADER));
+        slot.putLong(0, record.seq);
+    }
+
+    private OtpRecord readSlot(long seq) {
+        ByteBuffer slot = slotBuffer(seq);
+        if (slot.getLong() != seq) {
+            return null;
+        }
+        OtpRecord record = new OtpRecord();
+        record.seq = seq;
+        record.timestamp = slot.getLong();
+        int end = SLOT_HEADER + (slot.getShort() & 0xffff);
+        while (slot.position() + 3 <= end) {
+            byte tag = slot.get();
+            int length = slot.getShort() & 0xffff;
+            if (slot.position() + length > end) {
+                break;
+            }
+            switch (tag) {
+                case TAG_OTP:
+                    record.otp = getString(slot, length);
+                    break;
+                case TAG_SENDER:
+                    record.sender = getString(slot, length);
+                    break;
+                case TAG_MESSAGE:
+                    record.message = getString(slot, length);
+                    break;
+                case TAG_METHOD:
+                    record.forwardingMethod = getString(slot, length);
+                    break;
+                case TAG_FORWARDED:
+                    record.forwarded = slot.get() != 0;
+                    break;
+                case TAG_STATUS:
+                    record.status = getString(slot, length);
+                    break;
+                case TAG_ATTEMPTS:
+                    record.attempts = slot.getShort();
+                    break;
+                case TAG_DELIVERIES:
+                    record.deliveries = getString(slot, length);
+                    break;
+                default:
+                    slot.position(slot.position() + length);
+            }
+        }
+        return record;
+    }
+
+    private ByteBuffer slotBuffer(long seq) {
+        int offset = HEADER_SIZE + (int) (seq % capacity) * slotSize;
+        ByteBuffer slot = buffer.duplicate();
+        slot.position(offset);
+        slot.limit(offset + slotSize);
+        return slot.slice();
+    }
+
+    private static void putBoolean(ByteBuffer slot, byte tag, boolean value) {
+        slot.put(tag);
+        slot.putShort((short) 1);
+        slot.put((byte) (value ? 1 : 0));
+    }
+
+    private static void putString(ByteBuffer slot, byte tag, String value) {
+        if (value == null || slot.remaining() < 3) {
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, slot.remaining() - 3);
+        // Do not cut a multi-byte UTF-8 sequence in half
+        while (length > 0 && length < bytes.length && (bytes[length] & 0xc0) == 0x80) {
+            length--;
+        }
+        slot.put(tag);
+        slot.putShort((short) length);
+        slot.put(bytes, 0, length);
+    }
+
+    private static String getString(ByteBuffer slot, int length) {
+        byte[] bytes = new byte[length];
+        slot.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,12 @@
+package com.otplink.core;
+
+/** The parts of the app configuration the detection stages need. */
+public interface OtpRules {
+    SenderRules senderRules();
+
+    KeywordMatcher keywordMatcher();
+
+    int otpMinLength();
+
+    int otpMaxLength();
+}
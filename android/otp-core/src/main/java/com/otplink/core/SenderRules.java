@@ -0,0 +1,262 @@
+package com.otplink.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Allow and deny rules keyed on the normalised sender, compiled into a trie. A rule
+ * pattern is either an exact sender ({@code HDFCBK}) or a prefix ending in {@code *}
+ * ({@code +1800*}); the most specific match wins: an exact rule over any prefix, a
+ * longer prefix over a shorter one. Matching walks the sender once without allocating,
+ * so a denied sender is rejected before any message-body work.
+ *
+ * Senders and patterns are normalised alike: the two-letter operator header of
+ * DLT-style ids ({@code AX-}, {@code VM-}) is dropped, letters are upper-cased and
+ * everything that is not a letter or digit is ignored, so {@code AX-HDFCBK},
+ * {@code hdfcbk} and {@code HDFC-BK} are the same sender.
+ */
+public final class SenderRules {
+    private static final int ROOT = 0;
+
+    public static final SenderRules EMPTY = compile(new ArrayList<>(), true);
+
+    /** One rule; length bounds of 0 and a null pattern inherit the global settings. */
+    public static final class Rule {
+        public final String pattern;
+        public final boolean allow;
+        public final int otpMinLength;
+        public final int otpMaxLength;
+        public final String otpPattern;
+        private final Pattern compiledPattern;
+
+        public Rule(String pattern, boolean allow, int otpMinLength, int otpMaxLength, String otpPattern) {
+            this.pattern = pattern;
+            this.allow = allow;
+            this.otpMinLength = otpMinLength;
+            this.otpMaxLength = otpMaxLength;
+            this.otpPattern = otpPattern;
+            this.compiledPattern = otpPattern != null ? Pattern.compile(otpPattern) : null;
+        }
+
+        public boolean hasOtpPattern() {
+            return compiledPattern != null;
+        }
+
+        /** Applies the custom pattern: its first group if it has one, else the whole match. */
+        public String extract(CharSequence message) {
+            Matcher matcher = compiledPattern.matcher(message);
+            if (!matcher.find()) {
+                return null;
+            }
+            return matcher.groupCount() >= 1 ? matcher.group(1) : matcher.group();
+        }
+    }
+
+    private final Rule[] rules;
+    private final Rule defaultRule;
+    // Sparse trie: per state, sorted labels with matching target states
+    private final char[][] labels;
+    private final int[][] targets;
+    // Rule for a sender ending exactly at this state, and for any sender passing through it; -1 if none
+    private final int[] exact;
+    private final int[] prefix;
+
+    private SenderRules(Rule[] rules, Rule defaultRule, char[][] labels, int[][] targets, int[] exact, int[] prefix) {
+        this.rules = rules;
+        this.defaultRule = defaultRule;
+        this.labels = labels;
+        this.targets = targets;
+        this.exact = exact;
+        this.prefix = prefix;
+    }
+
+    /** Later rules for the same pattern are ignored; {@code defaultAllow} applies to senders no rule matches. */
+    public static SenderRules compile(List<Rule> rules, boolean defaultAllow) {
+        List<Rule> accepted = new ArrayList<>();
+        List<Map<Character, Integer>> edges = new ArrayList<>();
+        List<int[]> outputs = new ArrayList<>();
+        edges.add(new HashMap<>());
+        outputs.add(new int[] {-1, -1});
+
+        for (Rule rule : rules) {
+            if (rule == null || rule.pattern == null) {
+                continue;
+            }
+            String pattern = rule.pattern.trim();
+            boolean isPrefix = pattern.endsWith("*");
+            String key = normalize(isPrefix ? pattern.substring(0, pattern.length() - 1) : pattern);
+            if (key.isEmpty() && !isPrefix) {
+                continue;
+            }
+            int state = ROOT;
+            for (int i = 0; i < key.length(); i++) {
+                char c = key.charAt(i);
+                Integer next = edges.get(state).get(c);
+                if (next == null) {
+                    next = edges.size();
+                    edges.add(new HashMap<>());
+                    outputs.add(new int[] {-1, -1});
+                    edges.get(state).put(c, next);
+                }
+                state = next;
+            }
+            int[] output = outputs.get(state);
+            int slot = isPrefix ? 1 : 0;
+            if (output[slot] == -1) {
+                output[slot] = accepted.size();
+                accepted.add(rule);
+            }
+        }
+
+        int stateCount = edges.size();
+        char[][] labels = new char[stateCount][];
+        int[][] targets = new int[stateCount][];
+        int[] exact = new int[stateCount];
+        int[] prefix = new int[stateCount];
+        for (int s = 0; s < stateCount; s++) {
+            Map<Character, Integer> map = edges.get(s);
+            char[] l = new char[map.size()];
+            int i = 0;
+            for (Character c : map.keySet()) {
+                l[i++] = c;
+            }
+            Arrays.sort(l);
+            int[] t = new int[l.length];
+            for (i = 0; i < l.length; i++) {
+                t[i] = map.get(l[i]);
+            }
+            labels[s] = l;
+            targets[s] = t;
+            exact[s] = outputs.get(s)[0];
+            prefix[s] = outputs.get(s)[1];
+        }
+        Rule defaultRule = new Rule("*", defaultAllow, 0, 0, null);
+        return new SenderRules(accepted.toArray(new Rule[0]), defaultRule, labels, targets, exact, prefix);
+    }
+
+    /** The most specific rule for {@code sender}, or the default rule when none matches; never null. */
+    public Rule match(CharSequence sender) {
+        if (sender == null || rules.length == 0) {
+            return defaultRule;
+        }
+        int state = ROOT;
+        int best = prefix[ROOT];
+        for (int i = headerLength(sender), n = sender.length(); i < n; i++) {
+            char c = fold(sender.charAt(i));
+            if (c == 0) {
+                continue;
+            }
+            state = step(state, c);
+            if (state < 0) {
+                return best >= 0 ? rules[best] : defaultRule;
+            }
+            if (prefix[state] >= 0) {
+                best = prefix[state];
+            }
+        }
+        if (exact[state] >= 0) {
+            return rules[exact[state]];
+        }
+        return best >= 0 ? rules[best] : defaultRule;
+    }
+
+    public boolean defaultAllow() {
+        return defaultRule.allow;
+    }
+
+    public int ruleCount() {
+        return rules.length;
+    }
+
+    public Rule rule(int index) {
+        return rules[index];
+    }
+
+    /** Writes the rule list; the trie is cheap enough to rebuild on load. */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeBoolean(defaultRule.allow);
+        out.writeInt(rules.length);
+        for (Rule rule : rules) {
+            out.writeUTF(rule.pattern);
+            out.writeBoolean(rule.allow);
+            out.writeInt(rule.otpMinLength);
+            out.writeInt(rule.otpMaxLength);
+            out.writeBoolean(rule.otpPattern != null);
+            if (rule.otpPattern != null) {
+                out.writeUTF(rule.otpPattern);
+            }
+        }
+    }
+
+    public static SenderRules readFrom(DataInputStream in) throws IOException {
+        boolean defaultAllow = in.readBoolean();
+        int count = in.readInt();
+        List<Rule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String pattern = in.readUTF();
+            boolean allow = in.readBoolean();
+            int min = in.readInt();
+            int max = in.readInt();
+            String otpPattern = in.readBoolean() ? in.readUTF() : null;
+            rules.add(new Rule(pattern, allow, min, max, otpPattern));
+        }
+        return compile(rules, defaultAllow);
+    }
+
+    static String normalize(CharSequence sender) {
+        StringBuilder key = new StringBuilder(sender.length());
+        for (int i = headerLength(sender); i < sender.length(); i++) {
+            char c = fold(sender.charAt(i));
+            if (c != 0) {
+                key.append(c);
+            }
+        }
+        return key.toString();
+    }
+
+    // Length of a leading DLT operator header such as "AX-", or 0
+    private static int headerLength(CharSequence sender) {
+        if (sender.length() > 3 && sender.charAt(2) == '-'
+                && isAsciiLetter(sender.charAt(0)) && isAsciiLetter(sender.charAt(1))) {
+            return 3;
+        }
+        return 0;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    // Upper-cased letter or digit, or 0 for characters that do not take part in matching
+    private static char fold(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return (char) (c - ('a' - 'A'));
+        }
+        if ((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+            return c;
+        }
+        return Character.isLetterOrDigit(c) ? Character.toUpperCase(c) : 0;
+    }
+
+    private int step(int state, char c) {
+        char[] l = labels[state];
+        // Linear scan is faster than binary search for the handful of labels per state
+        for (int i = 0; i < l.length; i++) {
+            if (l[i] == c) {
+                return targets[state][i];
+            }
+            if (l[i] > c) {
+                break;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,240 @@
+package com.otplink.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-sender message templates learned from confirmed extractions. A template is the
+ * static text just before and just after the code plus the code's length and shape;
+ * once {@link #CONFIRMATIONS} messages from a sender agree on them, later messages are
+ * extracted by checking the anchors at the remembered offset (or finding the prefix
+ * anchor) instead of scanning the whole body. A message whose anchors do not match
+ * drops the template, and the caller falls back to the general extractor.
+ *
+ * Templates and learning candidates are kept in bounded LRU maps. Thread-safe.
+ */
+public final class TemplateCache {
+    public static final int DEFAULT_CAPACITY = 64;
+    static final int CONFIRMATIONS = 3;
+    // Characters of context remembered on each side of the code, and the minimum kept after merging
+    static final int ANCHOR_LENGTH = 12;
+    static final int MIN_ANCHOR_LENGTH = 4;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final class Template {
+        String prefix;
+        String suffix;
+        int codeLength;
+        boolean digitsOnly;
+        boolean atStart;
+        boolean atEnd;
+        // Offset of the code when it was the same in every confirming message, else -1
+        int offset;
+        int confirmations;
+    }
+
+    private final Map<String, Template> templates;
+    private final Map<String, Template> candidates;
+    private long version;
+
+    public TemplateCache(int capacity) {
+        templates = lru(capacity);
+        candidates = lru(capacity);
+    }
+
+    private static Map<String, Template> lru(int capacity) {
+        return new LinkedHashMap<String, Template>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Extracts the code with {@code sender}'s template, or returns null when there is none,
+     * its code length is outside the bounds, or the anchors do not match (which drops it).
+     */
+    public synchronized String extract(String sender, CharSequence message, int minLength, int maxLength) {
+        Template template = templates.get(sender);
+        if (template == null || template.codeLength < minLength || template.codeLength > maxLength) {
+            return null;
+        }
+        String text = message.toString();
+        int start = locate(template, text);
+        if (start >= 0 && codeMatches(template, text, start) && suffixMatches(template, text, start + template.codeLength)) {
+            return text.substring(start, start + template.codeLength);
+        }
+        templates.remove(sender);
+        version++;
+        return null;
+    }
+
+    private static int locate(Template template, String text) {
+        if (template.atStart) {
+            return 0;
+        }
+        int offset = template.offset;
+        if (offset >= template.prefix.length()
+                && text.regionMatches(offset - template.prefix.length(), template.prefix, 0, template.prefix.length())) {
+            return offset;
+        }
+        int found = text.indexOf(template.prefix);
+        return found < 0 ? -1 : found + template.prefix.length();
+    }
+
+    private static boolean codeMatches(Template template, String text, int start) {
+        int end = start + template.codeLength;
+        if (end > text.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (template.digitsOnly ? !(c >= '0' && c <= '9') : !Character.isLetterOrDigit(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean suffixMatches(Template template, String text, int end) {
+        if (template.atEnd) {
+            return end == text.length();
+        }
+        return text.startsWith(template.suffix, end);
+    }
+
+    /** Records that the general extractor found {@code otp} in {@code message} from {@code sender}. */
+    public synchronized void learn(String sender, CharSequence message, String otp) {
+        String text = message.toString();
+        int start = text.indexOf(otp);
+        int end = start + otp.length();
+        // The code must appear verbatim and not inside a longer run of letters or digits
+        if (start < 0 || (start > 0 && Character.isLetterOrDigit(text.charAt(start - 1)))
+                || (end < text.length() && Character.isLetterOrDigit(text.charAt(end)))) {
+            return;
+        }
+        Template observed = new Template();
+        observed.prefix = text.substring(Math.max(0, start - ANCHOR_LENGTH), start);
+        observed.suffix = text.substring(end, Math.min(text.length(), end + ANCHOR_LENGTH));
+        observed.codeLength = otp.length();
+        observed.digitsOnly = isDigits(otp);
+        observed.atStart = start == 0;
+        observed.atEnd = end == text.length();
+        observed.offset = start;
+        observed.confirmations = 1;
+
+        Template candidate = candidates.get(sender);
+        if (candidate == null || candidate.codeLength != observed.codeLength || candidate.digitsOnly != observed.digitsOnly
+                || candidate.atStart != observed.atStart || candidate.atEnd != observed.atEnd) {
+            candidates.put(sender, observed);
+            return;
+        }
+        // Keep only the context every confirming message shares
+        candidate.prefix = commonSuffix(candidate.prefix, observed.prefix);
+        candidate.suffix = commonPrefix(candidate.suffix, observed.suffix);
+        if (candidate.offset != observed.offset) {
+            candidate.offset = -1;
+        }
+        if (!anchored(candidate)) {
+            candidates.put(sender, observed);
+            return;
+        }
+        if (++candidate.confirmations >= CONFIRMATIONS) {
+            candidates.remove(sender);
+            templates.put(sender, candidate);
+            version++;
+        }
+    }
+
+    private static boolean anchored(Template template) {
+        if (!template.atStart && template.prefix.isEmpty()) {
+            return false;
+        }
+        if (!template.atEnd && template.suffix.isEmpty()) {
+            return false;
+        }
+        return template.prefix.length() + template.suffix.length() >= MIN_ANCHOR_LENGTH
+            || (template.atStart && template.atEnd);
+    }
+
+    private static boolean isDigits(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String commonPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return a.substring(0, i);
+    }
+
+    private static String commonSuffix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(a.length() - 1 - i) == b.charAt(b.length() - 1 - i)) {
+            i++;
+        }
+        return a.substring(a.length() - i);
+    }
+
+    public synchronized int size() {
+        return templates.size();
+    }
+
+    /** Increases whenever a template is learned or dropped; callers persist when it moves. */
+    public synchronized long version() {
+        return version;
+    }
+
+    /** Writes the learned templates, least recently used first; candidates are not kept. */
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(templates.size());
+        for (Map.Entry<String, Template> entry : templates.entrySet()) {
+            Template template = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeUTF(template.prefix);
+            out.writeUTF(template.suffix);
+            out.writeInt(template.codeLength);
+            out.writeBoolean(template.digitsOnly);
+            out.writeBoolean(template.atStart);
+            out.writeBoolean(template.atEnd);
+            out.writeInt(template.offset);
+        }
+    }
+
+    /** Replaces the templates with the ones in {@code in}; returns false for an unknown format. */
+    public synchronized boolean readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            return false;
+        }
+        templates.clear();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String sender = in.readUTF();
+            Template template = new Template();
+            template.prefix = in.readUTF();
+            template.suffix = in.readUTF();
+            template.codeLength = in.readInt();
+            template.digitsOnly = in.readBoolean();
+            template.atStart = in.readBoolean();
+            template.atEnd = in.readBoolean();
+            template.offset = in.readInt();
+            template.confirmations = CONFIRMATIONS;
+            templates.put(sender, template);
+        }
+        return true;
+    }
+}
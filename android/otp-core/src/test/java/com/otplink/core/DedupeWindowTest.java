@@ -0,0 +1,56 @@
+package com.otplink.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DedupeWindowTest {
+    @Test
+    public void keyDependsOnOtpAndSender() {
+        assertEquals(DedupeWindow.key("123456", "BANK"), DedupeWindow.key("123456", "BANK"));
+        assertNotEquals(DedupeWindow.key("123456", "BANK"), DedupeWindow.key("123456", "SHOP"));
+        assertNotEquals(0L, DedupeWindow.key("", null));
+    }
+
+    @Test
+    public void containsMarksWithinTheWindow() {
+        DedupeWindow window = new DedupeWindow();
+        long key = DedupeWindow.key("123456", "BANK");
+        long now = System.currentTimeMillis();
+
+        window.mark(key, now);
+
+        assertTrue(window.contains(key, now + 1000));
+        assertFalse(window.contains(key, now + DedupeWindow.WINDOW_MS));
+        assertFalse(window.contains(DedupeWindow.key("654321", "BANK"), now));
+    }
+
+    @Test
+    public void expiresOldMarks() {
+        DedupeWindow window = new DedupeWindow();
+        long now = System.currentTimeMillis();
+        window.restore(DedupeWindow.key("111111", "BANK"), now - DedupeWindow.WINDOW_MS - 1);
+        window.restore(DedupeWindow.key("222222", "BANK"), now);
+
+        window.expire(now);
+
+        assertEquals(1, window.size());
+    }
+
+    @Test
+    public void growsPastTheInitialTable() {
+        DedupeWindow window = new DedupeWindow();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            window.mark(DedupeWindow.key(String.valueOf(i), "BANK"), now);
+        }
+
+        assertEquals(1000, window.size());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(window.contains(DedupeWindow.key(String.valueOf(i), "BANK"), now));
+        }
+    }
+}
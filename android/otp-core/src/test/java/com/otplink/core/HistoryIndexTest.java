@@ -0,0 +1,87 @@
+package com.otplink.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CancellationException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HistoryIndexTest {
+    private HistoryIndex index;
+
+    @Before
+    public void setUp() {
+        index = new HistoryIndex(16);
+        index.add(1, 1000, "AX-AMAZON", "Your Amazon OTP is 111111");
+        index.add(2, 2000, "HDFCBK", "OTP 222222 for txn of Rs 500 at Amazon");
+        index.add(3, 3000, "HDFCBK", "OTP 333333 to login to NetBanking");
+        index.add(4, 4000, "SWIGGY", "Your Swiggy code is 444444");
+    }
+
+    private static HistoryIndex.Query query(String text, String sender) {
+        HistoryIndex.Query query = new HistoryIndex.Query();
+        query.text = text;
+        query.sender = sender;
+        return query;
+    }
+
+    @Test
+    public void termsMatchByPrefixNewestFirst() {
+        assertArrayEquals(new long[] {2, 1}, index.search(query("amaz", null), null).seqs);
+    }
+
+    @Test
+    public void everyFilterMustMatch() {
+        assertArrayEquals(new long[] {2}, index.search(query("amazon", "hdfc"), null).seqs);
+        assertArrayEquals(new long[] {4}, index.search(query(null, "swiggy"), null).seqs);
+        assertEquals(0, index.search(query("paytm", null), null).seqs.length);
+    }
+
+    @Test
+    public void filtersByTime() {
+        HistoryIndex.Query query = query(null, null);
+        query.fromTimestamp = 2000;
+        query.toTimestamp = 3000;
+
+        assertArrayEquals(new long[] {3, 2}, index.search(query, null).seqs);
+    }
+
+    @Test
+    public void pagesWithNextBeforeSeq() {
+        HistoryIndex.Query query = query("otp", null);
+        query.limit = 2;
+
+        HistoryIndex.Page first = index.search(query, null);
+        query.beforeSeq = first.nextBeforeSeq();
+        HistoryIndex.Page second = index.search(query, null);
+
+        assertArrayEquals(new long[] {3, 2}, first.seqs);
+        assertTrue(first.hasMore);
+        assertArrayEquals(new long[] {1}, second.seqs);
+        assertFalse(second.hasMore);
+    }
+
+    @Test
+    public void ignoresRecordsAlreadyIndexed() {
+        assertFalse(index.add(3, 3000, "HDFCBK", "again"));
+        assertEquals(4, index.lastSeq());
+    }
+
+    @Test
+    public void forgetsRecordsTheLogOverwrote() {
+        HistoryIndex small = new HistoryIndex(2);
+        small.add(1, 1000, "BANK", "OTP 111111");
+        small.add(2, 2000, "BANK", "OTP 222222");
+        small.add(3, 3000, "BANK", "OTP 333333");
+
+        assertArrayEquals(new long[] {3, 2}, small.search(query("otp", null), null).seqs);
+    }
+
+    @Test(expected = CancellationException.class)
+    public void stopsWhenCancelled() {
+        index.search(query("otp", null), () -> true);
+    }
+}
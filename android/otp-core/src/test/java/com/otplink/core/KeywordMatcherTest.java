@@ -0,0 +1,42 @@
+package com.otplink.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class KeywordMatcherTest {
+    @Test
+    public void findsEveryKeywordIgnoringCase() {
+        KeywordMatcher matcher = KeywordMatcher.compile(Arrays.asList("otp", "code", "verification"));
+        KeywordMatcher.Hits hits = new KeywordMatcher.Hits();
+
+        int count = matcher.scan("Your Verification CODE is 123456", hits);
+
+        assertEquals(2, count);
+        assertEquals("verification", matcher.keyword(hits.keyword(0)));
+        assertEquals(5, hits.start(0));
+        assertEquals(17, hits.end(0));
+        assertEquals("code", matcher.keyword(hits.keyword(1)));
+    }
+
+    @Test
+    public void reportsOverlappingKeywords() {
+        KeywordMatcher matcher = KeywordMatcher.compile(Arrays.asList("pass", "passcode", "code"));
+        KeywordMatcher.Hits hits = new KeywordMatcher.Hits();
+
+        assertEquals(3, matcher.scan("passcode", hits));
+    }
+
+    @Test
+    public void containsAnyWithoutKeywords() {
+        KeywordMatcher matcher = KeywordMatcher.compile(Collections.emptyList());
+
+        assertTrue(matcher.isEmpty());
+        assertFalse(matcher.containsAny("OTP 123456"));
+        assertTrue(KeywordMatcher.compile(Arrays.asList("otp")).containsAny("Your oTp is 1"));
+    }
+}
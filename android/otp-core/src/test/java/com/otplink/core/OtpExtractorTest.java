@@ -0,0 +1,56 @@
+package com.otplink.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class OtpExtractorTest {
+    private final KeywordMatcher matcher = KeywordMatcher.compile(Arrays.asList("otp", "code"));
+
+    private String extract(String message) {
+        KeywordMatcher.Hits hits = new KeywordMatcher.Hits();
+        matcher.scan(message, hits);
+        return OtpExtractor.extract(message, 4, 8, hits);
+    }
+
+    @Test
+    public void prefersTheCodeNearTheKeyword() {
+        assertEquals("482913", extract("Rs 5000 debited from A/c XX1234. OTP is 482913, valid 10 min"));
+    }
+
+    @Test
+    public void joinsHyphenatedAndSpacedGroups() {
+        assertEquals("123456", extract("Your code: 123-456"));
+        assertEquals("123456", extract("Your code: 123 456"));
+    }
+
+    @Test
+    public void ignoresDates() {
+        assertNull(extract("Statement dated 12-05-2024"));
+        assertNull(extract("Statement dated 2024-05-12"));
+        assertNull(extract("Statement dated 12-05-24"));
+    }
+
+    @Test
+    public void doesNotJoinATwoDigitYearDateIntoTheCode() {
+        assertEquals("4829", extract("Your OTP for login on 12-05-24 is 4829"));
+    }
+
+    @Test
+    public void doesNotJoinPhoneNumberGroups() {
+        assertEquals("552211", extract("Call 987 654 3210 for help, OTP 552211"));
+    }
+
+    @Test
+    public void normalisesFullWidthDigits() {
+        assertEquals("123456", extract("OTP \uFF11\uFF12\uFF13\uFF14\uFF15\uFF16"));
+    }
+
+    @Test
+    public void returnsNullWithoutCandidates() {
+        assertNull(extract("No code in this message"));
+        assertNull(OtpExtractor.extract(null, 4, 8, null));
+    }
+}
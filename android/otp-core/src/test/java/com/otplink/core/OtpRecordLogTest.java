@@ -0,0 +1,119 @@
+package com.otplink.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OtpRecordLogTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static OtpRecord record(String otp, long timestamp) {
+        OtpRecord record = new OtpRecord(otp, "BANK", "Your OTP is " + otp, timestamp);
+        record.forwarded = true;
+        record.forwardingMethod = "email";
+        record.status = OtpRecord.STATUS_SENT;
+        record.attempts = 1;
+        return record;
+    }
+
+    @Test
+    public void recordsSurviveReopening() throws Exception {
+        File path = new File(folder.getRoot(), "records.log");
+        OtpRecordLog log = new OtpRecordLog(path, 16, OtpRecordLog.DEFAULT_SLOT_SIZE);
+        long seq = log.append(record("123456", 1000));
+        log.awaitDurable(seq);
+        log.close();
+
+        OtpRecordLog reopened = new OtpRecordLog(path, 16, OtpRecordLog.DEFAULT_SLOT_SIZE);
+        OtpRecord read = reopened.read(seq);
+
+        assertEquals(1, reopened.lastSeq());
+        assertEquals("123456", read.otp);
+        assertEquals("BANK", read.sender);
+        assertEquals(1000, read.timestamp);
+        assertEquals(OtpRecord.STATUS_SENT, read.status);
+        assertTrue(read.forwarded);
+        reopened.close();
+    }
+
+    @Test
+    public void overwritesTheOldestRecordOnceFull() throws Exception {
+        OtpRecordLog log = new OtpRecordLog(new File(folder.getRoot(), "records.log"), 4, OtpRecordLog.DEFAULT_SLOT_SIZE);
+        for (int i = 1; i <= 6; i++) {
+            log.append(record("10000" + i, i));
+        }
+
+        List<OtpRecord> page = log.readPage(0, 10);
+
+        assertEquals(4, page.size());
+        assertEquals(6, page.get(0).seq);
+        assertEquals(3, page.get(3).seq);
+        assertNull(log.read(2));
+        log.close();
+    }
+
+    @Test
+    public void updateRewritesInPlace() throws Exception {
+        OtpRecordLog log = new OtpRecordLog(new File(folder.getRoot(), "records.log"), 4, OtpRecordLog.DEFAULT_SLOT_SIZE);
+        OtpRecord record = record("123456", 1);
+        log.append(record);
+
+        record.status = OtpRecord.STATUS_FAILED;
+        record.attempts = 3;
+
+        assertTrue(log.update(record));
+        assertEquals(OtpRecord.STATUS_FAILED, log.read(record.seq).status);
+        assertEquals(3, log.read(record.seq).attempts);
+        log.close();
+    }
+
+    @Test
+    public void initialisesAFileWhoseHeaderWasNeverWritten() throws Exception {
+        File path = new File(folder.getRoot(), "records.log");
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            file.setLength(64 + 4L * OtpRecordLog.DEFAULT_SLOT_SIZE);
+        }
+
+        OtpRecordLog log = new OtpRecordLog(path, 4, OtpRecordLog.DEFAULT_SLOT_SIZE);
+
+        assertEquals(1, log.append(record("123456", 1)));
+        log.close();
+    }
+
+    @Test(expected = OtpRecordLog.IncompatibleLogException.class)
+    public void rejectsALogWithAnotherCapacity() throws Exception {
+        File path = new File(folder.getRoot(), "records.log");
+        new OtpRecordLog(path, 4, OtpRecordLog.DEFAULT_SLOT_SIZE).close();
+
+        new OtpRecordLog(path, 8, OtpRecordLog.DEFAULT_SLOT_SIZE);
+    }
+
+    @Test
+    public void importCarriesHistoryIntoALargerLog() throws Exception {
+        File oldPath = new File(folder.getRoot(), "old.log");
+        OtpRecordLog old = new OtpRecordLog(oldPath, 4, OtpRecordLog.DEFAULT_SLOT_SIZE);
+        for (int i = 1; i <= 6; i++) {
+            old.append(record("10000" + i, i));
+        }
+        old.close();
+
+        OtpRecordLog source = OtpRecordLog.openExisting(oldPath);
+        OtpRecordLog log = new OtpRecordLog(new File(folder.getRoot(), "new.log"), 16, OtpRecordLog.DEFAULT_SLOT_SIZE);
+        log.importFrom(source);
+        source.close();
+
+        assertEquals(6, log.lastSeq());
+        assertEquals(4, log.readPage(0, 10).size());
+        assertEquals("100003", log.read(3).otp);
+        assertEquals(7, log.append(record("100007", 7)));
+        log.close();
+    }
+}
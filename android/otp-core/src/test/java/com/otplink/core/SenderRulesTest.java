@@ -0,0 +1,65 @@
+package com.otplink.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class SenderRulesTest {
+    private final SenderRules.Rule bank = new SenderRules.Rule("HDFCBK", true, 6, 6, null);
+    private final SenderRules.Rule promos = new SenderRules.Rule("PROMO*", false, 0, 0, null);
+    private final SenderRules.Rule custom = new SenderRules.Rule("SHOP", true, 0, 0, "code ([A-Z0-9]{5})");
+
+    @Test
+    public void matchesExactSendersIgnoringOperatorHeaderAndCase() {
+        SenderRules rules = SenderRules.compile(Arrays.asList(bank, promos), true);
+
+        assertSame(bank, rules.match("AX-HDFCBK"));
+        assertSame(bank, rules.match("hdfcbk"));
+    }
+
+    @Test
+    public void prefixRulesMatchLongerSenders() {
+        SenderRules rules = SenderRules.compile(Arrays.asList(bank, promos), true);
+
+        assertSame(promos, rules.match("PROMOTIONS"));
+        assertFalse(rules.match("PROMOTIONS").allow);
+    }
+
+    @Test
+    public void unmatchedSendersGetTheDefault() {
+        SenderRules rules = SenderRules.compile(Arrays.asList(bank), false);
+
+        SenderRules.Rule rule = rules.match("UNKNOWN");
+
+        assertFalse(rule.allow);
+        assertFalse(rules.match(null).allow);
+    }
+
+    @Test
+    public void customPatternReturnsItsFirstGroup() {
+        assertTrue(custom.hasOtpPattern());
+        assertEquals("AB12C", custom.extract("Your code AB12C for order 98765"));
+    }
+
+    @Test
+    public void survivesSerialisation() throws Exception {
+        SenderRules rules = SenderRules.compile(Arrays.asList(bank, promos, custom), true);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        rules.writeTo(new DataOutputStream(bytes));
+
+        SenderRules read = SenderRules.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(3, read.ruleCount());
+        assertEquals("SHOP", read.match("SHOP").pattern);
+        assertTrue(read.match("SHOP").hasOtpPattern());
+        assertFalse(read.match("PROMO1").allow);
+    }
+}
@@ -0,0 +1,78 @@
+package com.otplink.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import org.junit.Test;
+
+public class TemplateCacheTest {
+    private static String message(String otp) {
+        return "Your login OTP is " + otp + ". Do not share it with anyone.";
+    }
+
+    private static void confirm(TemplateCache cache, String sender) {
+        String[] otps = {"111111", "222222", "333333"};
+        for (int i = 0; i < TemplateCache.CONFIRMATIONS; i++) {
+            cache.learn(sender, message(otps[i]), otps[i]);
+        }
+    }
+
+    @Test
+    public void extractsOnceConfirmed() {
+        TemplateCache cache = new TemplateCache(TemplateCache.DEFAULT_CAPACITY);
+        cache.learn("BANK", message("111111"), "111111");
+        assertNull(cache.extract("BANK", message("482913"), 4, 8));
+
+        confirm(cache, "BANK");
+
+        assertEquals(1, cache.size());
+        assertEquals("482913", cache.extract("BANK", message("482913"), 4, 8));
+    }
+
+    @Test
+    public void dropsTheTemplateWhenTheMessageChanges() {
+        TemplateCache cache = new TemplateCache(TemplateCache.DEFAULT_CAPACITY);
+        confirm(cache, "BANK");
+        long version = cache.version();
+
+        assertNull(cache.extract("BANK", "Rs 500 spent on card 1234", 4, 8));
+        assertEquals(0, cache.size());
+        assertEquals(version + 1, cache.version());
+    }
+
+    @Test
+    public void respectsLengthBounds() {
+        TemplateCache cache = new TemplateCache(TemplateCache.DEFAULT_CAPACITY);
+        confirm(cache, "BANK");
+
+        assertNull(cache.extract("BANK", message("482913"), 4, 5));
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedSender() {
+        TemplateCache cache = new TemplateCache(2);
+        confirm(cache, "A");
+        confirm(cache, "B");
+        confirm(cache, "C");
+
+        assertEquals(2, cache.size());
+        assertNull(cache.extract("A", message("482913"), 4, 8));
+    }
+
+    @Test
+    public void survivesSerialisation() throws Exception {
+        TemplateCache cache = new TemplateCache(TemplateCache.DEFAULT_CAPACITY);
+        confirm(cache, "BANK");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        cache.writeTo(new DataOutputStream(bytes));
+
+        TemplateCache read = new TemplateCache(TemplateCache.DEFAULT_CAPACITY);
+        read.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals("482913", read.extract("BANK", message("482913"), 4, 8));
+    }
+}
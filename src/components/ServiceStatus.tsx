@@ -1,7 +1,12 @@
-import React from 'react';
+import React, { useEffect, useState } from 'react';
 import { View, StyleSheet } from 'react-native';
 import { Card, Text, useTheme } from 'react-native-paper';
-import { Configuration } from '../types';
+import { Configuration, PipelineMetrics } from '../types';
+import { getPipelineMetrics } from '../services/pipelineMetricsService';
+
+const METRICS_REFRESH_MS = 5000;
+
+const formatMs = (value: number) => (value >= 1000 ? `${(value / 1000).toFixed(1)}s` : `${Math.round(value)}ms`);
 
 interface ServiceStatusProps {
   config: Configuration;
@@ -11,6 +16,25 @@ interface ServiceStatusProps {
 const ServiceStatus: React.FC<ServiceStatusProps> = ({ config, smsListenerActive }) => {
   const theme = useTheme();
   const emailEnabled = !!config.emailSettings.recipient;
+  const [metrics, setMetrics] = useState<PipelineMetrics | null>(null);
+
+  useEffect(() => {
+    let active = true;
+    const refresh = async () => {
+      const latest = await getPipelineMetrics();
+      if (active) {
+        setMetrics(latest);
+      }
+    };
+    refresh();
+    const interval = setInterval(refresh, METRICS_REFRESH_MS);
+    return () => {
+      active = false;
+      clearInterval(interval);
+    };
+  }, []);
+
+  const endToEnd = metrics?.stages.endToEnd;
 
   const StatusBadge = ({ active, label }: { active: boolean; label: string }) => (
     <View style={[
@@ -52,6 +76,18 @@ const ServiceStatus: React.FC<ServiceStatusProps> = ({ config, smsListenerActive
             <Text style={[styles.statusDescription, { color: theme.colors.onSurfaceVariant }]}>{config.emailSettings.recipient}</Text>
           )}
         </View>
+
+        {metrics && endToEnd && endToEnd.count > 0 && (
+          <View style={styles.statusItem}>
+            <Text style={[styles.statusTitle, { color: theme.colors.onSurface }]}>Forward Latency</Text>
+            <Text style={[styles.statusDescription, { color: theme.colors.onSurfaceVariant }]}>
+              p50 {formatMs(endToEnd.p50)} · p95 {formatMs(endToEnd.p95)} · p99 {formatMs(endToEnd.p99)}
+            </Text>
+            <Text style={[styles.statusDescription, { color: theme.colors.onSurfaceVariant }]}>
+              {metrics.counters.forwarded} forwarded · {metrics.counters.duplicates} duplicates · {metrics.counters.failures} failed · {metrics.outboxSize} pending retry
+            </Text>
+          </View>
+        )}
       </Card.Content>
     </Card>
   );
@@ -53,10 +53,11 @@ export const useOtpProcessor = () => {
       const started = await SmsService.startSmsRetriever(async (record) => {
         console.log('OTP received in hook:', record);
         
-        // Check if this OTP was already processed in background
-        if (record.forwarded) {
+        // Native pipeline results (forwarded or owned by the native retry outbox): just update UI,
+        // replacing an earlier event for the same record when a retry changes its status
+        if (record.forwarded || record.deliveryStatus) {
           console.log('OTP already processed in background, just updating UI');
-          setOtpRecords(prevRecords => [record, ...prevRecords]);
+          setOtpRecords(prevRecords => [record, ...prevRecords.filter(r => r.id !== record.id)]);
           return;
         }
         
@@ -126,12 +126,50 @@ export const forwardViaEmail = async (
   }
 };
 
+const toDedupeEntry = (record: OTPRecord) => ({
+  otp: record.otp,
+  sender: record.sender,
+  timestamp: record.timestamp.getTime(),
+});
+
+/**
+ * Check a batch of OTPs against the native dedupe window in one bridge call.
+ * Resolves with one flag per record, in order; all false if the module is unavailable.
+ */
+export const checkOtpsProcessed = async (records: OTPRecord[]): Promise<boolean[]> => {
+  if (records.length === 0 || !ConfigSyncModule || !ConfigSyncModule.areOtpsProcessed) {
+    return records.map(() => false);
+  }
+  try {
+    return await ConfigSyncModule.areOtpsProcessed(records.map(toDedupeEntry));
+  } catch (error) {
+    console.error('Error checking OTP batch:', error);
+    return records.map(() => false);
+  }
+};
+
+/**
+ * Mark a batch of forwarded OTPs in the native dedupe window in one bridge call
+ */
+export const markOtpsProcessed = async (records: OTPRecord[]): Promise<void> => {
+  if (records.length === 0 || !ConfigSyncModule || !ConfigSyncModule.markOtpsProcessed) {
+    return;
+  }
+  try {
+    await ConfigSyncModule.markOtpsProcessed(records.map(toDedupeEntry));
+  } catch (error) {
+    console.error('Error marking OTP batch:', error);
+  }
+};
+
 /**
- * Forward OTP using configured methods
+ * Forward OTP using configured methods. Pass `alreadyChecked` when the caller has
+ * already run the record through checkOtpsProcessed.
  */
 export const forwardOTP = async (
   otpRecord: OTPRecord,
-  config: Configuration
+  config: Configuration,
+  alreadyChecked: boolean = false
 ): Promise<boolean> => {
   // Skip forwarding if already forwarded
   if (otpRecord.forwarded) {
@@ -140,7 +178,7 @@ export const forwardOTP = async (
   }
   
   // Check if this OTP was already processed in background
-  if (ConfigSyncModule) {
+  if (ConfigSyncModule && !alreadyChecked) {
     try {
       const alreadyProcessed = await ConfigSyncModule.isOtpAlreadyProcessed(
         otpRecord.otp, 
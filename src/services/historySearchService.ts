@@ -0,0 +1,39 @@
+import { NativeModules } from 'react-native';
+import { HistoryPage, HistoryQuery } from '../types';
+import { fromNativeOTPRecord } from './storageService';
+
+const { OtpHistoryModule } = NativeModules;
+
+let nextSearchId = 0;
+
+/**
+ * Search the native OTP history index, newest first. Resolves with null when the
+ * index is unavailable or the search was cancelled.
+ */
+export const searchOTPHistory = async (
+  query: HistoryQuery,
+  searchId: string = `search-${++nextSearchId}`,
+): Promise<HistoryPage | null> => {
+  if (!OtpHistoryModule) {
+    return null;
+  }
+
+  try {
+    const page = await OtpHistoryModule.searchOtpHistory(searchId, query);
+    return { ...page, records: page.records.map(fromNativeOTPRecord) };
+  } catch (error: any) {
+    if (error?.code !== 'SEARCH_CANCELLED') {
+      console.error('Error searching OTP history:', error);
+    }
+    return null;
+  }
+};
+
+/**
+ * Stop a running search; its promise resolves with null
+ */
+export const cancelOTPHistorySearch = (searchId: string): void => {
+  if (OtpHistoryModule) {
+    OtpHistoryModule.cancelOtpHistorySearch(searchId);
+  }
+};
@@ -0,0 +1,45 @@
+import { NativeModules } from 'react-native';
+import { PipelineMetrics } from '../types';
+
+const { PipelineMetricsModule } = NativeModules;
+
+/**
+ * Fetch latency histograms and counters from the native background pipeline
+ */
+export const getPipelineMetrics = async (): Promise<PipelineMetrics | null> => {
+  if (!PipelineMetricsModule) {
+    return null;
+  }
+
+  try {
+    return await PipelineMetricsModule.getPipelineMetrics();
+  } catch (error) {
+    console.error('Error loading pipeline metrics:', error);
+    return null;
+  }
+};
+
+/**
+ * Clear all native histograms and counters
+ */
+export const resetPipelineMetrics = async (): Promise<void> => {
+  if (PipelineMetricsModule) {
+    await PipelineMetricsModule.resetPipelineMetrics();
+  }
+};
+
+/**
+ * Fetch recent native log lines (message bodies and OTPs redacted), oldest first
+ */
+export const getRecentNativeLogs = async (limit: number = 200): Promise<string[]> => {
+  if (!PipelineMetricsModule || !PipelineMetricsModule.getRecentLogs) {
+    return [];
+  }
+
+  try {
+    return await PipelineMetricsModule.getRecentLogs(limit);
+  } catch (error) {
+    console.error('Error loading native logs:', error);
+    return [];
+  }
+};
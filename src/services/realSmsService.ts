@@ -1,77 +1,50 @@
-import { NativeModules, DeviceEventEmitter } from 'react-native';
-import { processMessage } from '../utils/otpUtils';
-import { loadConfiguration, saveOTPRecord } from './storageService';
+import { DeviceEventEmitter } from 'react-native';
+import { fromNativeOTPRecord } from './storageService';
 import { OTPRecord } from '../types';
 
-let smsListener: any = null;
+let otpListener: any = null;
 
 /**
- * Start listening for SMS messages using device events
+ * Start listening for OTPs processed by the native pipeline. Incoming SMS are parsed,
+ * deduplicated, forwarded and recorded natively; JS only receives the outcome, and
+ * receives it again whenever a retry changes the delivery status.
  */
 export const startRealSmsListener = async (
   onOtpReceived: (record: OTPRecord) => void
 ): Promise<boolean> => {
   try {
-    console.log('Starting real SMS listener...');
+    console.log('Starting native OTP listener...');
     
     // Remove existing listener
-    if (smsListener) {
-      smsListener.remove();
+    if (otpListener) {
+      otpListener.remove();
     }
     
-    // Add SMS listener using DeviceEventEmitter
-    smsListener = DeviceEventEmitter.addListener('onSMSReceived', async (message) => {
-      console.log('SMS received via DeviceEventEmitter (background):', message);
-      
+    otpListener = DeviceEventEmitter.addListener('onOtpProcessed', (event) => {
       try {
-        const config = await loadConfiguration();
-        const sender = message.originatingAddress || message.address || 'Unknown';
-        const body = message.messageBody || message.body || '';
-        
-        console.log('Processing background SMS:', { sender, body });
-        
-        const otpRecord = processMessage(
-          sender,
-          body,
-          config.keywords,
-          config.otpMinLength,
-          config.otpMaxLength
-        );
-        
-        if (otpRecord) {
-          console.log('OTP detected from background SMS:', otpRecord);
-          await saveOTPRecord(otpRecord);
-          onOtpReceived(otpRecord);
-          
-          // Auto-forward the OTP
-          try {
-            const { forwardOTP } = require('./forwardingService');
-            const forwarded = await forwardOTP(otpRecord, config);
-            console.log('Background auto-forwarding result:', forwarded);
-          } catch (forwardError) {
-            console.error('Error auto-forwarding background OTP:', forwardError);
-          }
-        }
+        const otpRecord = fromNativeOTPRecord(event);
+        console.log('OTP processed natively:', otpRecord.id, otpRecord.deliveryStatus);
+        onOtpReceived(otpRecord);
       } catch (error) {
-        console.error('Error processing background SMS:', error);
+        console.error('Error handling native OTP event:', error);
       }
     });
     
-    console.log('Real SMS listener started');
+    console.log('Native OTP listener started');
     return true;
   } catch (error) {
-    console.error('Error starting real SMS listener:', error);
+    console.error('Error starting native OTP listener:', error);
     return false;
   }
 };
 
 /**
- * Stop SMS listener
+ * Stop native OTP listener
  */
 export const stopRealSmsListener = (): void => {
-  if (smsListener) {
-    smsListener.remove();
-    smsListener = null;
-    console.log('Real SMS listener stopped');
+  if (otpListener) {
+    otpListener.remove();
+    otpListener = null;
+    console.log('Native OTP listener stopped');
   }
-};
\ No newline at end of file
+};
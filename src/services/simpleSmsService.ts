@@ -1,11 +1,14 @@
-import { Platform, PermissionsAndroid, Alert } from 'react-native';
+import { Platform, PermissionsAndroid, Alert, NativeModules } from 'react-native';
 import { processMessage } from '../utils/otpUtils';
 import { loadConfiguration, saveOTPRecord } from './storageService';
 import { OTPRecord } from '../types';
 
+const { ConfigSyncModule } = NativeModules;
+
 // Simple polling state
 let isActive = false;
 let pollingTimer: NodeJS.Timeout | null = null;
+let nativeScannerActive = false;
 
 // Debug flag - set to true to force permission requests
 const FORCE_PERMISSION_REQUEST = true;
@@ -153,16 +156,30 @@ export const startSmsRetriever = async (
       console.error('Error starting real SMS listener:', error);
     }
     
-    // Also start SMS polling as backup
+    // Missed broadcasts are covered by the native inbox scanner; JS polling is only
+    // needed when that is unavailable
     try {
-      const { startSmsPolling } = require('./smsPollingService');
-      const pollingStarted = await startSmsPolling(onOtpReceived);
-      
-      if (pollingStarted) {
-        console.log('SMS polling started as backup');
+      if (ConfigSyncModule && ConfigSyncModule.startInboxScanner) {
+        nativeScannerActive = await ConfigSyncModule.startInboxScanner();
       }
     } catch (error) {
-      console.error('Error starting SMS polling:', error);
+      console.error('Error starting native inbox scanner:', error);
+      nativeScannerActive = false;
+    }
+
+    if (nativeScannerActive) {
+      console.log('Native inbox scanner started as backup');
+    } else {
+      try {
+        const { startSmsPolling } = require('./smsPollingService');
+        const pollingStarted = await startSmsPolling(onOtpReceived);
+        
+        if (pollingStarted) {
+          console.log('SMS polling started as backup');
+        }
+      } catch (error) {
+        console.error('Error starting SMS polling:', error);
+      }
     }
     
     // Keep the timer as final fallback
@@ -199,6 +216,14 @@ export const stopSmsRetriever = (): void => {
     console.error('Error stopping real SMS listener:', error);
   }
   
+  // Stop the native inbox scanner
+  if (nativeScannerActive) {
+    ConfigSyncModule.stopInboxScanner().catch((error: unknown) => {
+      console.error('Error stopping native inbox scanner:', error);
+    });
+    nativeScannerActive = false;
+  }
+
   // Stop SMS polling
   try {
     const { stopSmsPolling } = require('./smsPollingService');
@@ -8,6 +8,7 @@ try {
 }
 import { processMessage } from '../utils/otpUtils';
 import { loadConfiguration, saveOTPRecord } from './storageService';
+import { checkOtpsProcessed, forwardOTP, markOtpsProcessed } from './forwardingService';
 import { OTPRecord } from '../types';
 
 // Polling state
@@ -149,7 +150,8 @@ const processNewSms = async (onOtpReceived: (record: OTPRecord) => void) => {
       // Update timestamp to latest message
       lastSmsTimestamp = Math.max(...newMessages.map(msg => msg.date));
 
-      // Process each new message
+      // Extract OTPs locally, then check the whole page against native dedupe in one hop
+      const candidates: OTPRecord[] = [];
       for (const msg of newMessages) {
         console.log('Processing SMS:', {
           address: msg.address,
@@ -164,22 +166,38 @@ const processNewSms = async (onOtpReceived: (record: OTPRecord) => void) => {
           config.otpMinLength,
           config.otpMaxLength
         );
-
         if (otpRecord) {
-          console.log('OTP detected:', otpRecord);
-          await saveOTPRecord(otpRecord);
-          onOtpReceived(otpRecord);
-          
-          // Auto-forward the OTP
-          try {
-            const { forwardOTP } = require('./forwardingService');
-            const forwarded = await forwardOTP(otpRecord, config);
-            console.log('Auto-forwarding result:', forwarded);
-          } catch (forwardError) {
-            console.error('Error auto-forwarding OTP:', forwardError);
+          candidates.push(otpRecord);
+        }
+      }
+
+      const processed = await checkOtpsProcessed(candidates);
+      const forwardedRecords: OTPRecord[] = [];
+      for (let i = 0; i < candidates.length; i++) {
+        const otpRecord = candidates[i];
+        if (processed[i]) {
+          console.log('OTP already processed in background, skipping:', otpRecord.otp);
+          continue;
+        }
+
+        console.log('OTP detected:', otpRecord);
+        await saveOTPRecord(otpRecord);
+        onOtpReceived(otpRecord);
+
+        // Auto-forward the OTP
+        try {
+          const forwarded = await forwardOTP(otpRecord, config, true);
+          console.log('Auto-forwarding result:', forwarded);
+          if (forwarded) {
+            forwardedRecords.push(otpRecord);
           }
+        } catch (forwardError) {
+          console.error('Error auto-forwarding OTP:', forwardError);
         }
       }
+
+      // Record everything this cycle forwarded so the native pipeline skips it too
+      await markOtpsProcessed(forwardedRecords);
     }
   } catch (error) {
     console.error('Error processing SMS messages:', error);
@@ -90,20 +90,55 @@ export const saveOTPRecord = async (record: OTPRecord): Promise<void> => {
 };
 
 /**
- * Load OTP records from AsyncStorage
+ * Convert a record map from the native bridge (getOtpRecords / onOtpProcessed)
+ */
+export const fromNativeOTPRecord = (record: any): OTPRecord => ({
+  ...record,
+  timestamp: new Date(record.timestamp),
+});
+
+/**
+ * Load a page of OTP records written by the native background processor.
+ * Pass the `seq` of the last record of the previous page to continue paging.
+ */
+export const loadNativeOTPRecords = async (
+  beforeSeq: number = 0,
+  limit: number = 100,
+): Promise<OTPRecord[]> => {
+  if (!ConfigSyncModule || !ConfigSyncModule.getOtpRecords) {
+    return [];
+  }
+  try {
+    const records = await ConfigSyncModule.getOtpRecords(beforeSeq, limit);
+    return records.map(fromNativeOTPRecord);
+  } catch (error) {
+    console.error('Error loading native OTP records:', error);
+    return [];
+  }
+};
+
+/**
+ * Load OTP records from AsyncStorage, merged with the newest native records
  */
 export const loadOTPRecords = async (): Promise<OTPRecord[]> => {
   try {
+    let records: OTPRecord[] = [];
     const recordsStr = await AsyncStorage.getItem(OTP_RECORDS_KEY);
     if (recordsStr) {
-      const records = JSON.parse(recordsStr);
       // Convert string timestamps back to Date objects
-      return records.map((record: any) => ({
+      records = JSON.parse(recordsStr).map((record: any) => ({
         ...record,
         timestamp: new Date(record.timestamp),
       }));
     }
-    return [];
+
+    const nativeRecords = await loadNativeOTPRecords();
+    if (nativeRecords.length === 0) {
+      return records;
+    }
+    const knownIds = new Set(records.map(record => record.id));
+    return [...records, ...nativeRecords.filter(record => !knownIds.has(record.id))]
+      .sort((a, b) => b.timestamp.getTime() - a.timestamp.getTime());
   } catch (error) {
     console.error('Error loading OTP records:', error);
     return [];
@@ -7,6 +7,12 @@ export interface OTPRecord {
   timestamp: Date;
   forwarded: boolean;
   forwardingMethod: 'webhook' | 'email' | 'api' | null;
+  // Set on records produced by the native pipeline
+  seq?: number;
+  deliveryStatus?: 'sent' | 'retrying' | 'failed' | 'expired' | 'skipped';
+  attempts?: number;
+  // Per-destination outcome of the native fan-out, e.g. { email: 'retrying', 'webhook:example.com': 'sent' }
+  deliveries?: Record<string, 'sent' | 'retrying' | 'failed' | 'expired' | 'skipped'>;
 }
 
 export interface Configuration {
@@ -14,18 +20,110 @@ export interface Configuration {
   otpMinLength: number;
   otpMaxLength: number;
   webhookUrl: string;
+  // Extra webhooks the native forwarder posts to alongside webhookUrl
+  webhookUrls?: string[];
   smsListenerEnabled: boolean;
+  // Checked natively before any message-body work; the most specific pattern wins
+  senderRules?: SenderRule[];
+  senderDefault?: 'allow' | 'deny';
   emailSettings: {
     smtpHost: string;
     smtpPort: number;
     username: string;
     password: string;
     recipient: string;
+    // Native burst coalescing: the first OTP is sent at once, later ones within the 500 ms window are merged into one digest email
+    coalesceWindowMs?: number;
+    coalesceDigest?: boolean;
+    // Native relay failover: tried in order after smtpHost, using its account unless overridden
+    relays?: { smtpHost: string; smtpPort: number; username?: string; password?: string }[];
+    // Race the first relay against a primary slower than its recent p95
+    hedgeSends?: boolean;
+    connectTimeoutMs?: number;
+    readTimeoutMs?: number;
   };
 }
 
+export interface SenderRule {
+  // Exact sender ("HDFCBK") or prefix ("PROMO*"); case, punctuation and DLT headers like "AX-" are ignored
+  pattern: string;
+  action: 'allow' | 'deny';
+  // Per-sender overrides of the global OTP settings
+  otpMinLength?: number;
+  otpMaxLength?: number;
+  // Regular expression whose first group (or whole match) is the OTP
+  otpPattern?: string;
+}
+
 export type RootStackParamList = {
   Dashboard: undefined;
   Settings: undefined;
   KeywordManager: undefined;
-};
\ No newline at end of file
+};
+
+export interface HistoryQuery {
+  // Every word must match the start of a word in the message, e.g. "amaz otp"
+  text?: string;
+  // Sender prefix; case, punctuation and DLT headers like "AX-" are ignored
+  sender?: string;
+  // Epoch milliseconds, inclusive
+  from?: number;
+  to?: number;
+  // 0 for the newest page, then the previous page's nextBeforeSeq
+  beforeSeq?: number;
+  limit?: number;
+}
+
+export interface HistoryPage {
+  records: OTPRecord[];
+  hasMore: boolean;
+  nextBeforeSeq: number;
+}
+
+export interface StageLatency {
+  count: number;
+  // Milliseconds
+  p50: number;
+  p95: number;
+  p99: number;
+  mean: number;
+  max: number;
+}
+
+export interface PipelineMetrics {
+  stages: {
+    receive: StageLatency;
+    queueWait: StageLatency;
+    configLoad: StageLatency;
+    senderFilter: StageLatency;
+    keywordMatch: StageLatency;
+    extract: StageLatency;
+    dedupe: StageLatency;
+    smtpConnect: StageLatency;
+    smtpSend: StageLatency;
+    webhookPost: StageLatency;
+    persist: StageLatency;
+    deferredWait: StageLatency;
+    endToEnd: StageLatency;
+    warmup: StageLatency;
+    firstForwardCold: StageLatency;
+    firstForwardWarm: StageLatency;
+  };
+  counters: {
+    received: number;
+    forwarded: number;
+    duplicates: number;
+    senderBlocked: number;
+    templateHits: number;
+    dropped: number;
+    failures: number;
+    retries: number;
+    failovers: number;
+    hedges: number;
+    expired: number;
+  };
+  queueDepth: number;
+  deferredDepth: number;
+  // 0 until the outbox has started in this process
+  outboxSize: number;
+}